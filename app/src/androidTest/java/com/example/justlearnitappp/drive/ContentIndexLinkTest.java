@@ -0,0 +1,69 @@
+package com.example.justlearnitappp.drive;
+
+import android.content.Context;
+import android.system.Os;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.example.justlearnitappp.ContentSync;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs the linker the app ships with on the storage the app syncs into. Unit
+ * tests cannot: hard links need the device's libcore and filesystem.
+ */
+@RunWith(AndroidJUnit4.class)
+public class ContentIndexLinkTest {
+    private static final byte[] CONTENT = "shared lesson bytes".getBytes();
+
+    private File dir;
+
+    @Before
+    public void setUp() {
+        Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        dir = new File(ContentSync.getInstance(context).getBaseDir(), "link-test");
+        assertTrue(dir.isDirectory() || dir.mkdirs());
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        dir.delete();
+    }
+
+    @Test
+    public void linksWithinTheSyncedContent() throws Exception {
+        File existing = new File(dir, "a.html");
+        try (OutputStream out = new FileOutputStream(existing)) {
+            out.write(CONTENT);
+        }
+        String md5 = Checksums.md5Hex(existing);
+        SyncMetrics metrics = new SyncMetrics();
+        ContentIndex index = new ContentIndex(ContentIndex.HARD_LINK, metrics);
+        index.add(md5, existing);
+
+        File target = new File(dir, "b.html");
+        DriveFile file = new DriveFile("b", "b.html", "text/html", CONTENT.length, md5, 1, 0);
+        assertTrue(index.link(file, target));
+
+        assertEquals(Os.stat(existing.getPath()).st_ino, Os.stat(target.getPath()).st_ino);
+        assertEquals(0, metrics.snapshot().getCounter(SyncMetrics.FILES_LINK_COPIED));
+    }
+}
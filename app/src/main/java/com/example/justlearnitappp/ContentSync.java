@@ -0,0 +1,461 @@
+package com.example.justlearnitappp;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.content.pm.PackageManager;
+import android.os.Environment;
+import android.util.Log;
+
+import androidx.lifecycle.LifecycleOwner;
+import androidx.lifecycle.LiveData;
+import androidx.lifecycle.MutableLiveData;
+
+import com.example.justlearnitappp.concurrent.AppExecutors;
+import com.example.justlearnitappp.concurrent.CancellationToken;
+import com.example.justlearnitappp.drive.DriveService;
+import com.example.justlearnitappp.drive.StorageManager;
+import com.example.justlearnitappp.drive.SyncFolder;
+import com.example.justlearnitappp.drive.SyncProgress;
+import com.example.justlearnitappp.drive.SyncResult;
+import com.example.justlearnitappp.security.CredentialsSetup;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Keeps the local course content in step with Drive. Screens open straight from
+ * whatever is already on disk; the sync runs once per process in the background
+ * and reports through {@link #getStatus()}.
+ */
+public class ContentSync {
+    private static final String TAG = "ContentSync";
+    private static final String LOCAL_FOLDER = "JustLearnIt";
+    private static final String METRICS_FILE = "sync_metrics.txt";
+    // Low-end tablets ship with 16 GB; videos beyond this are evicted and fetched again when opened
+    private static final long STORAGE_BUDGET_BYTES = 2L * 1024 * 1024 * 1024;
+    private static final long MIN_FREE_BYTES = 256L * 1024 * 1024;
+    private static final String PREFS = "content_sync";
+    // Set while a sync runs, so finding it set on start means the last process died mid-sync
+    private static final String KEY_SYNC_RUNNING = "sync_running";
+    private static final String KEY_VERIFIED_VERSION = "verified_version";
+
+    private static final String IMAGES_FOLDER_ID = "1osgmsHhvsUeMMtTwfd_xuD-8jYZjoZlr";
+    private static final String LESSONS_FOLDER_ID = "1m4p2px_x-m7wEkg_G0OFk6Ehg4ViVuT5";
+    private static final String TESTS_FOLDER_ID = "1U1-ain7IDqoLSQdP-HYwrsmysBH6lULQ";
+    private static final String VIDEOS_FOLDER_ID = "1IpL_H3yPz78ENNHX24zRF-JvalXdM6Pu";
+
+    private static ContentSync instance;
+
+    private final Context context;
+    private final File baseDir;
+    private final List<SyncFolder> folders;
+    private final MutableLiveData<Status> status = new MutableLiveData<>(new Status(State.IDLE, null));
+    private final MutableLiveData<SyncProgress> progress = new MutableLiveData<>();
+    private final MutableLiveData<Set<String>> syncedFolders =
+            new MutableLiveData<Set<String>>(Collections.<String>emptySet());
+    private final Set<String> synced = new HashSet<>();
+    private final Object driveLock = new Object();
+    private boolean migrated;
+    private boolean started;
+    private volatile Verification verification = Verification.WHEN_NEEDED;
+    private volatile boolean verifyPending;
+
+    public enum State { IDLE, SYNCING, SYNCED, FAILED }
+
+    /**
+     * When the eagerly synced files already on disk are hashed against their
+     * manifests. Lessons, tests and images are small, but hashing all of them still
+     * costs seconds on a low-end tablet, so it only runs once the sync is done.
+     */
+    public enum Verification {
+        NEVER,
+        /** After a process that died mid-sync, and once per app version. */
+        WHEN_NEEDED,
+        ALWAYS
+    }
+
+    public static class Status {
+        private final State state;
+        private final String message;
+
+        Status(State state, String message) {
+            this.state = state;
+            this.message = message;
+        }
+
+        public State getState() { return state; }
+        public String getMessage() { return message; }
+    }
+
+    private ContentSync(Context context) {
+        this.context = context;
+        // App-private storage takes hard links, so content shared between folders is stored once;
+        // shared external storage refuses them
+        this.baseDir = new File(context.getFilesDir(), LOCAL_FOLDER);
+        // Lessons and tests are what a student opens first; videos fill in behind them.
+        // Videos are only fetched once opened, and kept up to date from then on, but
+        // only over unmetered networks; lessons and tests sync on any network.
+        this.folders = Arrays.asList(
+                new SyncFolder("Images", IMAGES_FOLDER_ID, new File(baseDir, "images").getAbsolutePath(),
+                        SyncFolder.PRIORITY_NORMAL),
+                new SyncFolder("Lessons", LESSONS_FOLDER_ID, new File(baseDir, "lessons").getAbsolutePath(),
+                        SyncFolder.PRIORITY_HIGH),
+                new SyncFolder("Tests", TESTS_FOLDER_ID, new File(baseDir, "tests").getAbsolutePath(),
+                        SyncFolder.PRIORITY_HIGH),
+                new SyncFolder("Videos", VIDEOS_FOLDER_ID, new File(baseDir, "videos").getAbsolutePath(),
+                        SyncFolder.PRIORITY_LOW, SyncFolder.FetchPolicy.ON_DEMAND,
+                        SyncFolder.NetworkPolicy.UNMETERED_ONLY));
+    }
+
+    public static synchronized ContentSync getInstance(Context context) {
+        if (instance == null) {
+            instance = new ContentSync(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    public File getBaseDir() {
+        return baseDir;
+    }
+
+    public List<SyncFolder> getFolders() {
+        return folders;
+    }
+
+    /**
+     * Sets when files on disk are verified. Takes effect from the next {@link #start()}.
+     */
+    public void setVerification(Verification verification) {
+        this.verification = verification;
+    }
+
+    public LiveData<Status> getStatus() {
+        return status;
+    }
+
+    public LiveData<SyncProgress> getProgress() {
+        return progress;
+    }
+
+    /**
+     * Names of the folders whose files are all on disk in this process, so screens
+     * can show them before the rest of the sync finishes.
+     */
+    public LiveData<Set<String>> getSyncedFolders() {
+        return syncedFolders;
+    }
+
+    /**
+     * Opens a synced file, fetching it first if only its metadata is on the device.
+     * The callback runs on the main thread; screens show a placeholder until then.
+     */
+    public void open(String folderName, String fileName, DriveService.OpenCallback callback) {
+        open(new CancellationToken(), folderName, fileName, callback);
+    }
+
+    /**
+     * Opens like {@link #open(String, String, DriveService.OpenCallback)} for a
+     * screen. Once {@code owner} is destroyed the callback is dropped, and a fetch
+     * nobody else is waiting for stops. Call it on the main thread.
+     */
+    public void open(LifecycleOwner owner, String folderName, String fileName, DriveService.OpenCallback callback) {
+        open(CancellationToken.forLifecycle(owner), folderName, fileName, callback);
+    }
+
+    private void open(CancellationToken cancel, String folderName, String fileName,
+                      DriveService.OpenCallback callback) {
+        DriveService.OpenCallback onMain = onMainThread(cancel, callback);
+        SyncFolder folder = null;
+        for (SyncFolder candidate : folders) {
+            if (candidate.getName().equals(folderName)) {
+                folder = candidate;
+            }
+        }
+        if (folder == null) {
+            onMain.onError("Unknown folder: " + folderName);
+            return;
+        }
+        SyncFolder target = folder;
+        AppExecutors.get().io().execute(() -> {
+            if (cancel.isCancelled()) {
+                return;
+            }
+            try {
+                DriveService driveService = prepareDriveService();
+                File file = driveService.openFile(target, fileName, onMain, cancel);
+                if (file != null) {
+                    onMain.onReady(file);
+                }
+            } catch (Exception e) {
+                Log.e(TAG, "Error opening " + folderName + "/" + fileName, e);
+                onMain.onError(e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Hands results to the main thread, dropping them once {@code cancel} is cancelled.
+     */
+    private static DriveService.OpenCallback onMainThread(CancellationToken cancel,
+                                                          DriveService.OpenCallback callback) {
+        return new DriveService.OpenCallback() {
+            @Override
+            public void onReady(File file) {
+                AppExecutors.get().mainThread().execute(() -> {
+                    if (!cancel.isCancelled()) {
+                        callback.onReady(file);
+                    }
+                });
+            }
+
+            @Override
+            public void onError(String error) {
+                AppExecutors.get().mainThread().execute(() -> {
+                    if (!cancel.isCancelled()) {
+                        callback.onError(error);
+                    }
+                });
+            }
+        };
+    }
+
+    // Opens and the sync share the credentials file, which is only written once
+    private DriveService prepareDriveService() {
+        synchronized (driveLock) {
+            if (!migrated) {
+                migrated = true;
+                migrateLegacyContent();
+            }
+            CredentialsSetup.setupCredentials(context);
+            DriveService driveService = DriveService.getInstance(context);
+            configureStorage(driveService);
+            return driveService;
+        }
+    }
+
+    /**
+     * Starts the background sync unless it already ran in this process. Returns
+     * immediately; nothing here waits on the network.
+     */
+    public synchronized void start() {
+        if (started) {
+            return;
+        }
+        started = true;
+        status.postValue(new Status(State.SYNCING, null));
+
+        AppExecutors.get().io().execute(() -> {
+            try {
+                for (SyncFolder folder : folders) {
+                    File dir = new File(folder.getLocalPath());
+                    if (!dir.exists() && !dir.mkdirs()) {
+                        throw new RuntimeException("Failed to create directory: " + dir.getName());
+                    }
+                }
+                Log.d(TAG, "Base directory: " + baseDir.getAbsolutePath());
+
+                DriveService driveService = prepareDriveService();
+                verifyPending = needsVerification();
+                prefs().edit().putBoolean(KEY_SYNC_RUNNING, true).apply();
+                driveService.syncFolders(folders, new DriveService.SyncCallback() {
+                    @Override
+                    public void onSuccess(String message) {
+                        Log.d(TAG, "Content sync completed: " + message);
+                        dumpMetrics(driveService);
+                        StartupTrace.mark(StartupTrace.SYNC_COMPLETE);
+                        status.postValue(new Status(State.SYNCED, message));
+                    }
+
+                    @Override
+                    public void onError(String error) {
+                        Log.e(TAG, "Content sync failed: " + error);
+                        dumpMetrics(driveService);
+                        syncFailed(error);
+                    }
+
+                    @Override
+                    public void onProgress(SyncProgress update) {
+                        progress.postValue(update);
+                    }
+
+                    @Override
+                    public void onFolderSynced(SyncFolder folder, boolean success) {
+                        Log.d(TAG, "Folder " + folder.getName() + (success ? " synced" : " synced with errors"));
+                        if (success) {
+                            folderSynced(folder.getName());
+                        }
+                    }
+
+                    @Override
+                    public void onComplete(SyncResult result) {
+                        for (SyncResult.FailedFile failed : result.getFailedFiles()) {
+                            Log.w(TAG, "Not synced: " + failed.getFolderName() + "/" + failed.getName()
+                                    + " (" + failed.getError() + ")");
+                        }
+                        StorageManager.Usage usage = driveService.getStorage().getUsage();
+                        Log.d(TAG, "Storage: " + usage.getFolderBytes() + " bytes, "
+                                + usage.getTotalBytes() + " of " + usage.getBudgetBytes());
+                        syncDone(driveService, this);
+                    }
+                });
+            } catch (Exception e) {
+                Log.e(TAG, "Error starting content sync: " + e.getMessage(), e);
+                syncFailed(e.getMessage());
+            }
+        });
+    }
+
+    private void folderSynced(String name) {
+        synchronized (synced) {
+            synced.add(name);
+            syncedFolders.postValue(new HashSet<>(synced));
+        }
+    }
+
+    /**
+     * Moves content synced by earlier releases from shared external storage into
+     * {@link #baseDir}, so it is not downloaded again. Both usually sit on the same
+     * partition, so this takes no extra space for long. Whatever fails to move is
+     * left behind and fetched again.
+     */
+    private void migrateLegacyContent() {
+        File legacy = new File(Environment.getExternalStorageDirectory(), LOCAL_FOLDER);
+        if (!legacy.isDirectory()) {
+            return;
+        }
+        Log.i(TAG, "Moving content from " + legacy.getAbsolutePath() + " to " + baseDir.getAbsolutePath());
+        try {
+            moveTree(legacy, baseDir);
+        } catch (IOException e) {
+            Log.w(TAG, "Could not move all legacy content", e);
+        }
+    }
+
+    private static void moveTree(File from, File to) throws IOException {
+        File[] children = from.listFiles();
+        if (children == null) {
+            return;
+        }
+        if (!to.isDirectory() && !to.mkdirs()) {
+            throw new IOException("Failed to create directory: " + to.getAbsolutePath());
+        }
+        for (File child : children) {
+            File target = new File(to, child.getName());
+            if (child.isDirectory()) {
+                moveTree(child, target);
+            } else if (!target.exists() && !child.renameTo(target)) {
+                // Another filesystem
+                copyFile(child, target);
+            }
+            if (!child.delete()) {
+                Log.w(TAG, "Failed to remove legacy file: " + child.getAbsolutePath());
+            }
+        }
+        if (!from.delete()) {
+            Log.w(TAG, "Failed to remove legacy directory: " + from.getAbsolutePath());
+        }
+    }
+
+    private static void copyFile(File from, File to) throws IOException {
+        File partFile = new File(to.getPath() + ".moving");
+        try (InputStream in = new FileInputStream(from);
+             OutputStream out = new FileOutputStream(partFile)) {
+            byte[] buffer = new byte[64 * 1024];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+        }
+        if (!partFile.renameTo(to)) {
+            throw new IOException("Failed to move into place: " + to.getAbsolutePath());
+        }
+    }
+
+    private boolean needsVerification() {
+        switch (verification) {
+            case ALWAYS:
+                return true;
+            case WHEN_NEEDED:
+                SharedPreferences prefs = prefs();
+                return prefs.getBoolean(KEY_SYNC_RUNNING, false)
+                        || prefs.getInt(KEY_VERIFIED_VERSION, -1) != versionCode();
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Verifies the files on disk once the sync is done, if this start called for
+     * it, and syncs again to replace any that were damaged.
+     */
+    private void syncDone(DriveService driveService, DriveService.SyncCallback callback) {
+        if (!verifyPending) {
+            prefs().edit().putBoolean(KEY_SYNC_RUNNING, false).apply();
+            return;
+        }
+        verifyPending = false;
+        AppExecutors.get().io().execute(() -> {
+            List<SyncFolder> eager = new ArrayList<>();
+            for (SyncFolder folder : folders) {
+                if (folder.getFetchPolicy() == SyncFolder.FetchPolicy.EAGER) {
+                    eager.add(folder);
+                }
+            }
+            int damaged = driveService.verifyLocalFiles(eager);
+            prefs().edit().putInt(KEY_VERIFIED_VERSION, versionCode()).apply();
+            if (damaged > 0) {
+                Log.w(TAG, damaged + " damaged files will be downloaded again");
+                // Its completion clears the running flag
+                driveService.syncFolders(eager, callback);
+            } else {
+                prefs().edit().putBoolean(KEY_SYNC_RUNNING, false).apply();
+            }
+        });
+    }
+
+    private SharedPreferences prefs() {
+        return context.getSharedPreferences(PREFS, Context.MODE_PRIVATE);
+    }
+
+    private int versionCode() {
+        try {
+            return context.getPackageManager().getPackageInfo(context.getPackageName(), 0).versionCode;
+        } catch (PackageManager.NameNotFoundException e) {
+            return -1;
+        }
+    }
+
+    private static void configureStorage(DriveService driveService) {
+        StorageManager storage = driveService.getStorage();
+        storage.setBudgetBytes(STORAGE_BUDGET_BYTES);
+        storage.setMinFreeBytes(MIN_FREE_BYTES);
+    }
+
+    /**
+     * Leaves the latest sync metrics in app storage, where they can be pulled from
+     * a device in the field.
+     */
+    private void dumpMetrics(DriveService driveService) {
+        try {
+            driveService.getMetrics().dumpTo(new File(context.getFilesDir(), METRICS_FILE));
+        } catch (IOException e) {
+            Log.w(TAG, "Could not write sync metrics", e);
+        }
+    }
+
+    // A failed sync may be started again by the next screen that asks for it
+    private synchronized void syncFailed(String error) {
+        started = false;
+        status.postValue(new Status(State.FAILED, error));
+    }
+}
@@ -0,0 +1,12 @@
+package com.example.justlearnitappp;
+
+import android.app.Application;
+
+public class JustLearnItApplication extends Application {
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        StartupTrace.start();
+    }
+}
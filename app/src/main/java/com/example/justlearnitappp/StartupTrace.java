@@ -0,0 +1,90 @@
+package com.example.justlearnitappp;
+
+import android.app.Activity;
+import android.os.Build;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+import android.view.View;
+import android.view.ViewTreeObserver;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Startup milestones measured from process start, logged under the "StartupTrace"
+ * tag so they can be pulled from logcat and compared between builds.
+ */
+public final class StartupTrace {
+    private static final String TAG = "StartupTrace";
+
+    public static final String APPLICATION_CREATED = "application_created";
+    public static final String FIRST_FRAME = "first_frame";
+    public static final String CONTENT_READY = "content_ready";
+    public static final String SYNC_COMPLETE = "sync_complete";
+
+    private static final Map<String, Long> milestones = new LinkedHashMap<>();
+    private static long processStartUptime = -1;
+
+    private StartupTrace() {
+    }
+
+    /**
+     * Called from Application.onCreate. Older releases cannot report when the
+     * process was forked, so there the application creation time stands in for it.
+     */
+    static synchronized void start() {
+        long now = SystemClock.uptimeMillis();
+        processStartUptime = Build.VERSION.SDK_INT >= Build.VERSION_CODES.N
+                ? Process.getStartUptimeMillis()
+                : now;
+        record(APPLICATION_CREATED, now);
+    }
+
+    /**
+     * Records a milestone the first time it is reached; later calls are ignored.
+     */
+    public static synchronized void mark(String milestone) {
+        record(milestone, SystemClock.uptimeMillis());
+    }
+
+    /**
+     * Records a milestone when the activity draws its first frame.
+     */
+    public static void markOnFirstFrame(Activity activity, String milestone) {
+        View decorView = activity.getWindow().getDecorView();
+        decorView.getViewTreeObserver().addOnDrawListener(new ViewTreeObserver.OnDrawListener() {
+            private boolean drawn;
+
+            @Override
+            public void onDraw() {
+                if (drawn) {
+                    return;
+                }
+                drawn = true;
+                mark(milestone);
+                // Listeners cannot be removed from inside onDraw
+                decorView.post(() -> decorView.getViewTreeObserver().removeOnDrawListener(this));
+            }
+        });
+    }
+
+    /**
+     * Returns each milestone reached so far, in milliseconds since process start.
+     */
+    public static synchronized Map<String, Long> getMilestones() {
+        Map<String, Long> sinceStart = new LinkedHashMap<>();
+        for (Map.Entry<String, Long> entry : milestones.entrySet()) {
+            sinceStart.put(entry.getKey(), entry.getValue() - processStartUptime);
+        }
+        return sinceStart;
+    }
+
+    private static void record(String milestone, long uptime) {
+        if (processStartUptime < 0 || milestones.containsKey(milestone)) {
+            return;
+        }
+        milestones.put(milestone, uptime);
+        Log.i(TAG, milestone + ": " + (uptime - processStartUptime) + " ms since process start");
+    }
+}
@@ -0,0 +1,79 @@
+package com.example.justlearnitappp.concurrent;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The app's shared thread pools, so work does not start threads of its own.
+ * {@link #io()} runs blocking disk and network work and is bounded, so a burst
+ * of requests queues instead of adding a thread each. {@link #compute()} runs
+ * CPU-bound work such as hashing on one thread per core, and
+ * {@link #mainThread()} hands results to the UI.
+ *
+ * Pool threads exit after a while without work, so an idle app holds none. Drive
+ * sync tasks run on {@code SyncScheduler}'s workers, which order them by folder
+ * priority; their blocking helpers use these pools.
+ */
+public final class AppExecutors {
+    private static final int IO_THREADS = 16;
+    private static final long KEEP_ALIVE_SECONDS = 30;
+
+    private static AppExecutors instance;
+
+    private final ExecutorService io;
+    private final ExecutorService compute;
+    private Executor mainThread;
+
+    private AppExecutors() {
+        this.io = newPool("app-io-", IO_THREADS);
+        this.compute = newPool("app-compute-", Runtime.getRuntime().availableProcessors());
+    }
+
+    public static synchronized AppExecutors get() {
+        if (instance == null) {
+            instance = new AppExecutors();
+        }
+        return instance;
+    }
+
+    public ExecutorService io() {
+        return io;
+    }
+
+    public ExecutorService compute() {
+        return compute;
+    }
+
+    public synchronized Executor mainThread() {
+        // Created on first use, so code that never touches the UI runs without a main looper
+        if (mainThread == null) {
+            Handler handler = new Handler(Looper.getMainLooper());
+            mainThread = handler::post;
+        }
+        return mainThread;
+    }
+
+    private static ExecutorService newPool(String namePrefix, int threads) {
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                    private final AtomicInteger count = new AtomicInteger();
+
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        Thread thread = new Thread(r, namePrefix + count.getAndIncrement());
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+}
@@ -0,0 +1,111 @@
+package com.example.justlearnitappp.concurrent;
+
+import android.util.Log;
+
+import androidx.lifecycle.DefaultLifecycleObserver;
+import androidx.lifecycle.Lifecycle;
+import androidx.lifecycle.LifecycleOwner;
+
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tells work started for someone that they no longer want it. Long-running work
+ * checks {@link #throwIfCancelled()} between reads and writes, so a download
+ * stops mid-stream instead of running to the end for a screen that is gone.
+ * Cancelling is one-way and runs the registered actions once.
+ */
+public class CancellationToken {
+    private static final String TAG = "CancellationToken";
+
+    /**
+     * Undoes an {@link #onCancel} registration.
+     */
+    public interface Registration {
+        void remove();
+    }
+
+    private final CountDownLatch cancelled = new CountDownLatch(1);
+    private final List<Runnable> actions = new ArrayList<>();
+
+    /**
+     * Returns a token that is cancelled when {@code owner} is destroyed. Call it on
+     * the main thread, as lifecycle observers are added there.
+     */
+    public static CancellationToken forLifecycle(LifecycleOwner owner) {
+        CancellationToken token = new CancellationToken();
+        Lifecycle lifecycle = owner.getLifecycle();
+        if (lifecycle.getCurrentState() == Lifecycle.State.DESTROYED) {
+            token.cancel();
+            return token;
+        }
+        lifecycle.addObserver(new DefaultLifecycleObserver() {
+            @Override
+            public void onDestroy(LifecycleOwner source) {
+                source.getLifecycle().removeObserver(this);
+                token.cancel();
+            }
+        });
+        return token;
+    }
+
+    public void cancel() {
+        List<Runnable> toRun;
+        synchronized (actions) {
+            if (isCancelled()) {
+                return;
+            }
+            cancelled.countDown();
+            toRun = new ArrayList<>(actions);
+            actions.clear();
+        }
+        for (Runnable action : toRun) {
+            try {
+                action.run();
+            } catch (RuntimeException e) {
+                Log.e(TAG, "Cancellation action failed", e);
+            }
+        }
+    }
+
+    public boolean isCancelled() {
+        return cancelled.getCount() == 0;
+    }
+
+    public void throwIfCancelled() throws InterruptedIOException {
+        if (isCancelled()) {
+            throw new InterruptedIOException("Cancelled");
+        }
+    }
+
+    /**
+     * Waits up to {@code millis}, returning early with true if the token is
+     * cancelled meanwhile.
+     */
+    public boolean await(long millis) throws InterruptedException {
+        return cancelled.await(millis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Runs {@code action} on cancellation, right away if the token is already
+     * cancelled. Remove the registration once the work it guards has ended, so the
+     * token does not keep that work reachable.
+     */
+    public Registration onCancel(Runnable action) {
+        synchronized (actions) {
+            if (!isCancelled()) {
+                actions.add(action);
+                return () -> {
+                    synchronized (actions) {
+                        actions.remove(action);
+                    }
+                };
+            }
+        }
+        action.run();
+        return () -> { };
+    }
+}
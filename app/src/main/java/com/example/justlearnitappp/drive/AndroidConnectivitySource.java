@@ -0,0 +1,89 @@
+package com.example.justlearnitappp.drive;
+
+import android.content.Context;
+import android.net.ConnectivityManager;
+import android.net.Network;
+import android.net.NetworkCapabilities;
+import android.net.NetworkInfo;
+import android.net.NetworkRequest;
+import android.os.Build;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Reads the default network from {@link ConnectivityManager}. A network counts as
+ * unmetered only if the system says so, so a phone tethered to another phone's
+ * hotspot stays metered.
+ *
+ * Releases before Marshmallow cannot name the default network, so there the
+ * active network's info stands in for its capabilities. Releases before Nougat
+ * cannot follow the default network, so there any network with internet access
+ * is followed and the class read again whenever one changes.
+ */
+public class AndroidConnectivitySource implements ConnectivitySource {
+    private final ConnectivityManager connectivity;
+    private final List<Runnable> listeners = new CopyOnWriteArrayList<>();
+    private boolean registered;
+
+    public AndroidConnectivitySource(Context context) {
+        this.connectivity = (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+    }
+
+    @Override
+    public NetworkClass getNetworkClass() {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.M) {
+            NetworkInfo info = connectivity.getActiveNetworkInfo();
+            if (info == null || !info.isConnected()) {
+                return NetworkClass.NONE;
+            }
+            return connectivity.isActiveNetworkMetered() ? NetworkClass.METERED : NetworkClass.UNMETERED;
+        }
+        Network network = connectivity.getActiveNetwork();
+        NetworkCapabilities capabilities = network != null ? connectivity.getNetworkCapabilities(network) : null;
+        if (capabilities == null || !capabilities.hasCapability(NetworkCapabilities.NET_CAPABILITY_INTERNET)) {
+            return NetworkClass.NONE;
+        }
+        return capabilities.hasCapability(NetworkCapabilities.NET_CAPABILITY_NOT_METERED)
+                ? NetworkClass.UNMETERED : NetworkClass.METERED;
+    }
+
+    @Override
+    public synchronized void addListener(Runnable listener) {
+        listeners.add(listener);
+        if (registered) {
+            return;
+        }
+        registered = true;
+        // One callback for all listeners; the system limits how many an app may hold
+        ConnectivityManager.NetworkCallback callback = new ConnectivityManager.NetworkCallback() {
+            @Override
+            public void onAvailable(Network network) {
+                notifyListeners();
+            }
+
+            @Override
+            public void onCapabilitiesChanged(Network network, NetworkCapabilities capabilities) {
+                notifyListeners();
+            }
+
+            @Override
+            public void onLost(Network network) {
+                notifyListeners();
+            }
+        };
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
+            connectivity.registerDefaultNetworkCallback(callback);
+        } else {
+            connectivity.registerNetworkCallback(new NetworkRequest.Builder()
+                    .addCapability(NetworkCapabilities.NET_CAPABILITY_INTERNET)
+                    .build(), callback);
+        }
+    }
+
+    private void notifyListeners() {
+        for (Runnable listener : listeners) {
+            listener.run();
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package com.example.justlearnitappp.drive;
+
+import com.example.justlearnitappp.concurrent.CancellationToken;
+
+import java.io.InterruptedIOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Paces download writes with two token buckets: one for foreground fetches,
+ * which a screen is waiting on, and one for background sync. Each bucket holds
+ * up to a second's worth of bytes at its rate, so short bursts go through
+ * unthrottled.
+ *
+ * Foreground fetches come first: background writes hold off while any
+ * foreground fetch has written in the last {@link #FOREGROUND_QUIET_MILLIS},
+ * so a bulk sync leaves the connection to the file being opened. Rates can be
+ * changed while downloads run; waiting writers pick up the new rate at once.
+ */
+class BandwidthLimiter {
+    static final long UNLIMITED = 0;
+    static final long FOREGROUND_QUIET_MILLIS = 250;
+    // Waits are cut into slices this long, so cancellation is noticed promptly
+    private static final long MAX_WAIT_MILLIS = 100;
+
+    /**
+     * One side of the limiter, handed to a download.
+     */
+    interface Lane {
+        Lane UNLIMITED = (bytes, cancel) -> { };
+
+        /**
+         * Blocks until {@code bytes} may be written, failing once {@code cancel} is
+         * cancelled.
+         */
+        void acquire(int bytes, CancellationToken cancel) throws InterruptedIOException;
+    }
+
+    private final Bucket foregroundBucket = new Bucket();
+    private final Bucket backgroundBucket = new Bucket();
+    private final Lane foreground = (bytes, cancel) -> acquire(true, bytes, cancel);
+    private final Lane background = (bytes, cancel) -> acquire(false, bytes, cancel);
+    private long lastForegroundNanos = System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(FOREGROUND_QUIET_MILLIS);
+
+    Lane foreground() {
+        return foreground;
+    }
+
+    Lane background() {
+        return background;
+    }
+
+    /**
+     * Sets both rates in bytes per second; {@link #UNLIMITED} lifts a limit.
+     */
+    synchronized void setLimits(long foregroundBytesPerSecond, long backgroundBytesPerSecond) {
+        long now = System.nanoTime();
+        foregroundBucket.setRate(foregroundBytesPerSecond, now);
+        backgroundBucket.setRate(backgroundBytesPerSecond, now);
+        notifyAll();
+    }
+
+    synchronized long getForegroundLimit() {
+        return foregroundBucket.rate;
+    }
+
+    synchronized long getBackgroundLimit() {
+        return backgroundBucket.rate;
+    }
+
+    private synchronized void acquire(boolean isForeground, int bytes, CancellationToken cancel)
+            throws InterruptedIOException {
+        try {
+            while (true) {
+                cancel.throwIfCancelled();
+                long now = System.nanoTime();
+                long waitNanos;
+                if (isForeground) {
+                    lastForegroundNanos = now;
+                    waitNanos = foregroundBucket.take(bytes, now);
+                } else {
+                    long quietNanos = lastForegroundNanos + TimeUnit.MILLISECONDS.toNanos(FOREGROUND_QUIET_MILLIS) - now;
+                    waitNanos = quietNanos > 0 ? quietNanos : backgroundBucket.take(bytes, now);
+                }
+                if (waitNanos <= 0) {
+                    return;
+                }
+                wait(Math.max(1, Math.min(MAX_WAIT_MILLIS, TimeUnit.NANOSECONDS.toMillis(waitNanos))));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for bandwidth");
+        }
+    }
+
+    private static class Bucket {
+        long rate = UNLIMITED;
+        double tokens;
+        long refilledNanos = System.nanoTime();
+
+        void setRate(long bytesPerSecond, long now) {
+            refill(now);
+            rate = Math.max(UNLIMITED, bytesPerSecond);
+            tokens = Math.min(tokens, rate);
+        }
+
+        /**
+         * Takes {@code bytes} and returns 0, or returns how long to wait before
+         * trying again. A write larger than the bucket goes through once the bucket
+         * is full, leaving it in debt.
+         */
+        long take(int bytes, long now) {
+            if (rate == UNLIMITED) {
+                return 0;
+            }
+            refill(now);
+            double needed = Math.min(bytes, rate) - tokens;
+            if (needed > 0) {
+                return (long) Math.ceil(needed * TimeUnit.SECONDS.toNanos(1) / rate);
+            }
+            tokens -= bytes;
+            return 0;
+        }
+
+        private void refill(long now) {
+            if (rate != UNLIMITED) {
+                tokens = Math.min(rate, tokens + (double) (now - refilledNanos) * rate / TimeUnit.SECONDS.toNanos(1));
+            }
+            refilledNanos = now;
+        }
+    }
+}
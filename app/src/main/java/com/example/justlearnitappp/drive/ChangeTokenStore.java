@@ -0,0 +1,72 @@
+package com.example.justlearnitappp.drive;
+
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Drive changes start-page tokens, one per synced folder. A folder's token marks
+ * the point in the changes feed up to which its local copy is known to be current.
+ */
+class ChangeTokenStore {
+    private static final String TAG = "ChangeTokenStore";
+
+    private final File file;
+    private final Properties tokens = new Properties();
+
+    ChangeTokenStore(File file) {
+        this.file = file;
+        if (file.exists()) {
+            try (InputStream in = new FileInputStream(file)) {
+                tokens.load(in);
+            } catch (IOException e) {
+                Log.e(TAG, "Error reading change tokens, falling back to full sync", e);
+                tokens.clear();
+            }
+        }
+    }
+
+    synchronized String get(String folderId) {
+        return tokens.getProperty(folderId);
+    }
+
+    synchronized void remove(String folderId) {
+        if (tokens.remove(folderId) != null) {
+            save();
+        }
+    }
+
+    synchronized void putAll(Map<String, String> folderTokens) {
+        if (folderTokens.isEmpty()) {
+            return;
+        }
+        tokens.putAll(folderTokens);
+        save();
+    }
+
+    private void save() {
+        File parent = file.getParentFile();
+        if (parent != null && !parent.exists() && !parent.mkdirs()) {
+            Log.e(TAG, "Failed to create directory: " + parent.getAbsolutePath());
+            return;
+        }
+        // Write a sibling file and rename it so a crash never leaves a truncated token file
+        File tmp = new File(file.getPath() + ".tmp");
+        try (OutputStream out = new FileOutputStream(tmp)) {
+            tokens.store(out, null);
+        } catch (IOException e) {
+            Log.e(TAG, "Error saving change tokens", e);
+            return;
+        }
+        if (!tmp.renameTo(file)) {
+            Log.e(TAG, "Failed to replace change token file: " + file.getAbsolutePath());
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package com.example.justlearnitappp.drive;
+
+import java.io.IOException;
+
+/**
+ * Thrown when a finished download does not match the md5Checksum Drive reports
+ * for it. The partial file is discarded, so the next attempt starts over.
+ */
+class ChecksumMismatchException extends IOException {
+    ChecksumMismatchException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,81 @@
+package com.example.justlearnitappp.drive;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * MD5 helpers matching the lowercase hex md5Checksum reported by Drive.
+ */
+final class Checksums {
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private Checksums() {
+    }
+
+    static MessageDigest newMd5() {
+        try {
+            return MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("MD5 not available", e);
+        }
+    }
+
+    static String md5Hex(File file) throws IOException {
+        MessageDigest digest = newMd5();
+        byte[] buffer = new byte[64 * 1024];
+        try (InputStream in = new FileInputStream(file)) {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        return toHex(digest.digest());
+    }
+
+    /**
+     * Feeds the first {@code length} bytes of {@code file} to {@code digest}, for a
+     * download that resumes after them.
+     */
+    static void updateFromFile(MessageDigest digest, File file, long length) throws IOException {
+        byte[] buffer = new byte[64 * 1024];
+        try (InputStream in = new FileInputStream(file)) {
+            long remaining = length;
+            while (remaining > 0) {
+                int read = in.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                if (read == -1) {
+                    throw new IOException("File shorter than " + length + " bytes: " + file.getAbsolutePath());
+                }
+                digest.update(buffer, 0, read);
+                remaining -= read;
+            }
+        }
+    }
+
+    /**
+     * Checks downloaded bytes, hashed into {@code digest} as they were written,
+     * against Drive's checksum. Files Drive has no checksum for pass unchecked.
+     */
+    static void verify(DriveFile file, MessageDigest digest) throws ChecksumMismatchException {
+        verify(file, toHex(digest.digest()));
+    }
+
+    static void verify(DriveFile file, String md5) throws ChecksumMismatchException {
+        if (file.getMd5Checksum() != null && !file.getMd5Checksum().equals(md5)) {
+            throw new ChecksumMismatchException("Checksum mismatch for " + file.getName() + ": expected "
+                    + file.getMd5Checksum() + ", got " + md5);
+        }
+    }
+
+    static String toHex(byte[] bytes) {
+        char[] chars = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            chars[i * 2] = HEX[(bytes[i] >> 4) & 0xf];
+            chars[i * 2 + 1] = HEX[bytes[i] & 0xf];
+        }
+        return new String(chars);
+    }
+}
@@ -0,0 +1,89 @@
+package com.example.justlearnitappp.drive;
+
+import android.util.Log;
+
+/**
+ * Stops calls to Drive while it is down. After {@code failureThreshold} failures
+ * in a row the breaker opens and calls fail at once for {@code openMillis}. Then a
+ * single trial call is let through: if it succeeds the breaker closes, otherwise
+ * it opens for another period. A trial download succeeds once its response is
+ * in, not when its body has been read.
+ */
+class CircuitBreaker {
+    private static final String TAG = "CircuitBreaker";
+    static final int DEFAULT_FAILURE_THRESHOLD = 10;
+    static final long DEFAULT_OPEN_MILLIS = 30 * 1000;
+
+    enum State { CLOSED, OPEN, HALF_OPEN }
+
+    private final int failureThreshold;
+    private final long openMillis;
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long openUntilNanos;
+
+    CircuitBreaker(int failureThreshold, long openMillis) {
+        if (failureThreshold < 1) {
+            throw new IllegalArgumentException("failureThreshold must be at least 1");
+        }
+        this.failureThreshold = failureThreshold;
+        this.openMillis = openMillis;
+    }
+
+    /**
+     * Whether a call may go out now. Once the open period is over, the first
+     * caller gets the trial call and everyone else keeps failing fast until it
+     * reports back.
+     */
+    synchronized boolean allowRequest() {
+        switch (state) {
+            case CLOSED:
+                return true;
+            case OPEN:
+                if (System.nanoTime() - openUntilNanos >= 0) {
+                    state = State.HALF_OPEN;
+                    return true;
+                }
+                return false;
+            default:
+                return false;
+        }
+    }
+
+    synchronized void onSuccess() {
+        if (state != State.CLOSED) {
+            Log.i(TAG, "Drive is reachable again, closing circuit");
+        }
+        state = State.CLOSED;
+        consecutiveFailures = 0;
+    }
+
+    /**
+     * Records a failure that suggests Drive is down. Returns true if it opened the breaker.
+     */
+    synchronized boolean onFailure() {
+        consecutiveFailures++;
+        if (state == State.HALF_OPEN || (state == State.CLOSED && consecutiveFailures >= failureThreshold)) {
+            state = State.OPEN;
+            openUntilNanos = System.nanoTime() + openMillis * 1_000_000L;
+            Log.w(TAG, "Opening circuit for " + openMillis + " ms after " + consecutiveFailures + " failures");
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Lets a trial call that ended without telling anything about Drive's health,
+     * such as a paused download, hand the trial to the next caller.
+     */
+    synchronized void onNeutral() {
+        if (state == State.HALF_OPEN) {
+            state = State.OPEN;
+            openUntilNanos = System.nanoTime();
+        }
+    }
+
+    synchronized State getState() {
+        return state;
+    }
+}
@@ -0,0 +1,14 @@
+package com.example.justlearnitappp.drive;
+
+import java.io.IOException;
+
+/**
+ * Thrown instead of making a Drive call while the circuit breaker is open
+ * because Drive kept failing. Nothing was sent; the call can be made again once
+ * Drive is back.
+ */
+class CircuitOpenException extends IOException {
+    CircuitOpenException(String message) {
+        super(message);
+    }
+}
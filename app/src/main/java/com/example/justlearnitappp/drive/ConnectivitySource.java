@@ -0,0 +1,27 @@
+package com.example.justlearnitappp.drive;
+
+/**
+ * Reports the current {@link NetworkClass} and when it changes. The app uses
+ * {@link AndroidConnectivitySource}; tests pass their own.
+ */
+public interface ConnectivitySource {
+    /** For callers that do not care which network they are on. */
+    ConnectivitySource ALWAYS_UNMETERED = new ConnectivitySource() {
+        @Override
+        public NetworkClass getNetworkClass() {
+            return NetworkClass.UNMETERED;
+        }
+
+        @Override
+        public void addListener(Runnable listener) {
+        }
+    };
+
+    NetworkClass getNetworkClass();
+
+    /**
+     * Runs {@code listener} after the network may have changed, on any thread.
+     * Listeners read the new state through {@link #getNetworkClass()}.
+     */
+    void addListener(Runnable listener);
+}
@@ -0,0 +1,254 @@
+package com.example.justlearnitappp.drive;
+
+import android.system.ErrnoException;
+import android.system.Os;
+import android.util.Log;
+
+import com.example.justlearnitappp.concurrent.CancellationToken;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Local copies of file contents by md5, across all synced folders. A file whose
+ * bytes are already on disk, under another name or in another folder, is linked
+ * into place instead of downloaded again. Links are hard links where the
+ * filesystem allows, so storage grows with unique content rather than with the
+ * number of places it appears; elsewhere the bytes are copied, which still saves
+ * the download but not the space. Shared external storage is such a place, which
+ * is why synced content lives in app-private storage. Copies are counted under
+ * {@link SyncMetrics#FILES_LINK_COPIED}.
+ *
+ * The index only records candidates. A file at a recorded path may have been
+ * replaced, evicted or damaged since, so a candidate is hashed before it is used.
+ *
+ * Only one download of any content runs at a time; others wait for it and link
+ * its result. A file opened on screen may find a background sync already fetching
+ * its content. It then marks that fetch as foreground, and the fetch speeds up to
+ * foreground pace instead of keeping the screen waiting at background pace.
+ */
+class ContentIndex {
+    private static final String TAG = "ContentIndex";
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+    private static final long FETCH_WAIT_SLICE_MILLIS = 100;
+
+    interface Linker {
+        void link(File existing, File target) throws IOException;
+    }
+
+    static final Linker HARD_LINK = (existing, target) -> {
+        try {
+            Os.link(existing.getPath(), target.getPath());
+        } catch (ErrnoException e) {
+            throw new IOException("Failed to link " + target.getPath() + ": " + e.getMessage(), e);
+        }
+    };
+
+    static final Linker COPY = ContentIndex::copy;
+
+    private final Map<String, Set<File>> byMd5 = new HashMap<>();
+    private final Set<String> indexedFolders = new HashSet<>();
+    // Md5 -> download of that content in progress, so a second folder waits for it
+    private final Map<String, Fetch> fetching = new HashMap<>();
+    private final SyncMetrics metrics;
+    private volatile Linker linker;
+    private volatile boolean warnedCopying;
+
+    ContentIndex(Linker linker, SyncMetrics metrics) {
+        this.linker = linker;
+        this.metrics = metrics;
+    }
+
+    void setLinker(Linker linker) {
+        this.linker = linker;
+    }
+
+    /**
+     * Records the local files of a folder's manifest, once per folder.
+     */
+    void addFolder(SyncFolder folder, SyncManifest manifest) {
+        synchronized (byMd5) {
+            if (!indexedFolders.add(folder.getFolderId())) {
+                return;
+            }
+        }
+        for (SyncManifest.Entry entry : manifest.entries()) {
+            if (entry.isLocal()) {
+                add(entry.getMd5Checksum(), new File(folder.getLocalPath(), entry.getPath()));
+            }
+        }
+    }
+
+    void add(String md5, File file) {
+        if (md5 == null) {
+            return;
+        }
+        synchronized (byMd5) {
+            Set<File> files = byMd5.get(md5);
+            if (files == null) {
+                files = new LinkedHashSet<>();
+                byMd5.put(md5, files);
+            }
+            files.add(file);
+        }
+    }
+
+    private void remove(String md5, File file) {
+        synchronized (byMd5) {
+            Set<File> files = byMd5.get(md5);
+            if (files != null && files.remove(file) && files.isEmpty()) {
+                byMd5.remove(md5);
+            }
+        }
+    }
+
+    /**
+     * Puts {@code file}'s bytes at {@code target} from a local copy, if one is on
+     * disk and still matches its md5. Returns false if there is none and the file
+     * has to be downloaded.
+     */
+    boolean link(DriveFile file, File target) throws IOException {
+        String md5 = file.getMd5Checksum();
+        if (md5 == null) {
+            return false;
+        }
+        List<File> candidates;
+        synchronized (byMd5) {
+            Set<File> files = byMd5.get(md5);
+            if (files == null) {
+                return false;
+            }
+            candidates = new ArrayList<>(files);
+        }
+        for (File candidate : candidates) {
+            if (candidate.equals(target)) {
+                continue;
+            }
+            if (!candidate.isFile() || candidate.length() != file.getSize()
+                    || !md5.equals(Checksums.md5Hex(candidate))) {
+                remove(md5, candidate);
+                continue;
+            }
+            File partFile = PartFile.of(target);
+            if (partFile.exists() && !partFile.delete()) {
+                throw new IOException("Failed to clear " + partFile.getAbsolutePath());
+            }
+            try {
+                linker.link(candidate, partFile);
+            } catch (IOException e) {
+                // Another filesystem, or one without hard links
+                if (!warnedCopying) {
+                    warnedCopying = true;
+                    Log.w(TAG, "Copying instead of linking, duplicates take space: " + e.getMessage());
+                }
+                copy(candidate, partFile);
+                metrics.increment(SyncMetrics.FILES_LINK_COPIED);
+            }
+            PartFile.commit(partFile, target);
+            add(md5, target);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Claims the fetch of {@code md5} and returns it, or returns null if another
+     * caller holds it. The holder is to try {@link #link} and otherwise download,
+     * then call {@link #endFetch}; anyone else waits with {@link #awaitFetch} and
+     * claims again. A foreground caller that finds the fetch held marks it
+     * foreground.
+     */
+    Fetch tryBeginFetch(String md5, boolean foreground) {
+        if (md5 == null) {
+            return new Fetch(foreground);
+        }
+        synchronized (fetching) {
+            Fetch other = fetching.get(md5);
+            if (other == null) {
+                Fetch fetch = new Fetch(foreground);
+                fetching.put(md5, fetch);
+                return fetch;
+            }
+            if (foreground) {
+                other.foreground = true;
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Waits until nobody holds the fetch of {@code md5}.
+     */
+    void awaitFetch(String md5, CancellationToken cancel) throws InterruptedIOException {
+        Fetch other;
+        synchronized (fetching) {
+            other = fetching.get(md5);
+        }
+        if (other == null) {
+            return;
+        }
+        try {
+            while (!other.done.await(FETCH_WAIT_SLICE_MILLIS, TimeUnit.MILLISECONDS)) {
+                cancel.throwIfCancelled();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for another download");
+        }
+    }
+
+    void endFetch(String md5) {
+        if (md5 == null) {
+            return;
+        }
+        Fetch fetch;
+        synchronized (fetching) {
+            fetch = fetching.remove(md5);
+        }
+        if (fetch != null) {
+            fetch.done.countDown();
+        }
+    }
+
+    private static void copy(File from, File to) throws IOException {
+        try (InputStream in = new FileInputStream(from);
+             OutputStream out = new FileOutputStream(to)) {
+            byte[] buffer = new byte[COPY_BUFFER_SIZE];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+        }
+    }
+
+    /**
+     * A claimed download of one piece of content.
+     */
+    static final class Fetch {
+        private final CountDownLatch done = new CountDownLatch(1);
+        private volatile boolean foreground;
+
+        Fetch(boolean foreground) {
+            this.foreground = foreground;
+        }
+
+        /** Whether a screen is waiting on this content, whoever started the fetch. */
+        boolean isForeground() {
+            return foreground;
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package com.example.justlearnitappp.drive;
+
+import java.io.IOException;
+
+/**
+ * Thrown when a background download stops at a chunk boundary to make room for
+ * foreground work. Everything written so far is checkpointed and the download
+ * resumes from there when it runs again.
+ */
+class DownloadPreemptedException extends IOException {
+    DownloadPreemptedException(String message) {
+        super(message);
+    }
+}
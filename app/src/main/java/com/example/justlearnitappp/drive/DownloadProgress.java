@@ -0,0 +1,15 @@
+package com.example.justlearnitappp.drive;
+
+/**
+ * Receives the bytes of a download as they reach disk.
+ */
+interface DownloadProgress {
+    DownloadProgress NONE = count -> { };
+
+    void onBytes(long count);
+
+    /** Bytes a resumed download already had on disk, reported once when it starts. */
+    default void onResumed(long count) {
+        onBytes(count);
+    }
+}
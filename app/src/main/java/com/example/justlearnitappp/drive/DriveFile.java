@@ -0,0 +1,80 @@
+package com.example.justlearnitappp.drive;
+
+/**
+ * Metadata of a file in a Drive folder, as returned by the listing or the changes feed.
+ */
+public class DriveFile {
+    public static final String FOLDER_MIME_TYPE = "application/vnd.google-apps.folder";
+
+    private final String id;
+    private final String name;
+    private final String mimeType;
+    private final long size;
+    private final String md5Checksum;
+    private final long version;
+    private final long lastModified;
+
+    public DriveFile(String id, String name, String mimeType, long size,
+                     String md5Checksum, long version, long lastModified) {
+        this.id = id;
+        this.name = name;
+        this.mimeType = mimeType;
+        this.size = size;
+        this.md5Checksum = md5Checksum;
+        this.version = version;
+        this.lastModified = lastModified;
+    }
+
+    // Size, checksum and version are absent for folders and Google Docs types
+    static DriveFile fromApi(com.google.api.services.drive.model.File file) {
+        return new DriveFile(
+                file.getId(),
+                file.getName(),
+                file.getMimeType(),
+                file.getSize() != null ? file.getSize() : -1,
+                file.getMd5Checksum(),
+                file.getVersion() != null ? file.getVersion() : 0,
+                file.getModifiedTime() != null ? file.getModifiedTime().getValue() : 0);
+    }
+
+    public String getId() { return id; }
+    /** The file's name, or its path relative to the synced folder for files in subfolders. */
+    public String getName() { return name; }
+    public String getMimeType() { return mimeType; }
+    public long getSize() { return size; }
+    public String getMd5Checksum() { return md5Checksum; }
+    public long getVersion() { return version; }
+    public long getLastModified() { return lastModified; }
+
+    /**
+     * Whether the name can stand as one element of a local path. Drive takes any
+     * name, ".." and names with slashes included.
+     */
+    boolean hasSafeName() {
+        return name != null && !name.isEmpty() && !".".equals(name) && !"..".equals(name)
+                && name.indexOf('/') < 0 && name.indexOf('\\') < 0 && name.indexOf('\0') < 0;
+    }
+
+    public boolean isFolder() {
+        return FOLDER_MIME_TYPE.equals(mimeType);
+    }
+
+    /**
+     * This file placed under {@code directory}, a path relative to the synced
+     * folder. Planning and downloads work on these paths, so nested files keep
+     * their place in the tree.
+     */
+    public DriveFile inDirectory(String directory) {
+        if (directory.isEmpty()) {
+            return this;
+        }
+        return new DriveFile(id, directory + "/" + name, mimeType, size, md5Checksum, version, lastModified);
+    }
+
+    /**
+     * Whether the file has bytes that can be downloaded with alt=media.
+     */
+    public boolean hasBinaryContent() {
+        return md5Checksum != null || size >= 0;
+    }
+}
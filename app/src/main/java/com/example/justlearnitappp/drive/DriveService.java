@@ -3,41 +3,150 @@ package com.example.justlearnitappp.drive;
 import android.content.Context;
 import android.util.Log;
 
+import com.example.justlearnitappp.concurrent.CancellationToken;
 import com.example.justlearnitappp.security.CredentialsManager;
+import com.google.api.client.auth.oauth2.Credential;
+import com.google.api.client.auth.oauth2.CredentialRefreshListener;
+import com.google.api.client.auth.oauth2.TokenErrorResponse;
+import com.google.api.client.auth.oauth2.TokenResponse;
 import com.google.api.client.googleapis.auth.oauth2.GoogleCredential;
+import com.google.api.client.googleapis.batch.BatchRequest;
+import com.google.api.client.googleapis.batch.json.JsonBatchCallback;
+import com.google.api.client.googleapis.json.GoogleJsonError;
+import com.google.api.client.http.HttpHeaders;
+import com.google.api.client.http.HttpResponseException;
 import com.google.api.client.http.javanet.NetHttpTransport;
 import com.google.api.client.json.gson.GsonFactory;
 import com.google.api.services.drive.Drive;
+import com.google.api.services.drive.DriveRequest;
 import com.google.api.services.drive.DriveScopes;
-import com.google.api.services.drive.model.FileList;
+import com.google.api.services.drive.model.Change;
+import com.google.api.services.drive.model.ChangeList;
+import com.google.api.services.drive.model.StartPageToken;
 
+import java.io.BufferedOutputStream;
 import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class DriveService {
     private static final String TAG = "DriveService";
+    private static final String CHANGE_TOKENS_FILE = "drive_change_tokens.properties";
+    private static final String MANIFEST_DIR = "sync_manifests";
+    private static final String STORAGE_STATE_FILE = "storage_state.properties";
+    private static final String FILE_FIELDS = "id, name, mimeType, size, md5Checksum, version, modifiedTime";
+    private static final String CHANGE_FIELDS =
+            "nextPageToken, newStartPageToken, changes(fileId, removed, file(" + FILE_FIELDS + ", parents, trashed))";
+    private static final int CHANGES_PAGE_SIZE = 1000;
+    // Drive returns 100 files per listing page unless asked for more; 1000 is the maximum
+    static final int DEFAULT_LIST_PAGE_SIZE = 1000;
+    public static final long DEFAULT_RESUMABLE_THRESHOLD = 8L * 1024 * 1024;
+    public static final long DEFAULT_MIN_RESYNC_INTERVAL_MS = 5 * 60 * 1000;
+    // Idle keep-alive connections HttpURLConnection holds per host; covers the
+    // scheduler's workers plus the ranges of a segmented download
+    private static final int MAX_IDLE_CONNECTIONS = 16;
+    // The credential refreshes a token with less than a minute left, so a cached one
+    // is only worth restoring when it has more than that
+    private static final long ACCESS_TOKEN_MIN_REMAINING_MS = 2 * 60 * 1000;
+    // Someone is waiting on a file they opened, so it goes ahead of all sync work
+    private static final int OPEN_PRIORITY = Integer.MAX_VALUE;
+
+    private static DriveService instance;
+
     private final Drive driveService;
     private final Context context;
     private final CredentialsManager credentialsManager;
+    private final SyncScheduler scheduler = SyncScheduler.getInstance();
+    private final ChangeTokenStore changeTokens;
+    private final File manifestDir;
+    private final Map<String, SyncManifest> manifests = new HashMap<>();
+    private final StorageManager storage;
+    private volatile ResumableDownloader resumableDownloader;
+    private volatile SegmentedDownloader segmentedDownloader;
+    private volatile boolean incrementalSyncEnabled = true;
+    private volatile long resumableThreshold = DEFAULT_RESUMABLE_THRESHOLD;
+    private volatile FsyncPolicy fsyncPolicy = FsyncPolicy.ON_COMMIT;
+    private volatile long segmentedThreshold = SegmentedDownloader.DEFAULT_THRESHOLD;
+    private volatile long backgroundThreshold = DEFAULT_RESUMABLE_THRESHOLD;
+    private volatile long minResyncIntervalMillis = DEFAULT_MIN_RESYNC_INTERVAL_MS;
+    private volatile long progressIntervalMillis = ProgressReporter.DEFAULT_INTERVAL_MS;
+    private volatile int listPageSize = DEFAULT_LIST_PAGE_SIZE;
+    // Folder id -> run currently syncing it, and when each folder last synced cleanly
+    private final Map<String, SyncRun> inFlightRuns = new HashMap<>();
+    private final Map<String, Long> lastSyncedNanos = new HashMap<>();
+    // Every folder ever passed to syncFolders; a tree walk leaves these to their own sync
+    private final Set<String> syncFolderIds = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    private final SyncMetrics metrics = new SyncMetrics();
+    private final RetryEngine retry = new RetryEngine(scheduler, metrics,
+            new CircuitBreaker(CircuitBreaker.DEFAULT_FAILURE_THRESHOLD, CircuitBreaker.DEFAULT_OPEN_MILLIS));
+    private final BandwidthLimiter bandwidth = new BandwidthLimiter();
+    private volatile NetworkGate networkGate;
+    private final ContentIndex contentIndex;
+    // File id -> fetch started by openFile and the callbacks waiting for it
+    private final Map<String, PendingOpen> pendingOpens = new HashMap<>();
+
+    /**
+     * Returns the process-wide service, creating it on first use. All screens share
+     * its transport, credential and sync state, so the auth handshake happens once
+     * per process. A service that failed to initialize is retried on the next call.
+     */
+    public static synchronized DriveService getInstance(Context context) {
+        if (instance == null || !instance.isInitialized()) {
+            instance = new DriveService(context.getApplicationContext());
+        }
+        return instance;
+    }
 
-    public DriveService(Context context) {
+    private DriveService(Context context) {
         this.context = context;
         try {
-            this.credentialsManager = new CredentialsManager(context);
+            this.credentialsManager = CredentialsManager.getInstance(context);
             this.driveService = initializeDriveService();
+            this.changeTokens = new ChangeTokenStore(new File(context.getFilesDir(), CHANGE_TOKENS_FILE));
+            this.manifestDir = new File(context.getFilesDir(), MANIFEST_DIR);
+            this.storage = new StorageManager(new File(context.getFilesDir(), STORAGE_STATE_FILE),
+                    this::getManifest, metrics, StorageManager.INODE);
+            this.resumableDownloader = new ResumableDownloader(driveService, ResumableDownloader.DEFAULT_CHUNK_SIZE);
+            this.segmentedDownloader = new SegmentedDownloader(driveService, SegmentedDownloader.DEFAULT_SEGMENT_COUNT);
+            this.networkGate = new NetworkGate(new AndroidConnectivitySource(context), this::syncFolders);
+            this.contentIndex = new ContentIndex(ContentIndex.HARD_LINK, metrics);
         } catch (Exception e) {
             Log.e(TAG, "Error initializing DriveService", e);
             throw new RuntimeException("Failed to initialize DriveService", e);
         }
     }
 
+    // For tests: wraps an already built client and keeps sync state under stateDir
+    DriveService(Drive driveService, File stateDir) {
+        this.context = null;
+        this.credentialsManager = null;
+        this.driveService = driveService;
+        this.changeTokens = new ChangeTokenStore(new File(stateDir, CHANGE_TOKENS_FILE));
+        this.manifestDir = new File(stateDir, MANIFEST_DIR);
+        this.storage = new StorageManager(new File(stateDir, STORAGE_STATE_FILE), this::getManifest, metrics,
+                StorageManager.PATHS);
+        this.resumableDownloader = new ResumableDownloader(driveService, ResumableDownloader.DEFAULT_CHUNK_SIZE);
+        this.segmentedDownloader = new SegmentedDownloader(driveService, SegmentedDownloader.DEFAULT_SEGMENT_COUNT);
+        this.networkGate = new NetworkGate(ConnectivitySource.ALWAYS_UNMETERED, this::syncFolders);
+        // Hard links and inodes need the device's libcore
+        this.contentIndex = new ContentIndex(ContentIndex.COPY, metrics);
+    }
+
     private Drive initializeDriveService() {
         try {
             Log.d(TAG, "Initializing Drive service...");
@@ -48,167 +157,1427 @@ public class DriveService {
                 return null;
             }
 
+            if (System.getProperty("http.maxConnections") == null) {
+                System.setProperty("http.maxConnections", String.valueOf(MAX_IDLE_CONNECTIONS));
+            }
+            // Token requests go over the same transport as Drive calls
+            NetHttpTransport transport = new NetHttpTransport();
             InputStream credentialsStream = new ByteArrayInputStream(credentialsJson.getBytes());
-            GoogleCredential credential = GoogleCredential.fromStream(credentialsStream)
-                    .createScoped(Collections.singleton(DriveScopes.DRIVE_FILE));
+            GoogleCredential credential = GoogleCredential.fromStream(
+                    credentialsStream, transport, GsonFactory.getDefaultInstance())
+                    .createScoped(Collections.singleton(DriveScopes.DRIVE_FILE))
+                    .toBuilder()
+                    .addRefreshListener(new CredentialRefreshListener() {
+                        @Override
+                        public void onTokenResponse(Credential refreshed, TokenResponse tokenResponse) {
+                            saveAccessToken(refreshed);
+                        }
+
+                        @Override
+                        public void onTokenErrorResponse(Credential refreshed, TokenErrorResponse tokenErrorResponse) {
+                            credentialsManager.deleteAccessToken();
+                        }
+                    })
+                    .build();
+            restoreAccessToken(credential);
 
             Drive service = new Drive.Builder(
-                    new NetHttpTransport(),
+                    transport,
                     GsonFactory.getDefaultInstance(),
                     credential)
                     .setApplicationName("JustLearnIt")
                     .build();
-            
-            // Test the connection using a specific folder ID
-            try {
-                service.files().get("1osgmsHhvsUeMMtTwfd_xuD-8jYZjoZlr").execute();
-                Log.d(TAG, "Drive service initialized and connection test successful");
-            } catch (IOException e) {
-                Log.e(TAG, "Drive service connection test failed. Please verify the folder ID and service account permissions.", e);
-                return null;
-            }
-            
+
+            // No probe request here: access problems surface from the first sync's
+            // folder check, which is batched with the other startup metadata calls
+            Log.d(TAG, "Drive service initialized");
             return service;
-        } catch (IOException e) {
+        } catch (Exception e) {
             Log.e(TAG, "Error initializing Drive service", e);
             return null;
         }
     }
 
+    /**
+     * Puts a saved access token back on the credential if it is still valid for a
+     * while, so the first request of a cold start needs no token round trip.
+     */
+    private void restoreAccessToken(GoogleCredential credential) {
+        CredentialsManager.AccessToken token = credentialsManager.getAccessToken();
+        if (token == null) {
+            return;
+        }
+        long remaining = token.getExpiresAtMillis() - System.currentTimeMillis();
+        if (remaining > ACCESS_TOKEN_MIN_REMAINING_MS) {
+            credential.setAccessToken(token.getToken());
+            credential.setExpirationTimeMilliseconds(token.getExpiresAtMillis());
+            Log.d(TAG, "Reusing cached access token, valid for " + remaining / 1000 + "s");
+        }
+    }
+
+    private void saveAccessToken(Credential credential) {
+        Long expiresAt = credential.getExpirationTimeMilliseconds();
+        if (credential.getAccessToken() == null || expiresAt == null) {
+            return;
+        }
+        try {
+            credentialsManager.saveAccessToken(credential.getAccessToken(), expiresAt);
+        } catch (Exception e) {
+            Log.w(TAG, "Could not cache access token", e);
+        }
+    }
+
+    public boolean isInitialized() {
+        return driveService != null;
+    }
+
+    /**
+     * Receives the outcome of a sync. Everything except {@link #onSuccess} and
+     * {@link #onError} is optional and is called on a sync thread.
+     */
     public interface SyncCallback {
         void onSuccess(String message);
         void onError(String error);
+
+        /** Run progress, at most once per progress interval. */
+        default void onProgress(SyncProgress progress) {
+        }
+
+        /**
+         * A folder has all of its files on disk, or has given up on some of them or
+         * put them off until the network allows them.
+         */
+        default void onFolderSynced(SyncFolder folder, boolean success) {
+        }
+
+        /** The full result, called just before {@link #onSuccess} or {@link #onError}. */
+        default void onComplete(SyncResult result) {
+        }
+    }
+
+    /**
+     * Counters and latencies of every sync this service has run in this process.
+     */
+    public SyncMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Checks the files of {@code folders} already on disk against their manifests,
+     * hashing on every core. Damaged files are deleted and marked remote-only:
+     * eagerly synced folders download them again on their next sync, however
+     * recent the last one, the others when they are opened. Folders with a sync
+     * in flight are skipped. Returns the number of damaged files.
+     */
+    public int verifyLocalFiles(List<SyncFolder> folders) {
+        long start = System.nanoTime();
+        Map<SyncFolder, SyncManifest> toScan = new LinkedHashMap<>();
+        synchronized (inFlightRuns) {
+            for (SyncFolder folder : folders) {
+                if (inFlightRuns.containsKey(folder.getFolderId())) {
+                    Log.d(TAG, "Not verifying folder while it syncs: " + folder.getName());
+                } else {
+                    toScan.put(folder, getManifest(folder.getFolderId()));
+                }
+            }
+        }
+
+        List<IntegrityScanner.Damage> damaged;
+        try {
+            damaged = new IntegrityScanner().scan(toScan);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return 0;
+        }
+        for (IntegrityScanner.Damage damage : damaged) {
+            SyncFolder folder = damage.folder;
+            Log.w(TAG, "Damaged: " + folder.getName() + "/" + damage.entry.getPath() + " (" + damage.reason + ")");
+            deleteFile(new File(folder.getLocalPath()), damage.entry.getPath());
+            toScan.get(folder).put(damage.entry.asRemoteOnly());
+            if (folder.getFetchPolicy() == SyncFolder.FetchPolicy.EAGER) {
+                // The changes feed only reports files that changed on Drive, so list the folder again
+                changeTokens.remove(folder.getFolderId());
+                synchronized (inFlightRuns) {
+                    lastSyncedNanos.remove(folder.getFolderId());
+                }
+            }
+            metrics.add(SyncMetrics.FILES_DAMAGED, folder.getName(), 1);
+        }
+        for (SyncManifest manifest : toScan.values()) {
+            if (manifest.isDirty()) {
+                try {
+                    manifest.save();
+                } catch (IOException e) {
+                    Log.e(TAG, "Error saving manifest after verification", e);
+                }
+            }
+        }
+        metrics.recordSince(SyncMetrics.LATENCY_VERIFY, start);
+        return damaged.size();
+    }
+
+    /**
+     * Disk budget and eviction for the folders this service syncs.
+     */
+    public StorageManager getStorage() {
+        return storage;
+    }
+
+    public interface OpenCallback {
+        void onReady(File file);
+        void onError(String error);
+    }
+
+    private static class PendingOpen {
+        final List<OpenCallback> callbacks = new ArrayList<>();
+        final SyncRun run = new SyncRun();
+    }
+
+    /**
+     * Returns the local copy of {@code name} if its bytes are on disk. Otherwise
+     * returns null, fetches the file ahead of any queued sync work and reports to
+     * {@code callback} on a sync thread; callers show a placeholder until then.
+     */
+    public File openFile(SyncFolder folder, String name, OpenCallback callback) {
+        return openFile(folder, name, callback, new CancellationToken());
     }
 
-    public void syncFiles(String localPath, String folderId, SyncCallback callback) {
+    /**
+     * Opens like {@link #openFile(SyncFolder, String, OpenCallback)}, dropping
+     * {@code callback} once {@code cancel} is cancelled. The fetch stops when no
+     * caller is left waiting for it.
+     */
+    public File openFile(SyncFolder folder, String name, OpenCallback callback, CancellationToken cancel) {
+        storage.track(folder);
+        SyncManifest manifest = getManifest(folder.getFolderId());
+        contentIndex.addFolder(folder, manifest);
+        SyncManifest.Entry entry = manifest.getByPath(name);
+        if (entry == null) {
+            callback.onError("Not in the synced catalog: " + name);
+            return null;
+        }
+        File localFile;
+        try {
+            localFile = resolve(new File(folder.getLocalPath()), entry.getPath());
+        } catch (IOException e) {
+            callback.onError(e.getMessage());
+            return null;
+        }
+        if (entry.isLocal() && localFile.isFile()) {
+            storage.recordAccess(entry.getFileId());
+            return localFile;
+        }
         if (driveService == null) {
             callback.onError("Drive service not initialized");
-            return;
+            return null;
         }
 
-        new Thread(() -> {
-            try {
-                Log.d(TAG, "Starting sync process for folder: " + folderId);
-                File localDir = new File(localPath);
-                if (!localDir.exists() && !localDir.mkdirs()) {
-                    callback.onError("Failed to create local directory: " + localPath);
-                    return;
-                }
-
-                List<DriveFile> driveFiles = listFilesInFolder(folderId);
-                if (driveFiles == null) {
-                    callback.onError("Failed to list files in Drive folder");
-                    return;
-                }
-
-                Log.d(TAG, "Found " + driveFiles.size() + " files in Drive folder");
-                for (DriveFile file : driveFiles) {
-                    try {
-                        File localFile = new File(localDir, file.getName());
-                        if (!localFile.exists() || localFile.lastModified() < file.getLastModified()) {
-                            downloadFile(file.getId(), localFile.getAbsolutePath());
-                            Log.d(TAG, "Downloaded/Updated: " + file.getName());
-                        } else {
-                            Log.d(TAG, "Skipped (up to date): " + file.getName());
-                        }
-                    } catch (IOException e) {
-                        Log.e(TAG, "Error processing file: " + file.getName(), e);
+        PendingOpen pending;
+        boolean started;
+        synchronized (pendingOpens) {
+            pending = pendingOpens.get(entry.getFileId());
+            started = pending != null;
+            if (!started) {
+                pending = new PendingOpen();
+                pendingOpens.put(entry.getFileId(), pending);
+            }
+            pending.callbacks.add(callback);
+        }
+        PendingOpen opened = pending;
+        CancellationToken.Registration registration =
+                cancel.onCancel(() -> abandonOpen(entry.getFileId(), opened, callback));
+        opened.run.addListener(registration::remove);
+        if (!started) {
+            scheduler.submit(opened.run, folder.getFolderId(), OPEN_PRIORITY, 0,
+                    () -> fetchOnOpen(folder, manifest, entry, localFile, opened));
+        }
+        return null;
+    }
+
+    private void abandonOpen(String fileId, PendingOpen pending, OpenCallback callback) {
+        synchronized (pendingOpens) {
+            if (!pending.callbacks.remove(callback) || !pending.callbacks.isEmpty()) {
+                return;
+            }
+            if (pendingOpens.get(fileId) == pending) {
+                pendingOpens.remove(fileId);
+            }
+        }
+        pending.run.cancel();
+    }
+
+    /**
+     * Files the catalog of {@code folder} holds, including those whose bytes have
+     * not been fetched yet.
+     */
+    public List<SyncManifest.Entry> getCatalog(SyncFolder folder) {
+        return getManifest(folder.getFolderId()).entries();
+    }
+
+    private void fetchOnOpen(SyncFolder folder, SyncManifest manifest, SyncManifest.Entry entry, File localFile,
+                             PendingOpen pending) {
+        DriveFile file = new DriveFile(entry.getFileId(), entry.getPath(), null, entry.getSize(),
+                entry.getMd5Checksum(), entry.getVersion(), entry.getModifiedTime());
+        long start = System.nanoTime();
+        String error = null;
+        try {
+            storage.makeRoom(entry.getSize());
+            downloadFile(file, localFile, DownloadProgress.NONE, SyncScheduler.Yield.NEVER,
+                    pending.run.getCancellation(), true);
+            // A sync may have moved the entry on meanwhile; only a file still at the
+            // fetched version is recorded as present
+            SyncManifest.Entry current = manifest.get(entry.getFileId());
+            if (current != null && SyncPlanner.sameContent(current, file)
+                    && current.getPath().equals(entry.getPath())) {
+                manifest.put(SyncManifest.Entry.of(file, entry.getPath()));
+                manifest.save();
+            }
+            storage.recordAccess(entry.getFileId());
+            metrics.recordSince(SyncMetrics.LATENCY_OPEN, start);
+            metrics.add(SyncMetrics.FILES_OPENED, folder.getName(), 1);
+        } catch (IOException e) {
+            if (pending.run.isCancelled()) {
+                Log.d(TAG, "Fetch cancelled, nobody is waiting for it: " + entry.getPath());
+                return;
+            }
+            Log.e(TAG, "Error fetching opened file: " + entry.getPath(), e);
+            metrics.increment(SyncMetrics.ERRORS_OPEN);
+            error = "Failed to download " + entry.getPath() + ": " + e.getMessage();
+        }
+
+        List<OpenCallback> waiting;
+        synchronized (pendingOpens) {
+            if (pendingOpens.get(entry.getFileId()) == pending) {
+                pendingOpens.remove(entry.getFileId());
+            }
+            waiting = new ArrayList<>(pending.callbacks);
+            pending.callbacks.clear();
+        }
+        for (OpenCallback callback : waiting) {
+            if (error == null) {
+                callback.onReady(localFile);
+            } else {
+                callback.onError(error);
+            }
+        }
+    }
+
+    public void setMaxConcurrentDownloads(int maxConcurrent) {
+        scheduler.setMaxConcurrentDownloads(maxConcurrent);
+    }
+
+    public SyncRun syncFiles(String localPath, String folderId, SyncCallback callback) {
+        return syncFolders(Collections.singletonList(new SyncFolder(folderId, folderId, localPath)), callback);
+    }
+
+    /**
+     * A folder that finished a clean sync less than this long ago is not synced
+     * again when another screen asks for it.
+     */
+    public void setMinResyncInterval(long millis) {
+        this.minResyncIntervalMillis = millis;
+    }
+
+    /**
+     * Minimum time between two {@link SyncCallback#onProgress} calls of one run.
+     */
+    public void setProgressInterval(long millis) {
+        this.progressIntervalMillis = millis;
+    }
+
+    /**
+     * Files requested per listing page. Each page is planned, and its downloads
+     * queued, before the next one is requested.
+     */
+    void setListPageSize(int pageSize) {
+        this.listPageSize = pageSize;
+    }
+
+    /**
+     * How long failed Drive calls wait before they are retried; see {@link RetryEngine}.
+     */
+    void setRetryBackoff(long baseMillis, long maxMillis) {
+        retry.setBackoff(baseMillis, maxMillis);
+    }
+
+    public void setIncrementalSyncEnabled(boolean enabled) {
+        this.incrementalSyncEnabled = enabled;
+    }
+
+    /**
+     * Files of at least this many bytes are downloaded in chunks that survive
+     * process death and network drops.
+     */
+    public void setResumableDownloadThreshold(long bytes) {
+        this.resumableThreshold = bytes;
+    }
+
+    /**
+     * Bytes fetched per request by resumable downloads; progress is checkpointed and
+     * background downloads can pause after every chunk.
+     */
+    public void setResumableChunkSize(int bytes) {
+        ResumableDownloader downloader = new ResumableDownloader(driveService, bytes);
+        downloader.setFsyncPolicy(fsyncPolicy);
+        this.resumableDownloader = downloader;
+    }
+
+    /**
+     * Files of at least this many bytes download in the background lane, which
+     * foreground work can pause at chunk boundaries. Keep it at or above the
+     * resumable threshold so those downloads can pick up where they paused.
+     */
+    public void setBackgroundDownloadThreshold(long bytes) {
+        this.backgroundThreshold = bytes;
+    }
+
+    /**
+     * Files of at least {@code thresholdBytes} are fetched as {@code segmentCount}
+     * byte ranges over parallel connections.
+     */
+    public void setSegmentedDownload(int segmentCount, long thresholdBytes) {
+        SegmentedDownloader downloader = new SegmentedDownloader(driveService, segmentCount);
+        downloader.setFsyncPolicy(fsyncPolicy);
+        this.segmentedDownloader = downloader;
+        this.segmentedThreshold = thresholdBytes;
+    }
+
+    // For tests: folders put off on the previous source stay held
+    void setConnectivitySource(ConnectivitySource source) {
+        this.networkGate = new NetworkGate(source, this::syncFolders);
+    }
+
+    NetworkGate getNetworkGate() {
+        return networkGate;
+    }
+
+    ContentIndex getContentIndex() {
+        return contentIndex;
+    }
+
+    /**
+     * Caps download bandwidth in bytes per second, separately for files opened on
+     * screen and for background sync; {@code 0} means no cap. Background sync also
+     * holds off while an opened file is downloading. Takes effect on downloads
+     * already running.
+     */
+    public void setBandwidthLimits(long foregroundBytesPerSecond, long backgroundBytesPerSecond) {
+        bandwidth.setLimits(foregroundBytesPerSecond, backgroundBytesPerSecond);
+    }
+
+    /**
+     * When downloads force their bytes to storage; {@link FsyncPolicy#ON_COMMIT} by default.
+     */
+    public void setFsyncPolicy(FsyncPolicy policy) {
+        this.fsyncPolicy = policy;
+        resumableDownloader.setFsyncPolicy(policy);
+        segmentedDownloader.setFsyncPolicy(policy);
+    }
+
+    /**
+     * Syncs like {@link #syncFolders(List, SyncCallback)} and cancels the run when
+     * {@code cancel} is cancelled, such as when the screen that asked for it goes away.
+     */
+    public SyncRun syncFolders(List<SyncFolder> folders, SyncCallback callback, CancellationToken cancel) {
+        SyncRun run = syncFolders(folders, callback);
+        CancellationToken.Registration registration = cancel.onCancel(() -> run.cancel());
+        run.addListener(registration::remove);
+        return run;
+    }
+
+    public SyncRun syncFolders(List<SyncFolder> folders, SyncCallback callback) {
+        SyncRun run = new SyncRun();
+        if (driveService == null) {
+            callback.onError("Drive service not initialized");
+            return run;
+        }
+        long runStart = System.nanoTime();
+        metrics.increment(SyncMetrics.SYNC_RUNS);
+
+        // Higher-priority folders lead the metadata work they share with others
+        List<SyncFolder> byPriority = new ArrayList<>(folders);
+        Collections.sort(byPriority, (a, b) -> Integer.compare(b.getPriority(), a.getPriority()));
+        for (SyncFolder folder : byPriority) {
+            storage.track(folder);
+            syncFolderIds.add(folder.getFolderId());
+        }
+
+        // A folder another run is already syncing is joined rather than synced twice
+        List<SyncRun> joinedRuns = new ArrayList<>();
+        List<SyncFolder> toSync = new ArrayList<>();
+        long now = System.nanoTime();
+        synchronized (inFlightRuns) {
+            for (SyncFolder folder : byPriority) {
+                String folderId = folder.getFolderId();
+                SyncRun inFlight = inFlightRuns.get(folderId);
+                Long lastSynced = lastSyncedNanos.get(folderId);
+                if (inFlight != null) {
+                    Log.d(TAG, "Joining in-flight sync of folder: " + folderId);
+                    if (!joinedRuns.contains(inFlight)) {
+                        joinedRuns.add(inFlight);
                     }
+                } else if (lastSynced != null
+                        && TimeUnit.NANOSECONDS.toMillis(now - lastSynced) < minResyncIntervalMillis) {
+                    Log.d(TAG, "Skipping recently synced folder: " + folderId);
+                } else {
+                    inFlightRuns.put(folderId, run);
+                    toSync.add(folder);
                 }
+            }
+        }
+
+        // Folders with a saved token only need the changes since that token. Folders
+        // saved together share a token, so they are served by a single changes feed.
+        ProgressReporter progress = new ProgressReporter(callback, progressIntervalMillis);
+        List<FolderSync> folderSyncs = new ArrayList<>();
+        List<FolderSync> fullSyncs = new ArrayList<>();
+        Map<String, List<FolderSync>> incrementalSyncs = new LinkedHashMap<>();
+        for (SyncFolder folder : toSync) {
+            FolderSync folderSync = new FolderSync(folder, callback, progress);
+            folderSyncs.add(folderSync);
+            String token = incrementalSyncEnabled ? changeTokens.get(folder.getFolderId()) : null;
+            // The changes feed can only be mapped onto subfolders the manifest knows about
+            if (token != null && !getManifest(folder.getFolderId()).isTreeRecorded()) {
+                Log.d(TAG, "No subfolder tree recorded yet, listing folder: " + folder.getName());
+                token = null;
+            }
+            if (token == null) {
+                fullSyncs.add(folderSync);
+                continue;
+            }
+            List<FolderSync> group = incrementalSyncs.get(token);
+            if (group == null) {
+                group = new ArrayList<>();
+                incrementalSyncs.put(token, group);
+            }
+            group.add(folderSync);
+        }
 
+        run.addListener(() -> {
+            saveManifests(folderSyncs);
+            saveChangeTokens(folderSyncs);
+            finishInFlight(run, folderSyncs);
+            storage.trim();
+            metrics.recordSince(SyncMetrics.LATENCY_RUN, runStart);
+            List<String> errors = run.getErrors();
+            progress.reportNow();
+            callback.onComplete(new SyncResult(errors, run.getFailedFiles(),
+                    progress.getFilesDownloaded(), progress.getBytesDownloaded()));
+            if (errors.isEmpty()) {
                 callback.onSuccess("Sync completed successfully");
-            } catch (Exception e) {
-                Log.e(TAG, "Error during sync process", e);
-                callback.onError("Sync failed: " + e.getMessage());
+            } else {
+                callback.onError("Sync failed: " + errors.get(0));
+            }
+            if (!run.isCancelled()) {
+                holdDeferred(folderSyncs);
+            }
+        });
+
+        // Hold the run open until every folder has been queued
+        run.taskSubmitted();
+        for (SyncRun joined : joinedRuns) {
+            run.taskSubmitted();
+            joined.addListener(() -> {
+                for (String error : joined.getErrors()) {
+                    run.addError(error);
+                }
+                for (SyncResult.FailedFile failed : joined.getFailedFiles()) {
+                    run.addFailedFile(failed);
+                }
+                run.taskFinished();
+            });
+        }
+        if (!fullSyncs.isEmpty()) {
+            submitMetadata(run, fullSyncs, () -> startFullSyncs(run, fullSyncs));
+        }
+        for (Map.Entry<String, List<FolderSync>> entry : incrementalSyncs.entrySet()) {
+            String token = entry.getKey();
+            List<FolderSync> group = entry.getValue();
+            submitMetadata(run, group, () -> syncChanges(run, token, group));
+        }
+        run.taskFinished();
+        return run;
+    }
+
+    /**
+     * Queues work shared by a group of folders under the first of them, which has
+     * the highest priority since groups are built in priority order.
+     */
+    private void submitMetadata(SyncRun run, List<FolderSync> group, Runnable body) {
+        SyncFolder leader = group.get(0).folder;
+        scheduler.submit(run, leader.getFolderId(), leader.getPriority(), 0, body);
+    }
+
+    private void holdDeferred(List<FolderSync> folderSyncs) {
+        NetworkGate gate = networkGate;
+        for (FolderSync folderSync : folderSyncs) {
+            if (folderSync.deferred && !folderSync.failed) {
+                gate.hold(folderSync.folder, folderSync.callback);
             }
-        }).start();
+        }
     }
 
-    private List<DriveFile> listFilesInFolder(String folderId) {
+    private void finishInFlight(SyncRun run, List<FolderSync> folderSyncs) {
+        long now = System.nanoTime();
+        synchronized (inFlightRuns) {
+            for (FolderSync folderSync : folderSyncs) {
+                String folderId = folderSync.folder.getFolderId();
+                if (inFlightRuns.get(folderId) == run) {
+                    inFlightRuns.remove(folderId);
+                }
+                if (!folderSync.failed && !folderSync.deferred && !run.isCancelled()) {
+                    lastSyncedNanos.put(folderId, now);
+                }
+            }
+        }
+    }
+
+    private boolean prepareFolder(SyncRun run, FolderSync folderSync) {
+        File localDir = folderSync.localDir;
+        if (!localDir.exists() && !localDir.mkdirs()) {
+            folderSync.failed = true;
+            run.addError("Failed to create local directory: " + localDir.getAbsolutePath());
+            return false;
+        }
+        folderSync.manifest = getManifest(folderSync.folder.getFolderId());
+        contentIndex.addFolder(folderSync.folder, folderSync.manifest);
+        return true;
+    }
+
+    /**
+     * Returns the folder's manifest, reading it from disk the first time it is needed
+     * in this process. An unreadable manifest is replaced, which costs one re-check of
+     * the folder's files against their checksums.
+     */
+    private SyncManifest getManifest(String folderId) {
+        synchronized (manifests) {
+            SyncManifest manifest = manifests.get(folderId);
+            if (manifest == null) {
+                File file = new File(manifestDir, folderId);
+                try {
+                    manifest = SyncManifest.load(file);
+                    Log.d(TAG, "Loaded manifest for folder " + folderId + " with " + manifest.size() + " entries");
+                } catch (IOException e) {
+                    Log.e(TAG, "Error reading manifest, starting a new one: " + file.getAbsolutePath(), e);
+                    manifest = SyncManifest.empty(file);
+                }
+                manifests.put(folderId, manifest);
+            }
+            return manifest;
+        }
+    }
+
+    private void saveManifests(List<FolderSync> folderSyncs) {
+        for (FolderSync folderSync : folderSyncs) {
+            SyncManifest manifest = folderSync.manifest;
+            if (manifest == null || !manifest.isDirty()) {
+                continue;
+            }
+            try {
+                manifest.save();
+            } catch (IOException e) {
+                // The token must not move past changes the manifest failed to record
+                folderSync.failed = true;
+                Log.e(TAG, "Error saving manifest for folder: " + folderSync.folder.getFolderId(), e);
+            }
+        }
+    }
+
+    /**
+     * Checks every folder and takes the changes start-page token in one batched
+     * round trip, then queues the listing of each folder that can be read.
+     */
+    private void startFullSyncs(SyncRun run, List<FolderSync> fullSyncs) {
+        List<FolderSync> readable = new ArrayList<>();
+        final String[] startPageToken = new String[1];
+        BatchRequest batch = driveService.batch();
         try {
-            Log.d(TAG, "Listing files in folder: " + folderId);
-            List<DriveFile> files = new ArrayList<>();
-            
-            // First verify the folder exists
+            if (incrementalSyncEnabled) {
+                driveService.changes().getStartPageToken().queue(batch, new JsonBatchCallback<StartPageToken>() {
+                    @Override
+                    public void onSuccess(StartPageToken token, HttpHeaders responseHeaders) {
+                        startPageToken[0] = token.getStartPageToken();
+                    }
+
+                    @Override
+                    public void onFailure(GoogleJsonError error, HttpHeaders responseHeaders) {
+                        Log.w(TAG, "Could not fetch changes start page token, next sync will be a full sync: "
+                                + error.getMessage());
+                    }
+                });
+            }
+            for (FolderSync folderSync : fullSyncs) {
+                String folderId = folderSync.folder.getFolderId();
+                driveService.files().get(folderId)
+                        .setFields("id, mimeType")
+                        .queue(batch, new JsonBatchCallback<com.google.api.services.drive.model.File>() {
+                            @Override
+                            public void onSuccess(com.google.api.services.drive.model.File folder, HttpHeaders responseHeaders) {
+                                Log.d(TAG, "Folder exists: " + folderId);
+                                readable.add(folderSync);
+                            }
+
+                            @Override
+                            public void onFailure(GoogleJsonError error, HttpHeaders responseHeaders) {
+                                Log.e(TAG, "Folder does not exist or access denied: " + folderId + " (" + error.getMessage() + ")");
+                                metrics.increment(SyncMetrics.ERRORS_METADATA);
+                                folderSync.failed = true;
+                                run.addError("Failed to list files in Drive folder: " + folderSync.folder.getName());
+                                folderStepDone(folderSync);
+                            }
+                        });
+            }
+            executeTimed(batch, SyncMetrics.LATENCY_METADATA);
+        } catch (IOException e) {
+            Log.e(TAG, "Error checking Drive folders", e);
+            metrics.increment(SyncMetrics.ERRORS_METADATA);
+            for (FolderSync folderSync : fullSyncs) {
+                folderSync.failed = true;
+                folderStepDone(folderSync);
+            }
+            run.addError("Failed to reach Drive: " + e.getMessage());
+            return;
+        }
+
+        for (FolderSync folderSync : readable) {
+            folderSync.newStartPageToken = startPageToken[0];
+            scheduler.submit(run, folderSync.folder.getFolderId(), folderSync.folder.getPriority(), 0,
+                    () -> syncFolder(run, folderSync));
+        }
+    }
+
+    private void syncFolder(SyncRun run, FolderSync folderSync) {
+        try {
+            Log.d(TAG, "Starting sync process for folder: " + folderSync.folder.getFolderId());
+            if (prepareFolder(run, folderSync)) {
+                TreeWalk walk = new TreeWalk(true);
+                walk.pendingListings.incrementAndGet();
+                listDirectory(run, folderSync, walk, folderSync.folder.getFolderId(), "");
+            }
+        } finally {
+            folderStepDone(folderSync);
+        }
+    }
+
+    /**
+     * Queues the listing of a subfolder found by {@code walk}. Every subfolder is
+     * its own scheduler task, so a tree is walked breadth first with as many
+     * listings in flight as the scheduler allows.
+     */
+    private void submitListing(SyncRun run, FolderSync folderSync, TreeWalk walk, String directoryId, String path) {
+        walk.pendingListings.incrementAndGet();
+        folderSync.pendingSteps.incrementAndGet();
+        scheduler.submit(run, folderSync.folder.getFolderId(), folderSync.folder.getPriority(), 0, () -> {
             try {
-                driveService.files().get(folderId).execute();
-                Log.d(TAG, "Folder exists: " + folderId);
+                listDirectory(run, folderSync, walk, directoryId, path);
+            } finally {
+                folderStepDone(folderSync);
+            }
+        });
+    }
+
+    /**
+     * Lists one folder of the tree, queues its subfolders and plans its files a
+     * page at a time, so downloads of the first page start while later pages are
+     * still being listed.
+     */
+    private void listDirectory(SyncRun run, FolderSync folderSync, TreeWalk walk, String directoryId, String path) {
+        Log.d(TAG, "Listing files in folder: " + directoryId);
+        FolderListing listing = listFolder(directoryId);
+        List<DriveFile> files = new ArrayList<>();
+        try {
+            while (listing.hasNext()) {
+                DriveFile child = listing.next();
+                if (!child.hasSafeName()) {
+                    // Left out like a removed file, so an earlier copy goes too
+                    Log.w(TAG, "Skipping item whose name is not a safe local path: " + child.getName());
+                } else if (child.isFolder() && syncFolderIds.contains(child.getId())) {
+                    // Synced on its own, with its own fetch and network policies
+                    Log.d(TAG, "Skipping subfolder synced as its own folder: " + child.getName());
+                } else if (child.isFolder()) {
+                    String childPath = child.inDirectory(path).getName();
+                    placeDirectory(folderSync, child.getId(), childPath);
+                    walk.seenDirectories.add(child.getId());
+                    submitListing(run, folderSync, walk, child.getId(), childPath);
+                } else {
+                    files.add(child.inDirectory(path));
+                    walk.seenFiles.add(child.getId());
+                }
+                if (listing.isAtPageEnd()) {
+                    planPage(run, folderSync, path, files);
+                    files.clear();
+                }
+            }
+            Log.d(TAG, "Listed " + folderSync.folder.getName() + "/" + path + " in "
+                    + listing.getPageCount() + " pages");
+        } catch (IOException e) {
+            Log.e(TAG, "Error listing files in folder: " + directoryId, e);
+            metrics.increment(SyncMetrics.ERRORS_LIST);
+            walk.failed = true;
+            folderSync.failed = true;
+            run.addError("Failed to list files in Drive folder: "
+                    + (path.isEmpty() ? folderSync.folder.getName() : folderSync.folder.getName() + "/" + path));
+        } finally {
+            if (walk.pendingListings.decrementAndGet() == 0) {
+                finishWalk(run, folderSync, walk);
+            }
+        }
+    }
+
+    private void planPage(SyncRun run, FolderSync folderSync, String path, List<DriveFile> files) {
+        SyncPlanner.Plan plan = SyncPlanner.planPartial(folderSync.manifest, files);
+        Log.d(TAG, "Plan for a page of " + folderSync.folder.getName() + "/" + path + ": "
+                + plan.getDownloads().size() + " to download, " + plan.getRenames().size() + " renamed, "
+                + plan.getUnchanged() + " up to date");
+        applyPlan(run, folderSync, plan);
+    }
+
+    /**
+     * Once a walk from the folder's root has listed the whole tree, removes the
+     * files and subfolders it did not see. A walk with a failed listing cannot
+     * tell removed from unlisted and leaves everything in place.
+     */
+    private void finishWalk(SyncRun run, FolderSync folderSync, TreeWalk walk) {
+        if (!walk.fromRoot || walk.failed) {
+            return;
+        }
+        applyPlan(run, folderSync, SyncPlanner.planDeletions(folderSync.manifest, walk.seenFiles));
+        for (Map.Entry<String, String> directory : folderSync.manifest.directories().entrySet()) {
+            if (!walk.seenDirectories.contains(directory.getKey())) {
+                removeDirectory(folderSync, directory.getValue());
+            }
+        }
+        folderSync.manifest.setTreeRecorded(true);
+    }
+
+    /**
+     * Records where a subfolder sits in the tree and mirrors it locally. A folder
+     * renamed or moved on Drive is moved locally with its contents, so none of
+     * them has to be downloaded again.
+     */
+    private void placeDirectory(FolderSync folderSync, String directoryId, String path) {
+        SyncManifest manifest = folderSync.manifest;
+        String previous = manifest.getDirectoryPath(directoryId);
+        File dir;
+        try {
+            dir = resolve(folderSync.localDir, path);
+        } catch (IOException e) {
+            Log.w(TAG, "Not placing directory: " + e.getMessage());
+            return;
+        }
+        if (previous != null && !previous.equals(path)) {
+            File from;
+            try {
+                from = resolve(folderSync.localDir, previous);
             } catch (IOException e) {
-                Log.e(TAG, "Folder does not exist or access denied: " + folderId, e);
-                return null;
+                Log.w(TAG, "Not moving directory: " + e.getMessage());
+                from = null;
+            }
+            File parent = dir.getParentFile();
+            if (parent != null && !parent.exists() && !parent.mkdirs()) {
+                Log.w(TAG, "Failed to create directory: " + parent.getAbsolutePath());
+            }
+            if (from != null && from.renameTo(dir)) {
+                manifest.moveDirectory(previous, path);
+                Log.d(TAG, "Moved directory: " + previous + " -> " + path);
+            } else {
+                // Its files are listed again under the new path and downloaded there
+                removeDirectory(folderSync, previous);
+            }
+        }
+        manifest.putDirectory(directoryId, path);
+        if (!dir.exists() && !dir.mkdirs()) {
+            Log.w(TAG, "Failed to create directory: " + dir.getAbsolutePath());
+        }
+    }
+
+    private void removeDirectory(FolderSync folderSync, String path) {
+        for (SyncManifest.Entry entry : folderSync.manifest.removeDirectory(path)) {
+            metrics.add(SyncMetrics.FILES_DELETED, folderSync.folder.getName(), 1);
+            Log.d(TAG, "Removed: " + entry.getPath());
+        }
+        try {
+            deleteRecursively(resolve(folderSync.localDir, path), folderSync.localDir.getCanonicalPath());
+            Log.d(TAG, "Removed directory: " + path);
+        } catch (IOException e) {
+            Log.w(TAG, "Not removing directory: " + e.getMessage());
+        }
+    }
+
+    private void applyPlan(SyncRun run, FolderSync folderSync, SyncPlanner.Plan plan) {
+        metrics.add(SyncMetrics.FILES_UNCHANGED, folderSync.folder.getName(), plan.getUnchanged());
+        for (SyncManifest.Entry entry : plan.getDeletions()) {
+            deleteLocalCopy(folderSync, entry);
+        }
+        for (DriveFile file : plan.getRenames()) {
+            renameLocalCopy(run, folderSync, file);
+        }
+        for (DriveFile file : plan.getSkipped()) {
+            Log.d(TAG, "Skipped (no binary content): " + file.getName() + " (" + file.getMimeType() + ")");
+        }
+        SyncFolder.FetchPolicy policy = folderSync.folder.getFetchPolicy();
+        for (DriveFile file : plan.getRemoteOnly()) {
+            if (policy == SyncFolder.FetchPolicy.EAGER) {
+                scheduleDownload(run, folderSync, file);
+            } else if (!folderSync.manifest.get(file.getId()).getPath().equals(file.getName())) {
+                folderSync.manifest.put(SyncManifest.Entry.remoteOnly(file, file.getName()));
             }
+        }
+        for (DriveFile file : plan.getDownloads()) {
+            if (shouldFetch(folderSync, file)) {
+                scheduleDownload(run, folderSync, file);
+            } else {
+                deferDownload(folderSync, file);
+            }
+        }
+    }
+
+    private boolean shouldFetch(FolderSync folderSync, DriveFile file) {
+        switch (folderSync.folder.getFetchPolicy()) {
+            case METADATA_ONLY:
+                return false;
+            case ON_DEMAND:
+                SyncManifest.Entry entry = folderSync.manifest.get(file.getId());
+                return entry != null && entry.isLocal();
+            default:
+                return true;
+        }
+    }
 
-            Drive.Files.List request = driveService.files().list()
-                    .setQ("'" + folderId + "' in parents and trashed = false")
-                    .setFields("files(id, name, modifiedTime, mimeType)");
+    /**
+     * Records a new or changed file without fetching it. A local copy of an older
+     * version is dropped, so the next open fetches the current bytes.
+     */
+    private void deferDownload(FolderSync folderSync, DriveFile file) {
+        SyncManifest.Entry previous = folderSync.manifest.get(file.getId());
+        if (previous != null && previous.isLocal()) {
+            deleteFile(folderSync.localDir, previous.getPath());
+        }
+        folderSync.manifest.put(SyncManifest.Entry.remoteOnly(file, file.getName()));
+        metrics.add(SyncMetrics.FILES_DEFERRED, folderSync.folder.getName(), 1);
+    }
 
-            FileList result = request.execute();
-            if (result.getFiles() == null || result.getFiles().isEmpty()) {
-                Log.d(TAG, "No files found in folder: " + folderId);
-                return files;
+    private void syncChanges(SyncRun run, String startPageToken, List<FolderSync> group) {
+        boolean fellBack = false;
+        try {
+            fellBack = applyChanges(run, startPageToken, group);
+        } finally {
+            // Folders handed to a full sync are released by it instead
+            if (!fellBack) {
+                for (FolderSync folderSync : group) {
+                    folderStepDone(folderSync);
+                }
             }
+        }
+    }
 
-            for (com.google.api.services.drive.model.File file : result.getFiles()) {
-                files.add(new DriveFile(
-                        file.getId(),
-                        file.getName(),
-                        file.getModifiedTime().getValue()
-                ));
-                Log.d(TAG, "Found file: " + file.getName() + 
-                          " (ID: " + file.getId() + 
-                          ", Type: " + file.getMimeType() + ")");
+    /**
+     * Applies the changes feed since {@code startPageToken} to the group. Returns
+     * true if the token was rejected and the group was queued for a full sync.
+     */
+    private boolean applyChanges(SyncRun run, String startPageToken, List<FolderSync> group) {
+        Log.d(TAG, "Starting incremental sync of " + group.size() + " folders from token: " + startPageToken);
+        Map<String, FolderSync> byFolderId = new HashMap<>();
+        for (FolderSync folderSync : group) {
+            if (prepareFolder(run, folderSync)) {
+                byFolderId.put(folderSync.folder.getFolderId(), folderSync);
             }
+        }
 
-            return files;
+        String pageToken = startPageToken;
+        String newStartPageToken = null;
+        int changeCount = 0;
+        try {
+            while (pageToken != null) {
+                ChangeList changes = executeTimed(driveService.changes().list(pageToken)
+                        .setPageSize(CHANGES_PAGE_SIZE)
+                        .setFields(CHANGE_FIELDS), SyncMetrics.LATENCY_CHANGES);
+                if (changes.getChanges() != null) {
+                    for (Change change : changes.getChanges()) {
+                        applyChange(run, byFolderId, change);
+                    }
+                    changeCount += changes.getChanges().size();
+                }
+                newStartPageToken = changes.getNewStartPageToken();
+                pageToken = changes.getNextPageToken();
+            }
+        } catch (HttpResponseException e) {
+            int status = e.getStatusCode();
+            if (status == 400 || status == 404 || status == 410) {
+                Log.w(TAG, "Change token rejected, falling back to full sync: " + startPageToken, e);
+                List<FolderSync> fullSyncs = new ArrayList<>(byFolderId.values());
+                for (FolderSync folderSync : group) {
+                    if (!byFolderId.containsKey(folderSync.folder.getFolderId())) {
+                        folderStepDone(folderSync);
+                    }
+                }
+                for (FolderSync folderSync : fullSyncs) {
+                    changeTokens.remove(folderSync.folder.getFolderId());
+                }
+                if (!fullSyncs.isEmpty()) {
+                    submitMetadata(run, fullSyncs, () -> startFullSyncs(run, fullSyncs));
+                }
+                return true;
+            }
+            failChanges(run, byFolderId.values(), e);
+            return false;
         } catch (IOException e) {
-            Log.e(TAG, "Error listing files in folder: " + folderId, e);
-            return null;
+            failChanges(run, byFolderId.values(), e);
+            return false;
+        }
+
+        Log.d(TAG, "Applied " + changeCount + " changes since token: " + startPageToken);
+        for (FolderSync folderSync : byFolderId.values()) {
+            folderSync.newStartPageToken = newStartPageToken;
+        }
+        return false;
+    }
+
+    private void failChanges(SyncRun run, Iterable<FolderSync> folderSyncs, IOException e) {
+        Log.e(TAG, "Error listing Drive changes", e);
+        metrics.increment(SyncMetrics.ERRORS_CHANGES);
+        for (FolderSync folderSync : folderSyncs) {
+            folderSync.failed = true;
+        }
+        run.addError("Failed to list Drive changes: " + e.getMessage());
+    }
+
+    private void applyChange(SyncRun run, Map<String, FolderSync> byFolderId, Change change) {
+        com.google.api.services.drive.model.File file = change.getFile();
+        boolean removed = Boolean.TRUE.equals(change.getRemoved())
+                || file == null
+                || Boolean.TRUE.equals(file.getTrashed());
+        if (!removed && !DriveFile.fromApi(file).hasSafeName()) {
+            // Handled as if it left the tree, as a listing would leave it out
+            Log.w(TAG, "Dropping item whose name is not a safe local path: " + file.getName());
+            removed = true;
+        }
+        List<String> parents = removed || file.getParents() == null
+                ? Collections.<String>emptyList()
+                : file.getParents();
+
+        // A file or subfolder that left the tree (deleted, trashed or moved) takes its local copy with it
+        for (FolderSync folderSync : byFolderId.values()) {
+            String parentPath = pathInTree(folderSync, parents);
+            String directoryPath = folderSync.manifest.getDirectoryPath(change.getFileId());
+            if (parentPath == null) {
+                SyncManifest.Entry entry = folderSync.manifest.get(change.getFileId());
+                if (entry != null) {
+                    deleteLocalCopy(folderSync, entry);
+                } else if (directoryPath != null) {
+                    removeDirectory(folderSync, directoryPath);
+                }
+                continue;
+            }
+
+            DriveFile driveFile = DriveFile.fromApi(file).inDirectory(parentPath);
+            if (!driveFile.isFolder()) {
+                applyPlan(run, folderSync, SyncPlanner.planChange(folderSync.manifest, driveFile));
+            } else if (syncFolderIds.contains(driveFile.getId())) {
+                if (directoryPath != null) {
+                    removeDirectory(folderSync, directoryPath);
+                }
+            } else if (directoryPath == null) {
+                // New or moved in from outside the tree; its contents are not in the feed
+                placeDirectory(folderSync, driveFile.getId(), driveFile.getName());
+                submitListing(run, folderSync, new TreeWalk(false), driveFile.getId(), driveFile.getName());
+            } else if (!directoryPath.equals(driveFile.getName())) {
+                placeDirectory(folderSync, driveFile.getId(), driveFile.getName());
+            }
+        }
+    }
+
+    /**
+     * Path of the first of {@code parents} that is the synced folder or one of its
+     * subfolders, or null if none of them is.
+     */
+    private static String pathInTree(FolderSync folderSync, List<String> parents) {
+        for (String parent : parents) {
+            if (parent.equals(folderSync.folder.getFolderId())) {
+                return "";
+            }
+            String path = folderSync.manifest.getDirectoryPath(parent);
+            if (path != null) {
+                return path;
+            }
+        }
+        return null;
+    }
+
+    private void scheduleDownload(SyncRun run, FolderSync folderSync, DriveFile file) {
+        if (!networkGate.allowsDownloads(folderSync.folder)) {
+            // The old token is kept, so the sync that runs once the network allows
+            // it plans this file again
+            folderSync.deferred = true;
+            metrics.add(SyncMetrics.FILES_DEFERRED, folderSync.folder.getName(), 1);
+            Log.d(TAG, "Deferred until an unmetered network: " + file.getName());
+            return;
+        }
+        if (!folderSync.scheduled.add(file.getId())) {
+            // Both the changes feed and the listing of a new subfolder reported it
+            return;
+        }
+        ProgressReporter.FileProgress fileProgress = folderSync.progress.fileScheduled(file);
+        folderSync.pendingSteps.incrementAndGet();
+        String folderKey = folderSync.folder.getFolderId();
+        int priority = folderSync.folder.getPriority();
+        if (file.getSize() >= backgroundThreshold) {
+            scheduler.submitBackground(run, folderKey, priority, file.getSize(),
+                    yield -> syncFile(run, folderSync, file, fileProgress, yield));
+        } else {
+            scheduler.submit(run, folderKey, priority, file.getSize(),
+                    () -> syncFile(run, folderSync, file, fileProgress, SyncScheduler.Yield.NEVER));
         }
     }
 
-    private void downloadFile(String fileId, String localPath) throws IOException {
-        Log.d(TAG, "Starting download of file: " + fileId + " to: " + localPath);
-        
-        // Verify file exists and is accessible
+    /**
+     * Brings one file up to date. Returns false if its download paused for
+     * foreground work and has to run again.
+     */
+    private boolean syncFile(SyncRun run, FolderSync folderSync, DriveFile file,
+                             ProgressReporter.FileProgress fileProgress, SyncScheduler.Yield yield) {
+        SyncManifest.Entry previous = folderSync.manifest.get(file.getId());
+        boolean finished = true;
         try {
-            com.google.api.services.drive.model.File file = driveService.files().get(fileId).execute();
-            Log.d(TAG, "File verified: " + file.getName() + " (" + file.getMimeType() + ")");
+            File localFile = resolve(folderSync.localDir, file.getName());
+            if (previous == null && isExistingCopy(file, localFile)) {
+                // Files synced before the manifest existed only need to be recorded
+                Log.d(TAG, "Adopted existing copy: " + file.getName());
+                contentIndex.add(file.getMd5Checksum(), localFile);
+                fileProgress.finished();
+            } else {
+                long downloadStart = System.nanoTime();
+                boolean fetched;
+                metrics.gaugeIncrement(SyncMetrics.DOWNLOADS_IN_FLIGHT);
+                try {
+                    fetched = downloadFile(file, localFile, fileProgress, yield, run.getCancellation(), false);
+                } finally {
+                    metrics.gaugeDecrement(SyncMetrics.DOWNLOADS_IN_FLIGHT);
+                }
+                if (fetched) {
+                    metrics.recordSince(SyncMetrics.LATENCY_DOWNLOAD, downloadStart);
+                    metrics.add(SyncMetrics.FILES_DOWNLOADED, folderSync.folder.getName(), 1);
+                    metrics.add(SyncMetrics.BYTES_DOWNLOADED, folderSync.folder.getName(), localFile.length());
+                    Log.d(TAG, "Downloaded/Updated: " + file.getName());
+                } else {
+                    metrics.add(SyncMetrics.FILES_LINKED, folderSync.folder.getName(), 1);
+                    metrics.add(SyncMetrics.BYTES_LINKED, folderSync.folder.getName(), localFile.length());
+                    Log.d(TAG, "Linked from a local copy: " + file.getName());
+                }
+                fileProgress.downloaded();
+            }
+            folderSync.manifest.put(SyncManifest.Entry.of(file, file.getName()));
+            if (previous != null && !previous.getPath().equals(file.getName())) {
+                deleteFile(folderSync.localDir, previous.getPath());
+            }
+        } catch (DownloadPreemptedException e) {
+            finished = false;
+            metrics.increment(SyncMetrics.DOWNLOADS_PREEMPTED);
+            Log.d(TAG, e.getMessage());
         } catch (IOException e) {
-            Log.e(TAG, "File does not exist or access denied: " + fileId, e);
-            throw e;
+            // Keep the old token so the file is picked up again next sync
+            folderSync.failed = true;
+            fileProgress.finished();
+            if (run.isCancelled()) {
+                Log.d(TAG, "Download cancelled: " + file.getName());
+                return finished;
+            }
+            metrics.increment(SyncMetrics.ERRORS_DOWNLOAD);
+            if (e instanceof ChecksumMismatchException) {
+                metrics.increment(SyncMetrics.ERRORS_CHECKSUM);
+            }
+            run.addError("Failed to download " + file.getName() + ": " + e.getMessage());
+            run.addFailedFile(new SyncResult.FailedFile(
+                    folderSync.folder.getName(), file.getId(), file.getName(), e.getMessage()));
+            Log.e(TAG, "Error processing file: " + file.getName(), e);
+        } finally {
+            if (finished) {
+                folderStepDone(folderSync);
+            }
+        }
+        return finished;
+    }
+
+    /**
+     * Marks one step of a folder's sync (its listing or one file) as finished and
+     * tells the callback once the folder has nothing left to do.
+     */
+    private void folderStepDone(FolderSync folderSync) {
+        if (folderSync.pendingSteps.decrementAndGet() == 0) {
+            folderSync.callback.onFolderSynced(folderSync.folder, !folderSync.failed && !folderSync.deferred);
+        }
+    }
+
+    private boolean isExistingCopy(DriveFile file, File localFile) throws IOException {
+        return file.getMd5Checksum() != null
+                && localFile.isFile()
+                && localFile.length() == file.getSize()
+                && file.getMd5Checksum().equals(Checksums.md5Hex(localFile));
+    }
+
+    private void renameLocalCopy(SyncRun run, FolderSync folderSync, DriveFile file) {
+        SyncManifest.Entry entry = folderSync.manifest.get(file.getId());
+        File from;
+        File to;
+        try {
+            from = resolve(folderSync.localDir, entry.getPath());
+            to = resolve(folderSync.localDir, file.getName());
+        } catch (IOException e) {
+            Log.w(TAG, "Not renaming: " + e.getMessage());
+            scheduleDownload(run, folderSync, file);
+            return;
+        }
+        if (from.renameTo(to)) {
+            folderSync.manifest.put(SyncManifest.Entry.of(file, file.getName()));
+            contentIndex.add(file.getMd5Checksum(), to);
+            metrics.add(SyncMetrics.FILES_RENAMED, folderSync.folder.getName(), 1);
+            Log.d(TAG, "Renamed: " + entry.getPath() + " -> " + file.getName());
+        } else {
+            scheduleDownload(run, folderSync, file);
+        }
+    }
+
+    private void deleteLocalCopy(FolderSync folderSync, SyncManifest.Entry entry) {
+        deleteFile(folderSync.localDir, entry.getPath());
+        folderSync.manifest.remove(entry.getFileId());
+        metrics.add(SyncMetrics.FILES_DELETED, folderSync.folder.getName(), 1);
+        Log.d(TAG, "Removed: " + entry.getPath());
+    }
+
+    private static void deleteFile(File file) {
+        if (file.exists() && !file.delete()) {
+            Log.w(TAG, "Failed to delete: " + file.getAbsolutePath());
+        }
+    }
+
+    // A symlink is removed without following it out of the folder
+    private static void deleteRecursively(File file, String root) throws IOException {
+        File[] children = file.getCanonicalPath().startsWith(root + File.separator) ? file.listFiles() : null;
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child, root);
+            }
+        }
+        deleteFile(file);
+    }
+
+    /**
+     * {@code path} under {@code localDir}. Listed names are checked before they
+     * become paths, but a path from an older manifest, or a symlink on disk, can
+     * still lead elsewhere, so the sync resolves every file it writes, moves or
+     * deletes through here.
+     */
+    private static File resolve(File localDir, String path) throws IOException {
+        File file = new File(localDir, path);
+        if (!file.getCanonicalPath().startsWith(localDir.getCanonicalPath() + File.separator)) {
+            throw new IOException("Path leaves " + localDir.getAbsolutePath() + ": " + path);
+        }
+        return file;
+    }
+
+    private static void deleteFile(File localDir, String path) {
+        try {
+            deleteFile(resolve(localDir, path));
+        } catch (IOException e) {
+            Log.w(TAG, "Not deleting: " + e.getMessage());
+        }
+    }
+
+    private void saveChangeTokens(List<FolderSync> folderSyncs) {
+        Map<String, String> tokens = new HashMap<>();
+        for (FolderSync folderSync : folderSyncs) {
+            if (!folderSync.failed && !folderSync.deferred && folderSync.newStartPageToken != null) {
+                tokens.put(folderSync.folder.getFolderId(), folderSync.newStartPageToken);
+            }
         }
+        changeTokens.putAll(tokens);
+    }
+
+    private FolderListing listFolder(String folderId) {
+        // Everything the planner and the download need comes back with the listing;
+        // nextPageToken has to be asked for too, or every listing stops after one page
+        return new FolderListing(pageToken -> executeTimed(driveService.files().list()
+                .setQ("'" + folderId + "' in parents and trashed = false")
+                .setPageSize(listPageSize)
+                .setPageToken(pageToken)
+                .setFields("nextPageToken, files(" + FILE_FIELDS + ")"), SyncMetrics.LATENCY_LIST));
+    }
+
+    private <T> T executeTimed(DriveRequest<T> request, String latencyMetric) throws IOException {
+        return retry.execute(() -> {
+            long start = System.nanoTime();
+            metrics.gaugeIncrement(SyncMetrics.REQUESTS_IN_FLIGHT);
+            try {
+                return request.execute();
+            } finally {
+                metrics.gaugeDecrement(SyncMetrics.REQUESTS_IN_FLIGHT);
+                metrics.recordSince(latencyMetric, start);
+            }
+        });
+    }
+
+    // A batch that failed as a whole still holds its requests and can be sent again
+    private void executeTimed(BatchRequest batch, String latencyMetric) throws IOException {
+        retry.execute(() -> {
+            long start = System.nanoTime();
+            metrics.gaugeIncrement(SyncMetrics.REQUESTS_IN_FLIGHT);
+            try {
+                batch.execute();
+            } finally {
+                metrics.gaugeDecrement(SyncMetrics.REQUESTS_IN_FLIGHT);
+                metrics.recordSince(latencyMetric, start);
+            }
+            return null;
+        });
+    }
 
-        File localFile = new File(localPath);
+    /**
+     * Downloads {@code file}, retrying as {@link RetryEngine} allows. Chunked and
+     * segmented downloads pick up from their last checkpoint on a retry. Content
+     * already on disk, or being downloaded for another folder, is linked in from
+     * there instead; returns false when nothing was fetched. A foreground download
+     * is paced in the foreground lane, and so is a background one once a
+     * foreground download of the same content is waiting for it.
+     */
+    private boolean downloadFile(DriveFile file, File localFile, DownloadProgress progress,
+                                 SyncScheduler.Yield yield, CancellationToken cancel,
+                                 boolean foreground) throws IOException {
         File parentDir = localFile.getParentFile();
         if (parentDir != null && !parentDir.exists()) {
             if (!parentDir.mkdirs()) {
                 throw new IOException("Failed to create parent directory: " + parentDir.getAbsolutePath());
             }
         }
+        String md5 = file.getMd5Checksum();
+        ContentIndex.Fetch fetch = contentIndex.tryBeginFetch(md5, foreground);
+        while (fetch == null) {
+            // Another folder is fetching the same content; it is on disk once that is done, unless it failed
+            contentIndex.awaitFetch(md5, cancel);
+            fetch = contentIndex.tryBeginFetch(md5, foreground);
+        }
+        try {
+            if (contentIndex.link(file, localFile)) {
+                progress.onResumed(file.getSize());
+                return false;
+            }
+            BandwidthLimiter.Lane lane = laneFor(fetch);
+            retry.executeStreaming(onResponse -> {
+                // Body bytes only reach the lane once Drive answered with a success
+                downloadOnce(file, localFile, progress, yield, cancel, (bytes, c) -> {
+                    onResponse.run();
+                    lane.acquire(bytes, c);
+                });
+                return null;
+            }, cancel);
+            contentIndex.add(md5, localFile);
+        } finally {
+            contentIndex.endFetch(md5);
+        }
+        return true;
+    }
+
+    private BandwidthLimiter.Lane laneFor(ContentIndex.Fetch fetch) {
+        if (fetch.isForeground()) {
+            return bandwidth.foreground();
+        }
+        // Checked on every write, so a screen that starts waiting mid-download speeds up the rest
+        return (bytes, cancel) -> (fetch.isForeground() ? bandwidth.foreground() : bandwidth.background())
+                .acquire(bytes, cancel);
+    }
+
+    private void downloadOnce(DriveFile file, File localFile, DownloadProgress progress,
+                              SyncScheduler.Yield yield, CancellationToken cancel,
+                              BandwidthLimiter.Lane lane) throws IOException {
+        String fileId = file.getId();
+        String localPath = localFile.getAbsolutePath();
+        Log.d(TAG, "Starting download of file: " + file.getName() + " (" + file.getMimeType()
+                + ", " + file.getSize() + " bytes) to: " + localPath);
+
+        if (file.getSize() >= segmentedThreshold) {
+            try {
+                segmentedDownloader.download(file, localFile, progress, yield, cancel, lane);
+                Log.d(TAG, "Successfully downloaded file in segments: " + localPath);
+            } catch (DownloadPreemptedException e) {
+                throw e;
+            } catch (IOException e) {
+                Log.e(TAG, "Segmented download interrupted, will resume next sync: " + fileId, e);
+                throw e;
+            }
+            return;
+        }
 
-        try (OutputStream outputStream = new FileOutputStream(localFile)) {
-            driveService.files().get(fileId)
-                    .executeMediaAndDownloadTo(outputStream);
+        if (file.getSize() >= resumableThreshold) {
+            try {
+                resumableDownloader.download(file, localFile, progress, yield, cancel, lane);
+                Log.d(TAG, "Successfully downloaded file: " + localPath);
+            } catch (DownloadPreemptedException e) {
+                throw e;
+            } catch (IOException e) {
+                Log.e(TAG, "Download interrupted, will resume next sync: " + fileId, e);
+                throw e;
+            }
+            return;
+        }
+
+        // Hashed on the way to disk and only moved into place once it matches Drive's md5;
+        // a retry starts over, so progress goes back to zero
+        progress.onResumed(0);
+        File partFile = PartFile.of(localFile);
+        MessageDigest digest = Checksums.newMd5();
+        try {
+            try (FileOutputStream out = new FileOutputStream(partFile)) {
+                OutputStream buffered = new BufferedOutputStream(out, PartFile.WRITE_BUFFER_SIZE);
+                driveService.files().get(fileId).executeMediaAndDownloadTo(
+                        new ProgressOutputStream(new DigestOutputStream(buffered, digest), progress, cancel, lane));
+                buffered.flush();
+                if (fsyncPolicy.syncsOnCommit()) {
+                    out.getFD().sync();
+                }
+            }
+            Checksums.verify(file, digest);
+            PartFile.commit(partFile, localFile);
             Log.d(TAG, "Successfully downloaded file: " + localPath);
         } catch (IOException e) {
+            deleteFile(partFile);
             Log.e(TAG, "Error downloading file: " + fileId, e);
             throw e;
         }
     }
 
-    private static class DriveFile {
-        private final String id;
-        private final String name;
-        private final long lastModified;
+    private static class FolderSync {
+        final SyncFolder folder;
+        final File localDir;
+        final SyncCallback callback;
+        final ProgressReporter progress;
+        // The listing or changes step plus one per queued subfolder listing and file
+        final AtomicInteger pendingSteps = new AtomicInteger(1);
+        final Set<String> scheduled = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+        volatile SyncManifest manifest;
+        volatile String newStartPageToken;
+        volatile boolean failed;
+        // Some downloads wait for a network the folder's policy allows
+        volatile boolean deferred;
 
-        public DriveFile(String id, String name, long lastModified) {
-            this.id = id;
-            this.name = name;
-            this.lastModified = lastModified;
+        FolderSync(SyncFolder folder, SyncCallback callback, ProgressReporter progress) {
+            this.folder = folder;
+            this.localDir = new File(folder.getLocalPath());
+            this.callback = callback;
+            this.progress = progress;
         }
+    }
 
-        public String getId() { return id; }
-        public String getName() { return name; }
-        public long getLastModified() { return lastModified; }
+    /**
+     * A breadth-first listing of a folder tree, or of one subtree of it.
+     */
+    private static class TreeWalk {
+        final boolean fromRoot;
+        final AtomicInteger pendingListings = new AtomicInteger();
+        final Set<String> seenFiles = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+        final Set<String> seenDirectories = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+        volatile boolean failed;
+
+        TreeWalk(boolean fromRoot) {
+            this.fromRoot = fromRoot;
+        }
     }
 }
\ No newline at end of file
@@ -0,0 +1,70 @@
+package com.example.justlearnitappp.drive;
+
+import com.google.api.services.drive.model.File;
+import com.google.api.services.drive.model.FileList;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Iterates over the children of a Drive folder, requesting the next page only
+ * once the current one has been consumed and following nextPageToken until the
+ * listing ends. Only one page is held at a time, so memory stays flat however
+ * many files the folder has.
+ *
+ * Not a {@link java.util.Iterator}: fetching a page can fail, and callers handle
+ * that as an IOException like every other Drive request.
+ */
+class FolderListing {
+    interface PageFetcher {
+        /** Fetches the page at {@code pageToken}, or the first page if it is null. */
+        FileList fetch(String pageToken) throws IOException;
+    }
+
+    private final PageFetcher fetcher;
+    private Iterator<File> page = Collections.<File>emptyList().iterator();
+    private String nextPageToken;
+    private boolean started;
+    private int pageCount;
+
+    FolderListing(PageFetcher fetcher) {
+        this.fetcher = fetcher;
+    }
+
+    boolean hasNext() throws IOException {
+        while (!page.hasNext()) {
+            if (started && nextPageToken == null) {
+                return false;
+            }
+            FileList result = fetcher.fetch(nextPageToken);
+            started = true;
+            pageCount++;
+            nextPageToken = result.getNextPageToken();
+            page = result.getFiles() != null
+                    ? result.getFiles().iterator()
+                    : Collections.<File>emptyList().iterator();
+        }
+        return true;
+    }
+
+    DriveFile next() throws IOException {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return DriveFile.fromApi(page.next());
+    }
+
+    /**
+     * True once every item of the fetched page has been returned, before the
+     * next page is requested; the point to hand what was read so far onward.
+     */
+    boolean isAtPageEnd() {
+        return !page.hasNext();
+    }
+
+    int getPageCount() {
+        return pageCount;
+    }
+}
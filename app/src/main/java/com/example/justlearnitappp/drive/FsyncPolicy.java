@@ -0,0 +1,23 @@
+package com.example.justlearnitappp.drive;
+
+/**
+ * When downloads force their bytes to storage. Every download is checked against
+ * Drive's md5 and renamed into place, so a weaker policy never exposes a partial
+ * file; it only risks downloading again after a power loss.
+ */
+public enum FsyncPolicy {
+    /** Never; the page cache decides. */
+    NONE,
+    /** Once per file, just before it is renamed into place. */
+    ON_COMMIT,
+    /** Also before every resume checkpoint, so a checkpoint never covers bytes lost to a power cut. */
+    ALWAYS;
+
+    boolean syncsOnCommit() {
+        return this != NONE;
+    }
+
+    boolean syncsCheckpoints() {
+        return this == ALWAYS;
+    }
+}
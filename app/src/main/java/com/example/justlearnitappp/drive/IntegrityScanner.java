@@ -0,0 +1,96 @@
+package com.example.justlearnitappp.drive;
+
+import com.example.justlearnitappp.concurrent.AppExecutors;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Re-checks files already on disk against their manifest entries. Hashing is CPU
+ * bound on flash storage, so files are checked several at a time on the compute
+ * pool. A size mismatch is caught without reading the file at all.
+ */
+class IntegrityScanner {
+    private final ExecutorService pool;
+
+    IntegrityScanner() {
+        this(AppExecutors.get().compute());
+    }
+
+    IntegrityScanner(ExecutorService pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Checks every local entry of the given folders' manifests and returns those
+     * whose file is missing, has the wrong size or fails its checksum.
+     */
+    List<Damage> scan(Map<SyncFolder, SyncManifest> folders) throws InterruptedException {
+        List<Future<Damage>> checks = new ArrayList<>();
+        try {
+            for (Map.Entry<SyncFolder, SyncManifest> folder : folders.entrySet()) {
+                for (SyncManifest.Entry entry : folder.getValue().entries()) {
+                    if (entry.isLocal()) {
+                        checks.add(pool.submit(() -> check(folder.getKey(), entry)));
+                    }
+                }
+            }
+            List<Damage> damaged = new ArrayList<>();
+            for (Future<Damage> check : checks) {
+                Damage damage;
+                try {
+                    damage = check.get();
+                } catch (ExecutionException e) {
+                    throw new IllegalStateException("Integrity check failed", e.getCause());
+                }
+                if (damage != null) {
+                    damaged.add(damage);
+                }
+            }
+            return damaged;
+        } finally {
+            // Checks still queued after an interrupt would only keep the pool busy
+            for (Future<Damage> check : checks) {
+                check.cancel(true);
+            }
+        }
+    }
+
+    private static Damage check(SyncFolder folder, SyncManifest.Entry entry) {
+        File file = new File(folder.getLocalPath(), entry.getPath());
+        if (!file.isFile()) {
+            return new Damage(folder, entry, "missing");
+        }
+        if (file.length() != entry.getSize()) {
+            return new Damage(folder, entry, file.length() + " bytes, expected " + entry.getSize());
+        }
+        if (entry.getMd5Checksum() == null) {
+            return null;
+        }
+        try {
+            String md5 = Checksums.md5Hex(file);
+            return md5.equals(entry.getMd5Checksum()) ? null : new Damage(folder, entry, "md5 " + md5
+                    + ", expected " + entry.getMd5Checksum());
+        } catch (IOException e) {
+            return new Damage(folder, entry, "unreadable: " + e.getMessage());
+        }
+    }
+
+    static class Damage {
+        final SyncFolder folder;
+        final SyncManifest.Entry entry;
+        final String reason;
+
+        Damage(SyncFolder folder, SyncManifest.Entry entry, String reason) {
+            this.folder = folder;
+            this.entry = entry;
+            this.reason = reason;
+        }
+    }
+}
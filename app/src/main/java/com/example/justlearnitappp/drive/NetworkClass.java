@@ -0,0 +1,11 @@
+package com.example.justlearnitappp.drive;
+
+/**
+ * What the device is connected through, as far as sync policy cares.
+ */
+public enum NetworkClass {
+    NONE,
+    /** Mobile data, or a hotspot the system marks as metered. */
+    METERED,
+    UNMETERED
+}
@@ -0,0 +1,91 @@
+package com.example.justlearnitappp.drive;
+
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Decides whether a folder may download on the current network, and holds the
+ * folders whose downloads were put off. Once the network allows them, all held
+ * folders go out together in one run per callback, so the radio wakes once for
+ * the lot instead of once per folder.
+ */
+class NetworkGate {
+    private static final String TAG = "NetworkGate";
+
+    interface Resync {
+        void sync(List<SyncFolder> folders, DriveService.SyncCallback callback);
+    }
+
+    private static class Held {
+        final SyncFolder folder;
+        final DriveService.SyncCallback callback;
+
+        Held(SyncFolder folder, DriveService.SyncCallback callback) {
+            this.folder = folder;
+            this.callback = callback;
+        }
+    }
+
+    private final ConnectivitySource source;
+    private final Resync resync;
+    // Folder id -> held folder, in the order they were put off
+    private final Map<String, Held> held = new LinkedHashMap<>();
+
+    NetworkGate(ConnectivitySource source, Resync resync) {
+        this.source = source;
+        this.resync = resync;
+        source.addListener(this::release);
+    }
+
+    boolean allowsDownloads(SyncFolder folder) {
+        return folder.getNetworkPolicy().allows(source.getNetworkClass());
+    }
+
+    /**
+     * Holds {@code folder} until the network allows its downloads. Holding it
+     * again replaces the earlier callback.
+     */
+    void hold(SyncFolder folder, DriveService.SyncCallback callback) {
+        synchronized (held) {
+            held.put(folder.getFolderId(), new Held(folder, callback));
+        }
+        // The network may have changed while the folder's run was finishing
+        release();
+    }
+
+    int getHeldCount() {
+        synchronized (held) {
+            return held.size();
+        }
+    }
+
+    private void release() {
+        NetworkClass network = source.getNetworkClass();
+        Map<DriveService.SyncCallback, List<SyncFolder>> ready = new LinkedHashMap<>();
+        synchronized (held) {
+            Iterator<Held> it = held.values().iterator();
+            while (it.hasNext()) {
+                Held entry = it.next();
+                if (!entry.folder.getNetworkPolicy().allows(network)) {
+                    continue;
+                }
+                it.remove();
+                List<SyncFolder> folders = ready.get(entry.callback);
+                if (folders == null) {
+                    folders = new ArrayList<>();
+                    ready.put(entry.callback, folders);
+                }
+                folders.add(entry.folder);
+            }
+        }
+        for (Map.Entry<DriveService.SyncCallback, List<SyncFolder>> entry : ready.entrySet()) {
+            Log.d(TAG, "Now on " + network + ", syncing " + entry.getValue().size() + " held folders");
+            resync.sync(entry.getValue(), entry.getKey());
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package com.example.justlearnitappp.drive;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Downloads are written to a sibling ".part" file and renamed over the target
+ * only once complete and verified, so readers see the old file or the new one,
+ * never half of one.
+ */
+final class PartFile {
+    static final String SUFFIX = ".part";
+    // The HTTP client copies in 4 KB pieces; writes are gathered to this size first
+    static final int WRITE_BUFFER_SIZE = 128 * 1024;
+
+    private PartFile() {
+    }
+
+    static File of(File target) {
+        return new File(target.getPath() + SUFFIX);
+    }
+
+    static void commit(File partFile, File target) throws IOException {
+        if (!partFile.renameTo(target)) {
+            throw new IOException("Failed to move download into place: " + target.getAbsolutePath());
+        }
+    }
+}
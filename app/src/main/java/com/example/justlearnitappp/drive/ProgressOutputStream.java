@@ -0,0 +1,43 @@
+package com.example.justlearnitappp.drive;
+
+import com.example.justlearnitappp.concurrent.CancellationToken;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Passes writes through and reports each one to a {@link DownloadProgress}. Once
+ * {@code cancel} is cancelled the next write fails, which ends the download
+ * mid-stream and closes its connection. Each write first waits for its bytes
+ * from a {@link BandwidthLimiter.Lane}.
+ */
+class ProgressOutputStream extends FilterOutputStream {
+    private final DownloadProgress progress;
+    private final CancellationToken cancel;
+    private final BandwidthLimiter.Lane lane;
+
+    ProgressOutputStream(OutputStream out, DownloadProgress progress, CancellationToken cancel,
+                         BandwidthLimiter.Lane lane) {
+        super(out);
+        this.progress = progress;
+        this.cancel = cancel;
+        this.lane = lane;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        cancel.throwIfCancelled();
+        lane.acquire(1, cancel);
+        out.write(b);
+        progress.onBytes(1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        cancel.throwIfCancelled();
+        lane.acquire(len, cancel);
+        out.write(b, off, len);
+        progress.onBytes(len);
+    }
+}
@@ -0,0 +1,115 @@
+package com.example.justlearnitappp.drive;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Tracks the bytes and files of one sync run and forwards progress to the run's
+ * callback, at most once per interval however many download threads report.
+ */
+class ProgressReporter {
+    static final long DEFAULT_INTERVAL_MS = 250;
+
+    private final DriveService.SyncCallback callback;
+    private final long intervalNanos;
+    private final AtomicInteger filesTotal = new AtomicInteger();
+    private final AtomicInteger filesDone = new AtomicInteger();
+    private final AtomicInteger filesDownloaded = new AtomicInteger();
+    private final AtomicLong bytesTotal = new AtomicLong();
+    private final AtomicLong bytesDone = new AtomicLong();
+    private final AtomicLong bytesDownloaded = new AtomicLong();
+    private final AtomicLong lastReportNanos;
+
+    ProgressReporter(DriveService.SyncCallback callback, long intervalMillis) {
+        this.callback = callback;
+        this.intervalNanos = TimeUnit.MILLISECONDS.toNanos(intervalMillis);
+        this.lastReportNanos = new AtomicLong(System.nanoTime() - intervalNanos);
+    }
+
+    /**
+     * Counts a file the run is going to fetch and returns the handle its download
+     * reports through.
+     */
+    FileProgress fileScheduled(DriveFile file) {
+        long size = Math.max(0, file.getSize());
+        filesTotal.incrementAndGet();
+        bytesTotal.addAndGet(size);
+        maybeReport(null);
+        return new FileProgress(file.getName(), size);
+    }
+
+    int getFilesDownloaded() {
+        return filesDownloaded.get();
+    }
+
+    long getBytesDownloaded() {
+        return bytesDownloaded.get();
+    }
+
+    /** Sends the current state regardless of the interval; used once the run is over. */
+    void reportNow() {
+        lastReportNanos.set(System.nanoTime());
+        callback.onProgress(snapshot(null));
+    }
+
+    private void maybeReport(FileProgress file) {
+        long now = System.nanoTime();
+        long last = lastReportNanos.get();
+        if (now - last >= intervalNanos && lastReportNanos.compareAndSet(last, now)) {
+            callback.onProgress(snapshot(file));
+        }
+    }
+
+    private SyncProgress snapshot(FileProgress file) {
+        return new SyncProgress(filesDone.get(), filesTotal.get(), bytesDone.get(), bytesTotal.get(),
+                file != null ? file.name : null,
+                file != null ? file.bytes.get() : 0,
+                file != null ? file.size : 0);
+    }
+
+    /**
+     * Progress of one file. Finishing a file, whether it downloaded, was already
+     * present or failed, accounts for all of its bytes so the run total is reached.
+     */
+    class FileProgress implements DownloadProgress {
+        private final String name;
+        private final long size;
+        private final AtomicLong bytes = new AtomicLong();
+
+        FileProgress(String name, long size) {
+            this.name = name;
+            this.size = size;
+        }
+
+        @Override
+        public void onBytes(long count) {
+            bytesDownloaded.addAndGet(count);
+            advance(count);
+        }
+
+        // A download that paused and runs again reports its resume point, which may be
+        // a little behind what was already counted
+        @Override
+        public void onResumed(long count) {
+            advance(count - bytes.get());
+        }
+
+        private void advance(long count) {
+            bytes.addAndGet(count);
+            bytesDone.addAndGet(count);
+            maybeReport(this);
+        }
+
+        void downloaded() {
+            filesDownloaded.incrementAndGet();
+            finished();
+        }
+
+        void finished() {
+            bytesDone.addAndGet(Math.max(0, size - bytes.get()));
+            filesDone.incrementAndGet();
+            maybeReport(this);
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package com.example.justlearnitappp.drive;
+
+import android.util.Log;
+
+import com.example.justlearnitappp.concurrent.CancellationToken;
+import com.google.api.client.googleapis.media.MediaHttpDownloader;
+import com.google.api.services.drive.Drive;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.util.Properties;
+
+/**
+ * Downloads a file in chunks into a sibling ".part" file and records how many
+ * bytes are safely on disk after every chunk. A download interrupted by a crash
+ * or a dropped connection resumes from that offset with an HTTP Range request on
+ * the next sync. Bytes are hashed as they are written and the finished file is
+ * checked against Drive's md5 before it is renamed over the target in one step.
+ */
+class ResumableDownloader {
+    private static final String TAG = "ResumableDownloader";
+    static final int DEFAULT_CHUNK_SIZE = 4 * 1024 * 1024;
+
+    private static final String STATE_SUFFIX = ".part.state";
+
+    private final Drive driveService;
+    private final int chunkSize;
+    private volatile FsyncPolicy fsyncPolicy = FsyncPolicy.ON_COMMIT;
+
+    ResumableDownloader(Drive driveService, int chunkSize) {
+        this.driveService = driveService;
+        this.chunkSize = chunkSize;
+    }
+
+    void setFsyncPolicy(FsyncPolicy fsyncPolicy) {
+        this.fsyncPolicy = fsyncPolicy;
+    }
+
+    void download(DriveFile file, File target, DownloadProgress progress) throws IOException {
+        download(file, target, progress, SyncScheduler.Yield.NEVER, new CancellationToken(),
+                BandwidthLimiter.Lane.UNLIMITED);
+    }
+
+    /**
+     * Downloads like {@link #download(DriveFile, File, DownloadProgress)}, but stops
+     * with a {@link DownloadPreemptedException} after any chunk at which {@code yield}
+     * is requested, and mid-chunk once {@code cancel} is cancelled. Either way the
+     * next download picks up from the last finished chunk. Writes are paced by {@code lane}.
+     */
+    void download(DriveFile file, File target, DownloadProgress progress, SyncScheduler.Yield yield,
+                  CancellationToken cancel, BandwidthLimiter.Lane lane) throws IOException {
+        File partFile = PartFile.of(target);
+        FsyncPolicy fsync = fsyncPolicy;
+        File stateFile = new File(target.getPath() + STATE_SUFFIX);
+
+        long offset = resumeOffset(file, partFile, stateFile);
+        if (offset > 0) {
+            Log.d(TAG, "Resuming " + file.getName() + " at byte " + offset + " of " + file.getSize());
+            progress.onResumed(offset);
+        } else {
+            saveState(stateFile, file, 0);
+        }
+
+        // Drop anything written after the last committed chunk
+        try (RandomAccessFile raf = new RandomAccessFile(partFile, "rw")) {
+            raf.setLength(offset);
+        }
+        // The digest cannot be checkpointed, so a resumed download hashes the kept bytes once
+        MessageDigest digest = Checksums.newMd5();
+        if (offset > 0) {
+            Checksums.updateFromFile(digest, partFile, offset);
+        }
+
+        try (FileOutputStream out = new FileOutputStream(partFile, true)) {
+            BufferedOutputStream buffered = new BufferedOutputStream(out, PartFile.WRITE_BUFFER_SIZE);
+            Drive.Files.Get request = driveService.files().get(file.getId());
+            MediaHttpDownloader downloader = request.getMediaHttpDownloader();
+            downloader.setDirectDownloadEnabled(false);
+            downloader.setChunkSize(chunkSize);
+            downloader.setBytesDownloaded(offset);
+            downloader.setProgressListener(chunk -> {
+                if (chunk.getDownloadState() == MediaHttpDownloader.DownloadState.MEDIA_IN_PROGRESS) {
+                    // The chunk reaches the file before the offset that covers it is recorded
+                    buffered.flush();
+                    if (fsync.syncsCheckpoints()) {
+                        out.getFD().sync();
+                    }
+                    saveState(stateFile, file, chunk.getNumBytesDownloaded());
+                    if (yield.requested()) {
+                        throw new DownloadPreemptedException("Paused " + file.getName() + " at byte "
+                                + chunk.getNumBytesDownloaded() + " for foreground work");
+                    }
+                }
+            });
+            request.executeMediaAndDownloadTo(
+                    new ProgressOutputStream(new DigestOutputStream(buffered, digest), progress, cancel, lane));
+            buffered.flush();
+            if (fsync.syncsOnCommit()) {
+                out.getFD().sync();
+            }
+        }
+
+        try {
+            Checksums.verify(file, digest);
+        } catch (ChecksumMismatchException e) {
+            deleteQuietly(partFile);
+            deleteQuietly(stateFile);
+            throw e;
+        }
+
+        PartFile.commit(partFile, target);
+        deleteQuietly(stateFile);
+    }
+
+    /**
+     * Returns how many bytes of the part file can be kept, or 0 if the partial
+     * download belongs to another version of the file or is missing.
+     */
+    private long resumeOffset(DriveFile file, File partFile, File stateFile) {
+        if (!partFile.exists() || !stateFile.exists()) {
+            return 0;
+        }
+        Properties state = new Properties();
+        try (InputStream in = new FileInputStream(stateFile)) {
+            state.load(in);
+        } catch (IOException e) {
+            Log.w(TAG, "Unreadable download state, restarting: " + stateFile.getAbsolutePath(), e);
+            return 0;
+        }
+
+        boolean sameFile = file.getId().equals(state.getProperty("fileId"))
+                && String.valueOf(file.getMd5Checksum()).equals(state.getProperty("md5Checksum"))
+                && String.valueOf(file.getSize()).equals(state.getProperty("size"))
+                && String.valueOf(file.getVersion()).equals(state.getProperty("version"))
+                && String.valueOf(file.getLastModified()).equals(state.getProperty("modifiedTime"));
+        if (!sameFile) {
+            Log.d(TAG, "Remote file changed since the partial download, restarting: " + file.getName());
+            return 0;
+        }
+        try {
+            long offset = Long.parseLong(state.getProperty("offset", "0"));
+            return offset <= partFile.length() ? offset : 0;
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private static void saveState(File stateFile, DriveFile file, long offset) throws IOException {
+        Properties state = new Properties();
+        state.setProperty("fileId", file.getId());
+        state.setProperty("md5Checksum", String.valueOf(file.getMd5Checksum()));
+        state.setProperty("size", String.valueOf(file.getSize()));
+        state.setProperty("version", String.valueOf(file.getVersion()));
+        state.setProperty("modifiedTime", String.valueOf(file.getLastModified()));
+        state.setProperty("offset", String.valueOf(offset));
+
+        File tmp = new File(stateFile.getPath() + ".tmp");
+        try (OutputStream out = new FileOutputStream(tmp)) {
+            state.store(out, null);
+        }
+        if (!tmp.renameTo(stateFile)) {
+            throw new IOException("Failed to save download state: " + stateFile.getAbsolutePath());
+        }
+    }
+
+    private static void deleteQuietly(File file) {
+        if (file.exists() && !file.delete()) {
+            Log.w(TAG, "Failed to delete: " + file.getAbsolutePath());
+        }
+    }
+}
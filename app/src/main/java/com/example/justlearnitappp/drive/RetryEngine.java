@@ -0,0 +1,245 @@
+package com.example.justlearnitappp.drive;
+
+import android.util.Log;
+
+import com.example.justlearnitappp.concurrent.CancellationToken;
+import com.google.api.client.googleapis.json.GoogleJsonError;
+import com.google.api.client.googleapis.json.GoogleJsonResponseException;
+import com.google.api.client.http.HttpResponseException;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.net.ssl.SSLException;
+
+/**
+ * Runs Drive calls and retries the ones that failed for a reason that may pass:
+ * 5xx responses, 408, dropped connections and timeouts. Retries back off
+ * exponentially with full jitter, so workers that failed together do not come
+ * back together.
+ *
+ * Rate limiting (429, or 403 with a rate limit reason) is retried too and also
+ * lowers the scheduler's concurrency until requests go through again. Other
+ * 4xx responses and local errors, such as a full disk, fail at once. Failures
+ * that point at Drive being down feed a {@link CircuitBreaker}; while it is
+ * open, calls fail without being sent. Local errors say nothing about Drive
+ * and leave the breaker alone. A download reports Drive healthy as soon as its
+ * response is in, so a slow trial download does not hold the breaker half open
+ * while its body streams.
+ */
+class RetryEngine {
+    private static final String TAG = "RetryEngine";
+    static final int DEFAULT_MAX_ATTEMPTS = 4;
+    static final long DEFAULT_BASE_DELAY_MS = 500;
+    static final long DEFAULT_MAX_DELAY_MS = 32 * 1000;
+    // For calls nobody cancels; never handed out
+    private static final CancellationToken NOT_CANCELLED = new CancellationToken();
+
+    enum ErrorKind { RETRYABLE, RATE_LIMITED, FATAL }
+
+    interface Call<T> {
+        T execute() throws IOException;
+    }
+
+    /**
+     * A call whose response streams a body. It runs {@code onResponse} once Drive
+     * has answered, before the body is read.
+     */
+    interface StreamingCall<T> {
+        T execute(Runnable onResponse) throws IOException;
+    }
+
+    private final SyncScheduler scheduler;
+    private final SyncMetrics metrics;
+    private final CircuitBreaker breaker;
+    private final Random random = new Random();
+    private volatile int maxAttempts = DEFAULT_MAX_ATTEMPTS;
+    private volatile long baseDelayMillis = DEFAULT_BASE_DELAY_MS;
+    private volatile long maxDelayMillis = DEFAULT_MAX_DELAY_MS;
+
+    RetryEngine(SyncScheduler scheduler, SyncMetrics metrics, CircuitBreaker breaker) {
+        this.scheduler = scheduler;
+        this.metrics = metrics;
+        this.breaker = breaker;
+    }
+
+    /**
+     * Attempts per call, the first one included.
+     */
+    void setMaxAttempts(int maxAttempts) {
+        if (maxAttempts < 1) {
+            throw new IllegalArgumentException("maxAttempts must be at least 1");
+        }
+        this.maxAttempts = maxAttempts;
+    }
+
+    /**
+     * The n-th retry waits a random time of up to {@code baseMillis * 2^(n-1)},
+     * and never more than {@code maxMillis}.
+     */
+    void setBackoff(long baseMillis, long maxMillis) {
+        this.baseDelayMillis = baseMillis;
+        this.maxDelayMillis = maxMillis;
+    }
+
+    CircuitBreaker getCircuitBreaker() {
+        return breaker;
+    }
+
+    <T> T execute(Call<T> call) throws IOException {
+        return execute(call, NOT_CANCELLED);
+    }
+
+    /**
+     * Runs {@code call} like {@link #execute(Call)}, giving up without further
+     * attempts, or in the middle of a backoff, once {@code cancel} is cancelled.
+     */
+    <T> T execute(Call<T> call, CancellationToken cancel) throws IOException {
+        return executeStreaming(onResponse -> call.execute(), cancel);
+    }
+
+    /**
+     * Runs {@code call} like {@link #execute(Call, CancellationToken)}, counting
+     * Drive as healthy from the moment the call reports its response. Failures
+     * while reading the body are still retried and counted.
+     */
+    <T> T executeStreaming(StreamingCall<T> call, CancellationToken cancel) throws IOException {
+        for (int attempt = 1; ; attempt++) {
+            cancel.throwIfCancelled();
+            if (!breaker.allowRequest()) {
+                throw new CircuitOpenException("Drive is unavailable, not sending requests for now");
+            }
+            AtomicBoolean responded = new AtomicBoolean();
+            T result;
+            try {
+                result = call.execute(() -> {
+                    if (responded.compareAndSet(false, true)) {
+                        breaker.onSuccess();
+                    }
+                });
+            } catch (IOException e) {
+                ErrorKind kind = classify(e);
+                record(e, kind);
+                if (kind == ErrorKind.FATAL || attempt >= maxAttempts || cancel.isCancelled()) {
+                    throw e;
+                }
+                long delay = backoffMillis(attempt, e);
+                metrics.increment(SyncMetrics.RETRIES);
+                Log.w(TAG, "Attempt " + attempt + " failed (" + describe(e) + "), retrying in " + delay + " ms");
+                sleep(delay, cancel);
+                continue;
+            } catch (RuntimeException e) {
+                // A bug, not Drive's health; a trial call must still hand its slot on
+                breaker.onNeutral();
+                throw e;
+            }
+            breaker.onSuccess();
+            scheduler.onRequestSucceeded();
+            return result;
+        }
+    }
+
+    static ErrorKind classify(IOException e) {
+        if (e instanceof SocketTimeoutException
+                || e instanceof SocketException
+                || e instanceof UnknownHostException
+                || e instanceof SSLException) {
+            // Connection reset, DNS failure: the request may well go through next time
+            return ErrorKind.RETRYABLE;
+        }
+        if (!(e instanceof HttpResponseException)) {
+            // A full disk, a failed rename, a paused or cancelled download
+            return ErrorKind.FATAL;
+        }
+        int status = ((HttpResponseException) e).getStatusCode();
+        if (status == 429 || status == 403 && isRateLimitReason(e)) {
+            return ErrorKind.RATE_LIMITED;
+        }
+        if (status == 408 || status >= 500) {
+            return ErrorKind.RETRYABLE;
+        }
+        return ErrorKind.FATAL;
+    }
+
+    private static boolean isRateLimitReason(IOException e) {
+        if (!(e instanceof GoogleJsonResponseException)) {
+            // Media downloads do not parse the error body
+            String content = ((HttpResponseException) e).getContent();
+            return content != null && (content.contains("userRateLimitExceeded") || content.contains("rateLimitExceeded"));
+        }
+        GoogleJsonError details = ((GoogleJsonResponseException) e).getDetails();
+        if (details == null || details.getErrors() == null) {
+            return false;
+        }
+        for (GoogleJsonError.ErrorInfo error : details.getErrors()) {
+            String reason = error.getReason();
+            if ("userRateLimitExceeded".equals(reason) || "rateLimitExceeded".equals(reason)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void record(IOException e, ErrorKind kind) {
+        switch (kind) {
+            case RATE_LIMITED:
+                // Drive answered, it only wants fewer requests
+                breaker.onSuccess();
+                metrics.increment(SyncMetrics.ERRORS_RATE_LIMITED);
+                scheduler.onRateLimited();
+                break;
+            case RETRYABLE:
+                if (breaker.onFailure()) {
+                    metrics.increment(SyncMetrics.CIRCUIT_OPENED);
+                }
+                break;
+            default:
+                if (e instanceof HttpResponseException) {
+                    breaker.onSuccess();
+                } else {
+                    breaker.onNeutral();
+                }
+        }
+    }
+
+    private long backoffMillis(int attempt, IOException e) {
+        long ceiling = Math.min(maxDelayMillis, baseDelayMillis << Math.min(attempt - 1, 30));
+        long delay;
+        synchronized (random) {
+            delay = (long) (random.nextDouble() * ceiling);
+        }
+        // Drive may say how long to stay away
+        if (e instanceof HttpResponseException) {
+            String retryAfter = ((HttpResponseException) e).getHeaders().getRetryAfter();
+            if (retryAfter != null) {
+                try {
+                    delay = Math.max(delay, Math.min(maxDelayMillis, Long.parseLong(retryAfter.trim()) * 1000));
+                } catch (NumberFormatException ignored) {
+                    // An HTTP date; the jittered delay stands
+                }
+            }
+        }
+        return delay;
+    }
+
+    private static String describe(IOException e) {
+        if (e instanceof HttpResponseException) {
+            return "HTTP " + ((HttpResponseException) e).getStatusCode();
+        }
+        return e.getClass().getSimpleName() + ": " + e.getMessage();
+    }
+
+    private static void sleep(long millis, CancellationToken cancel) throws InterruptedIOException {
+        try {
+            cancel.await(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting to retry");
+        }
+    }
+}
@@ -0,0 +1,354 @@
+package com.example.justlearnitappp.drive;
+
+import android.util.Log;
+
+import com.example.justlearnitappp.concurrent.AppExecutors;
+import com.example.justlearnitappp.concurrent.CancellationToken;
+import com.google.api.client.googleapis.media.MediaHttpDownloader;
+import com.google.api.services.drive.Drive;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Downloads one large file over several connections at once. The file is split
+ * into byte ranges, each range is fetched with its own Range request and written
+ * with positional writes into a preallocated ".part" file, and the result is
+ * checked against Drive's md5 before it is renamed into place. MD5 needs the
+ * bytes in order, which the ranges do not arrive in, so this is the one download
+ * path that reads the file back to hash it.
+ *
+ * Progress of every range is checkpointed, so an interrupted download resumes
+ * each range where it stopped, like {@link ResumableDownloader} does for a single stream.
+ */
+class SegmentedDownloader {
+    private static final String TAG = "SegmentedDownloader";
+    static final int DEFAULT_SEGMENT_COUNT = 4;
+    static final long DEFAULT_THRESHOLD = 32L * 1024 * 1024;
+
+    private static final String STATE_SUFFIX = ".segments.state";
+    private static final long CHECKPOINT_BYTES = 4L * 1024 * 1024;
+
+    private final Drive driveService;
+    private final int segmentCount;
+    private volatile FsyncPolicy fsyncPolicy = FsyncPolicy.ON_COMMIT;
+
+    SegmentedDownloader(Drive driveService, int segmentCount) {
+        if (segmentCount < 1) {
+            throw new IllegalArgumentException("segmentCount must be at least 1");
+        }
+        this.driveService = driveService;
+        this.segmentCount = segmentCount;
+    }
+
+    void setFsyncPolicy(FsyncPolicy fsyncPolicy) {
+        this.fsyncPolicy = fsyncPolicy;
+    }
+
+    void download(DriveFile file, File target, DownloadProgress progress) throws IOException {
+        download(file, target, progress, SyncScheduler.Yield.NEVER, new CancellationToken(),
+                BandwidthLimiter.Lane.UNLIMITED);
+    }
+
+    /**
+     * Downloads like {@link #download(DriveFile, File, DownloadProgress)}, but each
+     * range stops at its next checkpoint once {@code yield} is requested, and the
+     * download ends with a {@link DownloadPreemptedException}. Once {@code cancel}
+     * is cancelled, or any range fails, every range stops mid-stream. All ranges
+     * share {@code lane}.
+     */
+    void download(DriveFile file, File target, DownloadProgress progress, SyncScheduler.Yield yield,
+                  CancellationToken cancel, BandwidthLimiter.Lane lane) throws IOException {
+        File partFile = PartFile.of(target);
+        FsyncPolicy fsync = fsyncPolicy;
+        File stateFile = new File(target.getPath() + STATE_SUFFIX);
+        long size = file.getSize();
+
+        long[] starts = new long[segmentCount];
+        long[] ends = new long[segmentCount];
+        long segmentSize = (size + segmentCount - 1) / segmentCount;
+        for (int i = 0; i < segmentCount; i++) {
+            starts[i] = Math.min(size, i * segmentSize);
+            ends[i] = Math.min(size, starts[i] + segmentSize) - 1;
+        }
+        long[] committed = loadCommitted(file, partFile, stateFile, starts);
+        long resumed = 0;
+        for (int i = 0; i < segmentCount; i++) {
+            resumed += committed[i] - starts[i];
+        }
+        if (resumed > 0) {
+            progress.onResumed(resumed);
+        }
+
+        try (RandomAccessFile raf = new RandomAccessFile(partFile, "rw")) {
+            raf.setLength(size);
+            FileChannel channel = raf.getChannel();
+            Checkpoint checkpoint = new Checkpoint(file, stateFile, channel, committed, fsync.syncsCheckpoints());
+            checkpoint.save();
+
+            // The first range to fail stops the others, so a retry does not wait for
+            // ranges it will pick up from their checkpoints anyway
+            CancellationToken segmentsCancel = new CancellationToken();
+            CancellationToken.Registration linked = cancel.onCancel(segmentsCancel::cancel);
+            AtomicReference<Throwable> firstFailure = new AtomicReference<>();
+            List<Future<?>> segments = new ArrayList<>();
+            try {
+                for (int i = 0; i < segmentCount; i++) {
+                    if (committed[i] > ends[i]) {
+                        continue;
+                    }
+                    final int segment = i;
+                    // Segment fetches block on the network, so they run on the I/O pool rather
+                    // than taking slots from the sync scheduler that is waiting on them
+                    segments.add(AppExecutors.get().io().submit(() -> {
+                        try {
+                            fetchSegment(file, channel, checkpoint, progress, yield, segmentsCancel, lane,
+                                    segment, committed[segment], ends[segment]);
+                        } catch (DownloadPreemptedException e) {
+                            throw e;
+                        } catch (IOException | RuntimeException e) {
+                            firstFailure.compareAndSet(null, e);
+                            segmentsCancel.cancel();
+                            throw e;
+                        }
+                        return null;
+                    }));
+                }
+                awaitAll(segments, firstFailure);
+            } finally {
+                linked.remove();
+            }
+            if (fsync.syncsOnCommit()) {
+                channel.force(false);
+            }
+        }
+
+        try {
+            Checksums.verify(file, Checksums.md5Hex(partFile));
+        } catch (ChecksumMismatchException e) {
+            deleteQuietly(partFile);
+            deleteQuietly(stateFile);
+            throw e;
+        }
+        PartFile.commit(partFile, target);
+        deleteQuietly(stateFile);
+    }
+
+    private void fetchSegment(DriveFile file, FileChannel channel, Checkpoint checkpoint, DownloadProgress progress,
+                              SyncScheduler.Yield yield, CancellationToken cancel, BandwidthLimiter.Lane lane,
+                              int segment, long start, long end)
+            throws IOException {
+        Log.d(TAG, "Fetching " + file.getName() + " bytes " + start + "-" + end);
+        Drive.Files.Get request = driveService.files().get(file.getId());
+        MediaHttpDownloader downloader = request.getMediaHttpDownloader();
+        downloader.setDirectDownloadEnabled(true);
+        downloader.setContentRange(start, end);
+
+        PositionalOutputStream out = new PositionalOutputStream(channel, checkpoint, yield, segment, start, end);
+        request.executeMediaAndDownloadTo(new ProgressOutputStream(out, progress, cancel, lane));
+        out.flush();
+        if (out.position != end + 1) {
+            throw new IOException("Segment " + segment + " of " + file.getName() + " ended at byte "
+                    + out.position + ", expected " + (end + 1));
+        }
+        checkpoint.update(segment, out.position);
+    }
+
+    /**
+     * Waits for every range to end. The first failure wins over the cancellations
+     * it caused in the other ranges, and any failure wins over a range that only paused.
+     */
+    private static void awaitAll(List<Future<?>> segments, AtomicReference<Throwable> firstFailure)
+            throws IOException {
+        IOException paused = null;
+        for (Future<?> segment : segments) {
+            try {
+                segment.get();
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof DownloadPreemptedException) {
+                    paused = (DownloadPreemptedException) e.getCause();
+                } else {
+                    firstFailure.compareAndSet(null, e.getCause());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while downloading segments", e);
+            }
+        }
+        Throwable failure = firstFailure.get();
+        if (failure instanceof IOException) {
+            throw (IOException) failure;
+        }
+        if (failure != null) {
+            throw new IOException("Segment download failed", failure);
+        }
+        if (paused != null) {
+            throw paused;
+        }
+    }
+
+    /**
+     * Reads back how far each range got last time. Ranges start over if the state
+     * belongs to another version of the file or a different segment layout.
+     */
+    private long[] loadCommitted(DriveFile file, File partFile, File stateFile, long[] starts) {
+        long[] committed = starts.clone();
+        if (!partFile.exists() || !stateFile.exists() || partFile.length() != file.getSize()) {
+            return committed;
+        }
+        Properties state = new Properties();
+        try (InputStream in = new FileInputStream(stateFile)) {
+            state.load(in);
+        } catch (IOException e) {
+            Log.w(TAG, "Unreadable segment state, restarting: " + stateFile.getAbsolutePath(), e);
+            return committed;
+        }
+        boolean sameFile = file.getId().equals(state.getProperty("fileId"))
+                && String.valueOf(file.getMd5Checksum()).equals(state.getProperty("md5Checksum"))
+                && String.valueOf(file.getVersion()).equals(state.getProperty("version"))
+                && String.valueOf(file.getLastModified()).equals(state.getProperty("modifiedTime"))
+                && String.valueOf(starts.length).equals(state.getProperty("segments"));
+        if (!sameFile) {
+            return committed;
+        }
+        try {
+            for (int i = 0; i < starts.length; i++) {
+                committed[i] = Math.max(starts[i], Long.parseLong(state.getProperty("segment." + i)));
+            }
+        } catch (NumberFormatException e) {
+            return starts.clone();
+        }
+        Log.d(TAG, "Resuming segmented download of " + file.getName());
+        return committed;
+    }
+
+    private static void deleteQuietly(File file) {
+        if (file.exists() && !file.delete()) {
+            Log.w(TAG, "Failed to delete: " + file.getAbsolutePath());
+        }
+    }
+
+    /**
+     * Per-range progress, recorded once the range's bytes are in the file.
+     */
+    private static class Checkpoint {
+        private final DriveFile file;
+        private final File stateFile;
+        private final FileChannel channel;
+        private final long[] committed;
+        private final boolean force;
+
+        Checkpoint(DriveFile file, File stateFile, FileChannel channel, long[] committed, boolean force) {
+            this.file = file;
+            this.stateFile = stateFile;
+            this.channel = channel;
+            this.committed = committed;
+            this.force = force;
+        }
+
+        synchronized void update(int segment, long position) throws IOException {
+            if (force) {
+                channel.force(false);
+            }
+            committed[segment] = position;
+            save();
+        }
+
+        synchronized void save() throws IOException {
+            Properties state = new Properties();
+            state.setProperty("fileId", file.getId());
+            state.setProperty("md5Checksum", String.valueOf(file.getMd5Checksum()));
+            state.setProperty("version", String.valueOf(file.getVersion()));
+            state.setProperty("modifiedTime", String.valueOf(file.getLastModified()));
+            state.setProperty("segments", String.valueOf(committed.length));
+            for (int i = 0; i < committed.length; i++) {
+                state.setProperty("segment." + i, String.valueOf(committed[i]));
+            }
+            File tmp = new File(stateFile.getPath() + ".tmp");
+            try (OutputStream out = new FileOutputStream(tmp)) {
+                state.store(out, null);
+            }
+            if (!tmp.renameTo(stateFile)) {
+                throw new IOException("Failed to save segment state: " + stateFile.getAbsolutePath());
+            }
+        }
+    }
+
+    /**
+     * Writes a range's bytes at their offset in the shared channel, gathered into
+     * large positional writes.
+     */
+    private static class PositionalOutputStream extends OutputStream {
+        private final FileChannel channel;
+        private final Checkpoint checkpoint;
+        private final SyncScheduler.Yield yield;
+        private final int segment;
+        private final long end;
+        private final ByteBuffer buffer = ByteBuffer.allocate(PartFile.WRITE_BUFFER_SIZE);
+        // Offset up to which bytes have been written to the channel
+        private long position;
+        private long lastCheckpoint;
+
+        PositionalOutputStream(FileChannel channel, Checkpoint checkpoint, SyncScheduler.Yield yield,
+                               int segment, long start, long end) {
+            this.channel = channel;
+            this.checkpoint = checkpoint;
+            this.yield = yield;
+            this.segment = segment;
+            this.end = end;
+            this.position = start;
+            this.lastCheckpoint = start;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (position + buffer.position() + len > end + 1) {
+                throw new IOException("Server sent more bytes than requested for segment " + segment);
+            }
+            while (len > 0) {
+                int n = Math.min(len, buffer.remaining());
+                buffer.put(b, off, n);
+                off += n;
+                len -= n;
+                if (!buffer.hasRemaining()) {
+                    flush();
+                }
+            }
+            if (position - lastCheckpoint >= CHECKPOINT_BYTES) {
+                checkpoint.update(segment, position);
+                lastCheckpoint = position;
+                if (yield.requested()) {
+                    throw new DownloadPreemptedException("Paused segment " + segment + " at byte " + position
+                            + " for foreground work");
+                }
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                position += channel.write(buffer, position);
+            }
+            buffer.clear();
+        }
+    }
+}
@@ -0,0 +1,459 @@
+package com.example.justlearnitappp.drive;
+
+import android.system.ErrnoException;
+import android.system.Os;
+import android.system.StructStat;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+/**
+ * Keeps synced content within a disk budget. When over it, files of folders that
+ * fetch on open are evicted least recently used first. Their manifest entries
+ * stay and are marked remote-only, so the next open fetches them again.
+ *
+ * Pinned files and files held with {@link #acquire} are never evicted. Neither are
+ * files of eagerly synced folders, which the next sync would only download again.
+ * Usage is added up from the manifests, not by walking the disk. Files
+ * hard-linked into several places are stored once, so they count once, and
+ * evicting one of the links frees nothing until the last one goes. Whether two
+ * entries share storage is read from the files themselves: copies of the same
+ * content made where links failed take space for each copy.
+ */
+public class StorageManager {
+    private static final String TAG = "StorageManager";
+    private static final String ACCESS_PREFIX = "access.";
+    private static final String PINNED_PREFIX = "pinned.";
+
+    interface Manifests {
+        SyncManifest get(String folderId);
+    }
+
+    /**
+     * Identifies the stored file a path leads to; paths hard-linked to one file
+     * share a key.
+     */
+    interface FileKeys {
+        Object keyOf(File file) throws IOException;
+    }
+
+    static final FileKeys INODE = file -> {
+        try {
+            StructStat stat = Os.stat(file.getPath());
+            return stat.st_dev + ":" + stat.st_ino;
+        } catch (ErrnoException e) {
+            throw new IOException("Failed to stat " + file.getPath() + ": " + e.getMessage(), e);
+        }
+    };
+
+    // Every path its own file, as if nothing were linked
+    static final FileKeys PATHS = file -> file;
+
+    private final File stateFile;
+    private final Manifests manifests;
+    private final SyncMetrics metrics;
+    private volatile FileKeys fileKeys;
+    private final Map<String, SyncFolder> folders = new LinkedHashMap<>();
+    // File id -> last time it was opened, from System.currentTimeMillis()
+    private final Map<String, Long> lastAccess = new HashMap<>();
+    private final Set<String> pinned = new HashSet<>();
+    private final Map<String, Integer> inUse = new HashMap<>();
+    private long budgetBytes = Long.MAX_VALUE;
+    private long minFreeBytes;
+    private long lastAccessStamp;
+
+    StorageManager(File stateFile, Manifests manifests, SyncMetrics metrics, FileKeys fileKeys) {
+        this.stateFile = stateFile;
+        this.manifests = manifests;
+        this.metrics = metrics;
+        this.fileKeys = fileKeys;
+        load();
+    }
+
+    void setFileKeys(FileKeys fileKeys) {
+        this.fileKeys = fileKeys;
+    }
+
+    /**
+     * Most bytes the synced folders may hold on disk together.
+     */
+    public synchronized void setBudgetBytes(long budgetBytes) {
+        if (budgetBytes < 0) {
+            throw new IllegalArgumentException("budgetBytes must not be negative");
+        }
+        this.budgetBytes = budgetBytes;
+    }
+
+    public synchronized long getBudgetBytes() {
+        return budgetBytes;
+    }
+
+    /**
+     * Space to leave free on the volume, whatever the budget, so a download does not
+     * run out of room halfway through.
+     */
+    public synchronized void setMinFreeBytes(long minFreeBytes) {
+        if (minFreeBytes < 0) {
+            throw new IllegalArgumentException("minFreeBytes must not be negative");
+        }
+        this.minFreeBytes = minFreeBytes;
+    }
+
+    /**
+     * Keeps a file from being evicted until it is unpinned.
+     */
+    public boolean pin(SyncFolder folder, String name) {
+        String fileId = fileId(folder, name);
+        if (fileId == null) {
+            return false;
+        }
+        synchronized (this) {
+            if (pinned.add(fileId)) {
+                save();
+            }
+        }
+        return true;
+    }
+
+    public void unpin(SyncFolder folder, String name) {
+        String fileId = fileId(folder, name);
+        synchronized (this) {
+            if (fileId != null && pinned.remove(fileId)) {
+                save();
+            }
+        }
+    }
+
+    /**
+     * Marks a file as in use, for example while a video plays, so it is not evicted
+     * from under its reader. Every call needs a matching {@link #release}.
+     */
+    public boolean acquire(SyncFolder folder, String name) {
+        String fileId = fileId(folder, name);
+        if (fileId == null) {
+            return false;
+        }
+        synchronized (this) {
+            Integer count = inUse.get(fileId);
+            inUse.put(fileId, count != null ? count + 1 : 1);
+        }
+        recordAccess(fileId);
+        return true;
+    }
+
+    public void release(SyncFolder folder, String name) {
+        String fileId = fileId(folder, name);
+        synchronized (this) {
+            Integer count = fileId != null ? inUse.get(fileId) : null;
+            if (count == null) {
+                return;
+            }
+            if (count > 1) {
+                inUse.put(fileId, count - 1);
+            } else {
+                inUse.remove(fileId);
+            }
+        }
+    }
+
+    public Usage getUsage() {
+        Map<String, Long> folderBytes = new LinkedHashMap<>();
+        Map<String, Integer> folderFiles = new LinkedHashMap<>();
+        List<SyncFolder> tracked = trackedFolders();
+        Map<File, Object> keys = storageKeys(tracked);
+        Set<Object> counted = new HashSet<>();
+        long total = 0;
+        for (SyncFolder folder : tracked) {
+            long bytes = 0;
+            int files = 0;
+            for (SyncManifest.Entry entry : manifests.get(folder.getFolderId()).entries()) {
+                if (entry.isLocal()) {
+                    bytes += entry.getSize();
+                    files++;
+                    if (counted.add(keys.get(new File(folder.getLocalPath(), entry.getPath())))) {
+                        total += entry.getSize();
+                    }
+                }
+            }
+            folderBytes.put(folder.getName(), bytes);
+            folderFiles.put(folder.getName(), files);
+        }
+        return new Usage(folderBytes, folderFiles, total, getBudgetBytes());
+    }
+
+    /**
+     * Evicts until the folders are within budget. Returns the bytes freed.
+     */
+    public long trim() {
+        return makeRoom(0);
+    }
+
+    /**
+     * Evicts until {@code incomingBytes} more fit within the budget and the free
+     * space reserve. Returns the bytes freed.
+     */
+    synchronized long makeRoom(long incomingBytes) {
+        long needed = getUsage().getTotalBytes() + incomingBytes - budgetBytes;
+        if (minFreeBytes > 0) {
+            needed = Math.max(needed, minFreeBytes + incomingBytes - usableSpace());
+        }
+        if (needed <= 0) {
+            return 0;
+        }
+
+        List<Candidate> candidates = new ArrayList<>();
+        Map<File, Object> keys = storageKeys(folders.values());
+        // Stored file -> local entries linked to it; its bytes are only freed with the last one
+        Map<Object, Integer> links = new HashMap<>();
+        for (SyncFolder folder : folders.values()) {
+            boolean evictable = folder.getFetchPolicy() != SyncFolder.FetchPolicy.EAGER;
+            for (SyncManifest.Entry entry : manifests.get(folder.getFolderId()).entries()) {
+                if (!entry.isLocal()) {
+                    continue;
+                }
+                Object key = keys.get(new File(folder.getLocalPath(), entry.getPath()));
+                Integer count = links.get(key);
+                links.put(key, count != null ? count + 1 : 1);
+                String fileId = entry.getFileId();
+                if (!evictable || pinned.contains(fileId) || inUse.containsKey(fileId)) {
+                    continue;
+                }
+                Long accessed = lastAccess.get(fileId);
+                // Never opened since tracking began; the download time stands in
+                long lastUsed = accessed != null
+                        ? accessed : new File(folder.getLocalPath(), entry.getPath()).lastModified();
+                candidates.add(new Candidate(folder, entry, key, lastUsed));
+            }
+        }
+        Collections.sort(candidates, (a, b) -> Long.compare(a.lastUsed, b.lastUsed));
+
+        long freed = 0;
+        Set<SyncManifest> changed = new HashSet<>();
+        for (Candidate candidate : candidates) {
+            if (freed >= needed) {
+                break;
+            }
+            SyncManifest manifest = manifests.get(candidate.folder.getFolderId());
+            if (evict(candidate.folder, manifest, candidate.entry)) {
+                int left = links.get(candidate.key) - 1;
+                links.put(candidate.key, left);
+                if (left == 0) {
+                    freed += candidate.entry.getSize();
+                }
+                changed.add(manifest);
+                lastAccess.remove(candidate.entry.getFileId());
+                metrics.add(SyncMetrics.FILES_EVICTED, candidate.folder.getName(), 1);
+                metrics.add(SyncMetrics.BYTES_EVICTED, candidate.folder.getName(), candidate.entry.getSize());
+            }
+        }
+        for (SyncManifest manifest : changed) {
+            try {
+                manifest.save();
+            } catch (IOException e) {
+                Log.e(TAG, "Error saving manifest after eviction", e);
+            }
+        }
+        if (!changed.isEmpty()) {
+            save();
+        }
+        if (freed < needed) {
+            Log.w(TAG, "Over the storage budget by " + (needed - freed) + " bytes with nothing left to evict");
+        }
+        return freed;
+    }
+
+    void track(SyncFolder folder) {
+        synchronized (this) {
+            folders.put(folder.getFolderId(), folder);
+        }
+    }
+
+    void recordAccess(String fileId) {
+        synchronized (this) {
+            // Strictly increasing, so files opened within the same millisecond keep their order
+            lastAccessStamp = Math.max(System.currentTimeMillis(), lastAccessStamp + 1);
+            lastAccess.put(fileId, lastAccessStamp);
+            save();
+        }
+    }
+
+    private boolean evict(SyncFolder folder, SyncManifest manifest, SyncManifest.Entry entry) {
+        synchronized (manifest) {
+            // A sync may have replaced the entry since the candidates were collected
+            if (manifest.get(entry.getFileId()) != entry) {
+                return false;
+            }
+            File file = new File(folder.getLocalPath(), entry.getPath());
+            if (file.exists() && !file.delete()) {
+                Log.w(TAG, "Failed to evict: " + file.getAbsolutePath());
+                return false;
+            }
+            manifest.put(entry.asRemoteOnly());
+        }
+        Log.d(TAG, "Evicted: " + folder.getName() + "/" + entry.getPath());
+        return true;
+    }
+
+    /**
+     * Keys the local files of {@code folders} by the stored file behind them. Only
+     * files whose content appears more than once can be links, so only those are
+     * looked up on disk; a file that cannot be is counted as a copy of its own.
+     */
+    private Map<File, Object> storageKeys(Iterable<SyncFolder> folders) {
+        Map<File, Object> keys = new HashMap<>();
+        Map<String, List<File>> byMd5 = new HashMap<>();
+        for (SyncFolder folder : folders) {
+            for (SyncManifest.Entry entry : manifests.get(folder.getFolderId()).entries()) {
+                if (!entry.isLocal()) {
+                    continue;
+                }
+                File file = new File(folder.getLocalPath(), entry.getPath());
+                keys.put(file, file);
+                String md5 = entry.getMd5Checksum();
+                if (md5 != null) {
+                    List<File> same = byMd5.get(md5);
+                    if (same == null) {
+                        same = new ArrayList<>();
+                        byMd5.put(md5, same);
+                    }
+                    same.add(file);
+                }
+            }
+        }
+        for (List<File> same : byMd5.values()) {
+            if (same.size() < 2) {
+                continue;
+            }
+            for (File file : same) {
+                try {
+                    keys.put(file, fileKeys.keyOf(file));
+                } catch (IOException e) {
+                    Log.w(TAG, "Counting as a separate copy: " + e.getMessage());
+                }
+            }
+        }
+        return keys;
+    }
+
+    private String fileId(SyncFolder folder, String name) {
+        track(folder);
+        SyncManifest.Entry entry = manifests.get(folder.getFolderId()).getByPath(name);
+        return entry != null ? entry.getFileId() : null;
+    }
+
+    private synchronized List<SyncFolder> trackedFolders() {
+        return new ArrayList<>(folders.values());
+    }
+
+    private long usableSpace() {
+        long usable = Long.MAX_VALUE;
+        for (SyncFolder folder : folders.values()) {
+            File dir = new File(folder.getLocalPath());
+            if (dir.exists()) {
+                usable = Math.min(usable, dir.getUsableSpace());
+            }
+        }
+        return usable;
+    }
+
+    private void load() {
+        if (!stateFile.exists()) {
+            return;
+        }
+        Properties state = new Properties();
+        try (InputStream in = new FileInputStream(stateFile)) {
+            state.load(in);
+        } catch (IOException e) {
+            Log.e(TAG, "Error reading storage state, starting without access times", e);
+            return;
+        }
+        for (String key : state.stringPropertyNames()) {
+            if (key.startsWith(PINNED_PREFIX)) {
+                pinned.add(key.substring(PINNED_PREFIX.length()));
+            } else if (key.startsWith(ACCESS_PREFIX)) {
+                try {
+                    long accessed = Long.parseLong(state.getProperty(key));
+                    lastAccess.put(key.substring(ACCESS_PREFIX.length()), accessed);
+                    lastAccessStamp = Math.max(lastAccessStamp, accessed);
+                } catch (NumberFormatException e) {
+                    Log.w(TAG, "Ignoring bad access time: " + key);
+                }
+            }
+        }
+    }
+
+    private void save() {
+        Properties state = new Properties();
+        for (Map.Entry<String, Long> entry : lastAccess.entrySet()) {
+            state.setProperty(ACCESS_PREFIX + entry.getKey(), String.valueOf(entry.getValue()));
+        }
+        for (String fileId : pinned) {
+            state.setProperty(PINNED_PREFIX + fileId, "true");
+        }
+        File parent = stateFile.getParentFile();
+        if (parent != null && !parent.exists() && !parent.mkdirs()) {
+            Log.e(TAG, "Failed to create directory: " + parent.getAbsolutePath());
+            return;
+        }
+        File tmp = new File(stateFile.getPath() + ".tmp");
+        try (OutputStream out = new FileOutputStream(tmp)) {
+            state.store(out, null);
+        } catch (IOException e) {
+            Log.e(TAG, "Error saving storage state", e);
+            return;
+        }
+        if (!tmp.renameTo(stateFile)) {
+            Log.e(TAG, "Failed to replace storage state file: " + stateFile.getAbsolutePath());
+        }
+    }
+
+    private static class Candidate {
+        final SyncFolder folder;
+        final SyncManifest.Entry entry;
+        // The stored file behind the entry, shared by its hard links
+        final Object key;
+        final long lastUsed;
+
+        Candidate(SyncFolder folder, SyncManifest.Entry entry, Object key, long lastUsed) {
+            this.folder = folder;
+            this.entry = entry;
+            this.key = key;
+            this.lastUsed = lastUsed;
+        }
+    }
+
+    public static class Usage {
+        private final Map<String, Long> folderBytes;
+        private final Map<String, Integer> folderFiles;
+        private final long totalBytes;
+        private final long budgetBytes;
+
+        Usage(Map<String, Long> folderBytes, Map<String, Integer> folderFiles, long totalBytes, long budgetBytes) {
+            this.folderBytes = Collections.unmodifiableMap(folderBytes);
+            this.folderFiles = Collections.unmodifiableMap(folderFiles);
+            this.totalBytes = totalBytes;
+            this.budgetBytes = budgetBytes;
+        }
+
+        /** Bytes on disk per folder name. */
+        public Map<String, Long> getFolderBytes() { return folderBytes; }
+        /** Files on disk per folder name. */
+        public Map<String, Integer> getFolderFiles() { return folderFiles; }
+        public long getTotalBytes() { return totalBytes; }
+        public long getBudgetBytes() { return budgetBytes; }
+    }
+}
@@ -0,0 +1,78 @@
+package com.example.justlearnitappp.drive;
+
+/**
+ * A Drive folder mirrored into a local directory. Folders with a higher priority
+ * are listed and downloaded first; the fetch policy decides which bytes a sync
+ * downloads at all, and the network policy on which networks it may.
+ */
+public class SyncFolder {
+    public static final int PRIORITY_HIGH = 10;
+    public static final int PRIORITY_NORMAL = 0;
+    public static final int PRIORITY_LOW = -10;
+
+    public enum FetchPolicy {
+        /** Every file is downloaded by the sync. */
+        EAGER,
+        /**
+         * The sync only records the listing. A file's bytes are fetched when it is
+         * opened, and dropped again when it changes on Drive.
+         */
+        METADATA_ONLY,
+        /**
+         * Like {@link #METADATA_ONLY}, but a file that has been opened once is kept
+         * up to date by later syncs.
+         */
+        ON_DEMAND
+    }
+
+    public enum NetworkPolicy {
+        /** Downloads on any network. */
+        ANY,
+        /**
+         * Downloads only on unmetered networks. On others the sync still records
+         * the listing, and the downloads wait until an unmetered network is back.
+         * Files opened on screen are fetched regardless.
+         */
+        UNMETERED_ONLY;
+
+        public boolean allows(NetworkClass network) {
+            return this == ANY || network == NetworkClass.UNMETERED;
+        }
+    }
+
+    private final String name;
+    private final String folderId;
+    private final String localPath;
+    private final int priority;
+    private final FetchPolicy fetchPolicy;
+    private final NetworkPolicy networkPolicy;
+
+    public SyncFolder(String name, String folderId, String localPath) {
+        this(name, folderId, localPath, PRIORITY_NORMAL, FetchPolicy.EAGER);
+    }
+
+    public SyncFolder(String name, String folderId, String localPath, int priority) {
+        this(name, folderId, localPath, priority, FetchPolicy.EAGER);
+    }
+
+    public SyncFolder(String name, String folderId, String localPath, int priority, FetchPolicy fetchPolicy) {
+        this(name, folderId, localPath, priority, fetchPolicy, NetworkPolicy.ANY);
+    }
+
+    public SyncFolder(String name, String folderId, String localPath, int priority, FetchPolicy fetchPolicy,
+                      NetworkPolicy networkPolicy) {
+        this.name = name;
+        this.folderId = folderId;
+        this.localPath = localPath;
+        this.priority = priority;
+        this.fetchPolicy = fetchPolicy;
+        this.networkPolicy = networkPolicy;
+    }
+
+    public String getName() { return name; }
+    public String getFolderId() { return folderId; }
+    public String getLocalPath() { return localPath; }
+    public int getPriority() { return priority; }
+    public FetchPolicy getFetchPolicy() { return fetchPolicy; }
+    public NetworkPolicy getNetworkPolicy() { return networkPolicy; }
+}
@@ -0,0 +1,334 @@
+package com.example.justlearnitappp.drive;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * What a synced folder holds locally, keyed by Drive file id. The manifest is
+ * the source of truth for sync planning: it is read in one go at startup and
+ * the planner never has to stat local files.
+ *
+ * It also caches the folder's subfolder tree, so the changes feed can be mapped
+ * onto nested paths without listing any folder again.
+ */
+public class SyncManifest {
+    private static final int MAGIC = 0x4A4C4D46; // "JLMF"
+    // Version 2 added the flag for entries whose bytes are not on disk, version 3 the subfolder tree
+    private static final int FORMAT_VERSION = 3;
+
+    private final File file;
+    private final Map<String, Entry> entries = new HashMap<>();
+    // Drive folder id -> path relative to the synced folder's directory
+    private final Map<String, String> directories = new HashMap<>();
+    // An empty manifest knows its (empty) tree; only older formats lack one
+    private boolean treeRecorded = true;
+    private boolean dirty;
+
+    private SyncManifest(File file) {
+        this.file = file;
+    }
+
+    /**
+     * Loads the manifest stored at {@code file}, or returns an empty one if there is none yet.
+     * Fails on a file that is cut short or does not parse to its last byte.
+     */
+    public static SyncManifest load(File file) throws IOException {
+        SyncManifest manifest = new SyncManifest(file);
+        if (!file.exists()) {
+            return manifest;
+        }
+
+        byte[] data = new byte[(int) file.length()];
+        try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+            in.readFully(data);
+        }
+
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Not a sync manifest: " + file.getAbsolutePath());
+        }
+        int formatVersion = in.readInt();
+        if (formatVersion < 1 || formatVersion > FORMAT_VERSION) {
+            throw new IOException("Unsupported manifest version " + formatVersion + ": " + file.getAbsolutePath());
+        }
+        int count = in.readInt();
+        if (count < 0) {
+            throw new IOException("Corrupt manifest, " + count + " entries: " + file.getAbsolutePath());
+        }
+        for (int i = 0; i < count; i++) {
+            Entry entry = Entry.read(in, formatVersion);
+            manifest.entries.put(entry.fileId, entry);
+        }
+        manifest.treeRecorded = false;
+        if (formatVersion >= 3) {
+            manifest.treeRecorded = in.readBoolean();
+            int directoryCount = in.readInt();
+            if (directoryCount < 0) {
+                throw new IOException("Corrupt manifest, " + directoryCount + " folders: " + file.getAbsolutePath());
+            }
+            for (int i = 0; i < directoryCount; i++) {
+                manifest.directories.put(in.readUTF(), in.readUTF());
+            }
+        }
+        if (in.available() > 0) {
+            throw new IOException("Corrupt manifest, " + in.available() + " bytes left over: " + file.getAbsolutePath());
+        }
+        return manifest;
+    }
+
+    /**
+     * Returns an empty manifest that will replace whatever is stored at {@code file} on save.
+     */
+    public static SyncManifest empty(File file) {
+        SyncManifest manifest = new SyncManifest(file);
+        manifest.dirty = true;
+        return manifest;
+    }
+
+    public synchronized Entry get(String fileId) {
+        return entries.get(fileId);
+    }
+
+    /**
+     * Returns the entry stored at {@code path}, relative to the folder's directory.
+     */
+    public synchronized Entry getByPath(String path) {
+        for (Entry entry : entries.values()) {
+            if (entry.path.equals(path)) {
+                return entry;
+            }
+        }
+        return null;
+    }
+
+    public synchronized void put(Entry entry) {
+        entries.put(entry.fileId, entry);
+        dirty = true;
+    }
+
+    public synchronized Entry remove(String fileId) {
+        Entry removed = entries.remove(fileId);
+        if (removed != null) {
+            dirty = true;
+        }
+        return removed;
+    }
+
+    /**
+     * Path of a subfolder relative to the synced folder's directory, or null if it
+     * is not part of the tree.
+     */
+    public synchronized String getDirectoryPath(String folderId) {
+        return directories.get(folderId);
+    }
+
+    public synchronized void putDirectory(String folderId, String path) {
+        if (!path.equals(directories.put(folderId, path))) {
+            dirty = true;
+        }
+    }
+
+    public synchronized Map<String, String> directories() {
+        return new HashMap<>(directories);
+    }
+
+    /**
+     * Moves every entry and subfolder under {@code from} to the same place under {@code to}.
+     */
+    public synchronized void moveDirectory(String from, String to) {
+        for (Entry entry : new ArrayList<>(entries.values())) {
+            if (isUnder(entry.path, from)) {
+                entries.put(entry.fileId, entry.withPath(to + entry.path.substring(from.length())));
+            }
+        }
+        for (Map.Entry<String, String> directory : directories.entrySet()) {
+            if (directory.getValue().equals(from) || isUnder(directory.getValue(), from)) {
+                directory.setValue(to + directory.getValue().substring(from.length()));
+            }
+        }
+        dirty = true;
+    }
+
+    /**
+     * Drops the subfolder at {@code path} with everything under it from the tree
+     * and returns the file entries that were in it.
+     */
+    public synchronized List<Entry> removeDirectory(String path) {
+        List<Entry> removed = new ArrayList<>();
+        for (Iterator<Entry> it = entries.values().iterator(); it.hasNext(); ) {
+            Entry entry = it.next();
+            if (isUnder(entry.path, path)) {
+                removed.add(entry);
+                it.remove();
+            }
+        }
+        for (Iterator<String> it = directories.values().iterator(); it.hasNext(); ) {
+            String directory = it.next();
+            if (directory.equals(path) || isUnder(directory, path)) {
+                it.remove();
+            }
+        }
+        dirty = true;
+        return removed;
+    }
+
+    /**
+     * Whether the subfolder tree has been recorded by a full listing. Manifests
+     * written before subfolders were synced have no tree.
+     */
+    public synchronized boolean isTreeRecorded() {
+        return treeRecorded;
+    }
+
+    public synchronized void setTreeRecorded(boolean treeRecorded) {
+        if (this.treeRecorded != treeRecorded) {
+            this.treeRecorded = treeRecorded;
+            dirty = true;
+        }
+    }
+
+    private static boolean isUnder(String path, String directory) {
+        return path.length() > directory.length() + 1
+                && path.startsWith(directory)
+                && path.charAt(directory.length()) == '/';
+    }
+
+    public synchronized List<Entry> entries() {
+        return new ArrayList<>(entries.values());
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized boolean isDirty() {
+        return dirty;
+    }
+
+    /**
+     * Writes the manifest to a sibling file and renames it into place, so a crash
+     * mid-save leaves the previous manifest intact.
+     */
+    public synchronized void save() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + entries.size() * 128);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(MAGIC);
+        out.writeInt(FORMAT_VERSION);
+        out.writeInt(entries.size());
+        for (Entry entry : entries.values()) {
+            entry.write(out);
+        }
+        out.writeBoolean(treeRecorded);
+        out.writeInt(directories.size());
+        for (Map.Entry<String, String> directory : directories.entrySet()) {
+            out.writeUTF(directory.getKey());
+            out.writeUTF(directory.getValue());
+        }
+        out.flush();
+
+        File parent = file.getParentFile();
+        if (parent != null && !parent.exists() && !parent.mkdirs()) {
+            throw new IOException("Failed to create manifest directory: " + parent.getAbsolutePath());
+        }
+        File tmp = new File(file.getPath() + ".tmp");
+        try (FileOutputStream fos = new FileOutputStream(tmp)) {
+            bytes.writeTo(fos);
+            fos.getFD().sync();
+        }
+        if (!tmp.renameTo(file)) {
+            throw new IOException("Failed to replace manifest: " + file.getAbsolutePath());
+        }
+        dirty = false;
+    }
+
+    public static class Entry {
+        private final String fileId;
+        private final String path;
+        private final String md5Checksum;
+        private final long size;
+        private final long version;
+        private final long modifiedTime;
+        private final boolean local;
+
+        public Entry(String fileId, String path, String md5Checksum, long size, long version, long modifiedTime) {
+            this(fileId, path, md5Checksum, size, version, modifiedTime, true);
+        }
+
+        public Entry(String fileId, String path, String md5Checksum, long size, long version, long modifiedTime,
+                     boolean local) {
+            this.fileId = fileId;
+            this.path = path;
+            this.md5Checksum = md5Checksum;
+            this.size = size;
+            this.version = version;
+            this.modifiedTime = modifiedTime;
+            this.local = local;
+        }
+
+        public static Entry of(DriveFile file, String path) {
+            return new Entry(file.getId(), path, file.getMd5Checksum(), file.getSize(),
+                    file.getVersion(), file.getLastModified(), true);
+        }
+
+        /**
+         * An entry for a file that is known from Drive but whose bytes have not been fetched.
+         */
+        public static Entry remoteOnly(DriveFile file, String path) {
+            return new Entry(file.getId(), path, file.getMd5Checksum(), file.getSize(),
+                    file.getVersion(), file.getLastModified(), false);
+        }
+
+        /**
+         * This entry with its bytes gone from disk, as after eviction.
+         */
+        public Entry asRemoteOnly() {
+            return new Entry(fileId, path, md5Checksum, size, version, modifiedTime, false);
+        }
+
+        Entry withPath(String path) {
+            return new Entry(fileId, path, md5Checksum, size, version, modifiedTime, local);
+        }
+
+        public String getFileId() { return fileId; }
+        /** Path of the local copy, relative to the synced folder's directory. */
+        public String getPath() { return path; }
+        public String getMd5Checksum() { return md5Checksum; }
+        public long getSize() { return size; }
+        public long getVersion() { return version; }
+        public long getModifiedTime() { return modifiedTime; }
+        /** Whether the bytes are on disk at {@link #getPath()}. */
+        public boolean isLocal() { return local; }
+
+        private void write(DataOutputStream out) throws IOException {
+            out.writeUTF(fileId);
+            out.writeUTF(path);
+            out.writeUTF(md5Checksum != null ? md5Checksum : "");
+            out.writeLong(size);
+            out.writeLong(version);
+            out.writeLong(modifiedTime);
+            out.writeBoolean(local);
+        }
+
+        private static Entry read(DataInputStream in, int formatVersion) throws IOException {
+            String fileId = in.readUTF();
+            String path = in.readUTF();
+            String md5 = in.readUTF();
+            long size = in.readLong();
+            long version = in.readLong();
+            long modifiedTime = in.readLong();
+            boolean local = formatVersion < 2 || in.readBoolean();
+            return new Entry(fileId, path, md5.isEmpty() ? null : md5, size, version, modifiedTime, local);
+        }
+    }
+}
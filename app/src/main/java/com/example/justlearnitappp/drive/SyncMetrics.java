@@ -0,0 +1,281 @@
+package com.example.justlearnitappp.drive;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counters, gauges and latency histograms for the sync pipeline. Updates are
+ * lock-free so they can sit on the download path; {@link #snapshot()} gives a
+ * consistent-enough copy for a debug screen or a file dump.
+ *
+ * Per-folder counters are kept under "name[folder]" next to the total under "name".
+ */
+public class SyncMetrics {
+    public static final String SYNC_RUNS = "sync.runs";
+    public static final String FILES_DOWNLOADED = "files.downloaded";
+    public static final String FILES_RENAMED = "files.renamed";
+    public static final String FILES_DELETED = "files.deleted";
+    public static final String FILES_UNCHANGED = "files.unchanged";
+    public static final String FILES_DEFERRED = "files.deferred";
+    public static final String FILES_OPENED = "files.opened";
+    public static final String FILES_LINKED = "files.linked";
+    // Linked files that had to be copied, as the filesystem refused a hard link
+    public static final String FILES_LINK_COPIED = "files.linkcopied";
+    public static final String FILES_EVICTED = "files.evicted";
+    public static final String BYTES_DOWNLOADED = "bytes.downloaded";
+    public static final String BYTES_EVICTED = "bytes.evicted";
+    public static final String BYTES_LINKED = "bytes.linked";
+    public static final String ERRORS_LIST = "errors.list";
+    public static final String ERRORS_METADATA = "errors.metadata";
+    public static final String ERRORS_CHANGES = "errors.changes";
+    public static final String ERRORS_DOWNLOAD = "errors.download";
+    public static final String ERRORS_OPEN = "errors.open";
+    public static final String ERRORS_CHECKSUM = "errors.checksum";
+    public static final String FILES_DAMAGED = "files.damaged";
+    public static final String ERRORS_RATE_LIMITED = "errors.ratelimited";
+    public static final String RETRIES = "retries";
+    public static final String CIRCUIT_OPENED = "circuit.opened";
+    public static final String DOWNLOADS_PREEMPTED = "downloads.preempted";
+
+    public static final String DOWNLOADS_IN_FLIGHT = "inflight.downloads";
+    public static final String REQUESTS_IN_FLIGHT = "inflight.requests";
+
+    public static final String LATENCY_RUN = "latency.run";
+    public static final String LATENCY_LIST = "latency.list";
+    public static final String LATENCY_METADATA = "latency.metadata";
+    public static final String LATENCY_CHANGES = "latency.changes";
+    public static final String LATENCY_DOWNLOAD = "latency.download";
+    public static final String LATENCY_OPEN = "latency.open";
+    public static final String LATENCY_VERIFY = "latency.verify";
+
+    private final ConcurrentHashMap<String, AtomicLong> counters = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, AtomicLong> gauges = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Histogram> histograms = new ConcurrentHashMap<>();
+
+    public void increment(String counter) {
+        add(counter, 1);
+    }
+
+    public void add(String counter, long delta) {
+        get(counters, counter).addAndGet(delta);
+    }
+
+    /**
+     * Adds to both the folder's counter and the total across folders.
+     */
+    public void add(String counter, String folder, long delta) {
+        add(counter, delta);
+        add(counter + "[" + folder + "]", delta);
+    }
+
+    public void gaugeIncrement(String gauge) {
+        get(gauges, gauge).incrementAndGet();
+    }
+
+    public void gaugeDecrement(String gauge) {
+        get(gauges, gauge).decrementAndGet();
+    }
+
+    public void record(String histogram, long millis) {
+        Histogram h = histograms.get(histogram);
+        if (h == null) {
+            Histogram created = new Histogram();
+            h = histograms.putIfAbsent(histogram, created);
+            if (h == null) {
+                h = created;
+            }
+        }
+        h.record(millis);
+    }
+
+    /** Records the time elapsed since {@code startNanos}, taken from {@link System#nanoTime()}. */
+    public void recordSince(String histogram, long startNanos) {
+        record(histogram, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+    }
+
+    public Snapshot snapshot() {
+        Map<String, Long> counterValues = new TreeMap<>();
+        for (Map.Entry<String, AtomicLong> entry : counters.entrySet()) {
+            counterValues.put(entry.getKey(), entry.getValue().get());
+        }
+        Map<String, Long> gaugeValues = new TreeMap<>();
+        for (Map.Entry<String, AtomicLong> entry : gauges.entrySet()) {
+            gaugeValues.put(entry.getKey(), entry.getValue().get());
+        }
+        Map<String, HistogramSnapshot> histogramValues = new TreeMap<>();
+        for (Map.Entry<String, Histogram> entry : histograms.entrySet()) {
+            histogramValues.put(entry.getKey(), entry.getValue().snapshot());
+        }
+        return new Snapshot(System.currentTimeMillis(), counterValues, gaugeValues, histogramValues);
+    }
+
+    /**
+     * Writes the current snapshot as text, replacing {@code file} in one step.
+     */
+    public void dumpTo(File file) throws IOException {
+        File parent = file.getParentFile();
+        if (parent != null && !parent.exists() && !parent.mkdirs()) {
+            throw new IOException("Failed to create directory: " + parent.getAbsolutePath());
+        }
+        File tmp = new File(file.getPath() + ".tmp");
+        try (OutputStream out = new FileOutputStream(tmp)) {
+            out.write(snapshot().toString().getBytes(StandardCharsets.UTF_8));
+        }
+        if (!tmp.renameTo(file)) {
+            throw new IOException("Failed to write metrics: " + file.getAbsolutePath());
+        }
+    }
+
+    public void reset() {
+        counters.clear();
+        histograms.clear();
+        // Gauges track work that is still running, so they are left alone
+    }
+
+    private static AtomicLong get(ConcurrentHashMap<String, AtomicLong> values, String name) {
+        AtomicLong value = values.get(name);
+        if (value == null) {
+            AtomicLong created = new AtomicLong();
+            value = values.putIfAbsent(name, created);
+            if (value == null) {
+                value = created;
+            }
+        }
+        return value;
+    }
+
+    /**
+     * Latency histogram with fixed, roughly logarithmic millisecond buckets.
+     */
+    private static class Histogram {
+        static final long[] BOUNDS = {1, 2, 5, 10, 20, 50, 100, 200, 500,
+                1000, 2000, 5000, 10000, 30000, 60000, Long.MAX_VALUE};
+
+        private final AtomicLongArray buckets = new AtomicLongArray(BOUNDS.length);
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong sum = new AtomicLong();
+        private final AtomicLong max = new AtomicLong();
+
+        void record(long millis) {
+            int bucket = 0;
+            while (millis > BOUNDS[bucket]) {
+                bucket++;
+            }
+            buckets.incrementAndGet(bucket);
+            count.incrementAndGet();
+            sum.addAndGet(millis);
+            long currentMax;
+            while (millis > (currentMax = max.get()) && !max.compareAndSet(currentMax, millis)) {
+                // Lost a race with another update; read the new max and try again
+            }
+        }
+
+        HistogramSnapshot snapshot() {
+            long[] counts = new long[BOUNDS.length];
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] = buckets.get(i);
+            }
+            return new HistogramSnapshot(counts, count.get(), sum.get(), max.get());
+        }
+    }
+
+    public static class HistogramSnapshot {
+        private final long[] buckets;
+        private final long count;
+        private final long sumMillis;
+        private final long maxMillis;
+
+        HistogramSnapshot(long[] buckets, long count, long sumMillis, long maxMillis) {
+            this.buckets = buckets;
+            this.count = count;
+            this.sumMillis = sumMillis;
+            this.maxMillis = maxMillis;
+        }
+
+        public long getCount() { return count; }
+        public long getSumMillis() { return sumMillis; }
+        public long getMaxMillis() { return maxMillis; }
+
+        public long getMeanMillis() {
+            return count > 0 ? sumMillis / count : 0;
+        }
+
+        /**
+         * Upper bound of the bucket holding the given quantile (0..1), capped at the
+         * largest value seen.
+         */
+        public long getPercentileMillis(double quantile) {
+            if (count == 0) {
+                return 0;
+            }
+            long rank = (long) Math.ceil(quantile * count);
+            long seen = 0;
+            for (int i = 0; i < buckets.length; i++) {
+                seen += buckets[i];
+                if (seen >= rank) {
+                    return Math.min(Histogram.BOUNDS[i], maxMillis);
+                }
+            }
+            return maxMillis;
+        }
+    }
+
+    public static class Snapshot {
+        private final long takenAtMillis;
+        private final Map<String, Long> counters;
+        private final Map<String, Long> gauges;
+        private final Map<String, HistogramSnapshot> histograms;
+
+        Snapshot(long takenAtMillis, Map<String, Long> counters, Map<String, Long> gauges,
+                 Map<String, HistogramSnapshot> histograms) {
+            this.takenAtMillis = takenAtMillis;
+            this.counters = Collections.unmodifiableMap(counters);
+            this.gauges = Collections.unmodifiableMap(gauges);
+            this.histograms = Collections.unmodifiableMap(histograms);
+        }
+
+        public long getTakenAtMillis() { return takenAtMillis; }
+        public Map<String, Long> getCounters() { return counters; }
+        public Map<String, Long> getGauges() { return gauges; }
+        public Map<String, HistogramSnapshot> getHistograms() { return histograms; }
+
+        public long getCounter(String name) {
+            Long value = counters.get(name);
+            return value != null ? value : 0;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder out = new StringBuilder();
+            out.append("# sync metrics at ").append(takenAtMillis).append('\n');
+            for (Map.Entry<String, Long> entry : counters.entrySet()) {
+                out.append(entry.getKey()).append(' ').append(entry.getValue()).append('\n');
+            }
+            for (Map.Entry<String, Long> entry : gauges.entrySet()) {
+                out.append(entry.getKey()).append(' ').append(entry.getValue()).append('\n');
+            }
+            for (Map.Entry<String, HistogramSnapshot> entry : histograms.entrySet()) {
+                HistogramSnapshot h = entry.getValue();
+                out.append(entry.getKey())
+                        .append(" count=").append(h.getCount())
+                        .append(" mean=").append(h.getMeanMillis())
+                        .append(" p50=").append(h.getPercentileMillis(0.5))
+                        .append(" p90=").append(h.getPercentileMillis(0.9))
+                        .append(" p99=").append(h.getPercentileMillis(0.99))
+                        .append(" max=").append(h.getMaxMillis())
+                        .append(" ms\n");
+            }
+            return out.toString();
+        }
+    }
+}
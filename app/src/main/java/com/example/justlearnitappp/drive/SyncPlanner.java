@@ -0,0 +1,99 @@
+package com.example.justlearnitappp.drive;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Diffs a folder's remote listing against its manifest. Planning only looks at
+ * metadata, so it costs the same whether the files are on disk or not.
+ */
+public final class SyncPlanner {
+
+    private SyncPlanner() {
+    }
+
+    /**
+     * Plans one page of a folder tree that is listed piece by piece. Deletions
+     * wait for {@link #planDeletions} once the whole tree is listed.
+     */
+    public static Plan planPartial(SyncManifest manifest, Iterable<DriveFile> remoteFiles) {
+        Plan plan = new Plan();
+        for (DriveFile file : remoteFiles) {
+            planFile(plan, manifest.get(file.getId()), file);
+        }
+        return plan;
+    }
+
+    /**
+     * Plans the deletion of every manifest entry that is not among {@code seenIds}.
+     */
+    public static Plan planDeletions(SyncManifest manifest, Set<String> seenIds) {
+        Plan plan = new Plan();
+        for (SyncManifest.Entry entry : manifest.entries()) {
+            if (!seenIds.contains(entry.getFileId())) {
+                plan.deletions.add(entry);
+            }
+        }
+        return plan;
+    }
+
+    /**
+     * Plans a single file reported by the changes feed.
+     */
+    public static Plan planChange(SyncManifest manifest, DriveFile file) {
+        Plan plan = new Plan();
+        planFile(plan, manifest.get(file.getId()), file);
+        return plan;
+    }
+
+    private static void planFile(Plan plan, SyncManifest.Entry entry, DriveFile file) {
+        if (!file.hasBinaryContent()) {
+            plan.skipped.add(file);
+        } else if (entry == null || !sameContent(entry, file)) {
+            plan.downloads.add(file);
+        } else if (!entry.isLocal()) {
+            plan.remoteOnly.add(file);
+        } else if (!entry.getPath().equals(file.getName())) {
+            plan.renames.add(file);
+        } else {
+            plan.unchanged++;
+        }
+    }
+
+    /**
+     * Whether the local copy described by {@code entry} already holds the bytes of
+     * {@code file}. The checksum decides when both sides have one; otherwise the
+     * Drive version, size and modified time must all match.
+     */
+    public static boolean sameContent(SyncManifest.Entry entry, DriveFile file) {
+        if (entry.getMd5Checksum() != null && file.getMd5Checksum() != null) {
+            return entry.getMd5Checksum().equals(file.getMd5Checksum())
+                    && entry.getSize() == file.getSize();
+        }
+        return entry.getVersion() == file.getVersion()
+                && entry.getSize() == file.getSize()
+                && entry.getModifiedTime() == file.getLastModified();
+    }
+
+    public static class Plan {
+        private final List<DriveFile> downloads = new ArrayList<>();
+        private final List<DriveFile> renames = new ArrayList<>();
+        private final List<SyncManifest.Entry> deletions = new ArrayList<>();
+        private final List<DriveFile> skipped = new ArrayList<>();
+        private final List<DriveFile> remoteOnly = new ArrayList<>();
+        private int unchanged;
+
+        /** Files whose bytes are missing or out of date locally. */
+        public List<DriveFile> getDownloads() { return downloads; }
+        /** Files whose content is current but whose name changed on Drive. */
+        public List<DriveFile> getRenames() { return renames; }
+        /** Local copies of files that are no longer in the folder. */
+        public List<SyncManifest.Entry> getDeletions() { return deletions; }
+        /** Folders and Google Docs types, which have no bytes to download. */
+        public List<DriveFile> getSkipped() { return skipped; }
+        /** Files recorded as they are on Drive whose bytes have not been fetched. */
+        public List<DriveFile> getRemoteOnly() { return remoteOnly; }
+        public int getUnchanged() { return unchanged; }
+    }
+}
@@ -0,0 +1,43 @@
+package com.example.justlearnitappp.drive;
+
+/**
+ * How far a sync run has got. Totals grow while folders are still being listed,
+ * so the fraction can step back when a large folder's listing arrives.
+ */
+public class SyncProgress {
+    private final int filesDone;
+    private final int filesTotal;
+    private final long bytesDone;
+    private final long bytesTotal;
+    private final String currentFile;
+    private final long currentFileBytesDone;
+    private final long currentFileBytesTotal;
+
+    SyncProgress(int filesDone, int filesTotal, long bytesDone, long bytesTotal,
+                 String currentFile, long currentFileBytesDone, long currentFileBytesTotal) {
+        this.filesDone = filesDone;
+        this.filesTotal = filesTotal;
+        this.bytesDone = bytesDone;
+        this.bytesTotal = bytesTotal;
+        this.currentFile = currentFile;
+        this.currentFileBytesDone = currentFileBytesDone;
+        this.currentFileBytesTotal = currentFileBytesTotal;
+    }
+
+    public int getFilesDone() { return filesDone; }
+    public int getFilesTotal() { return filesTotal; }
+    public long getBytesDone() { return bytesDone; }
+    public long getBytesTotal() { return bytesTotal; }
+
+    /** Name of the file whose bytes triggered this update, or null for a run-level update. */
+    public String getCurrentFile() { return currentFile; }
+    public long getCurrentFileBytesDone() { return currentFileBytesDone; }
+    public long getCurrentFileBytesTotal() { return currentFileBytesTotal; }
+
+    /**
+     * Share of the known bytes that are on disk, from 0 to 1.
+     */
+    public float getFraction() {
+        return bytesTotal > 0 ? Math.min(1f, (float) bytesDone / bytesTotal) : (filesTotal > 0 ? 0f : 1f);
+    }
+}
@@ -0,0 +1,50 @@
+package com.example.justlearnitappp.drive;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Outcome of a finished sync run, including every file that could not be synced.
+ */
+public class SyncResult {
+    private final List<String> errors;
+    private final List<FailedFile> failedFiles;
+    private final int filesDownloaded;
+    private final long bytesDownloaded;
+
+    SyncResult(List<String> errors, List<FailedFile> failedFiles, int filesDownloaded, long bytesDownloaded) {
+        this.errors = Collections.unmodifiableList(errors);
+        this.failedFiles = Collections.unmodifiableList(failedFiles);
+        this.filesDownloaded = filesDownloaded;
+        this.bytesDownloaded = bytesDownloaded;
+    }
+
+    public boolean isSuccessful() {
+        return errors.isEmpty();
+    }
+
+    /** Every error of the run, including folder-level ones such as a failed listing. */
+    public List<String> getErrors() { return errors; }
+    public List<FailedFile> getFailedFiles() { return failedFiles; }
+    public int getFilesDownloaded() { return filesDownloaded; }
+    public long getBytesDownloaded() { return bytesDownloaded; }
+
+    public static class FailedFile {
+        private final String folderName;
+        private final String fileId;
+        private final String name;
+        private final String error;
+
+        FailedFile(String folderName, String fileId, String name, String error) {
+            this.folderName = folderName;
+            this.fileId = fileId;
+            this.name = name;
+            this.error = error;
+        }
+
+        public String getFolderName() { return folderName; }
+        public String getFileId() { return fileId; }
+        public String getName() { return name; }
+        public String getError() { return error; }
+    }
+}
@@ -0,0 +1,143 @@
+package com.example.justlearnitappp.drive;
+
+import android.util.Log;
+
+import com.example.justlearnitappp.concurrent.CancellationToken;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * One sync run over one or more folders. Completes once every listing and
+ * download task submitted for it has finished. Cancelling it skips the tasks
+ * still queued and stops downloads in flight at their next write; a cancelled
+ * run still only completes once those have let go of their files.
+ *
+ * <p>Not a {@link java.util.concurrent.Future}: a cancelled future is done at
+ * once, while a run is not done until its manifests have been saved.
+ */
+public class SyncRun {
+    private static final String TAG = "SyncRun";
+    private final AtomicInteger pendingTasks = new AtomicInteger();
+    private final CountDownLatch done = new CountDownLatch(1);
+    private final List<String> errors = Collections.synchronizedList(new ArrayList<String>());
+    private final List<SyncResult.FailedFile> failedFiles =
+            Collections.synchronizedList(new ArrayList<SyncResult.FailedFile>());
+    private final List<Runnable> listeners = new ArrayList<>();
+    private final CancellationToken cancellation = new CancellationToken();
+    private boolean completed;
+
+    void taskSubmitted() {
+        pendingTasks.incrementAndGet();
+    }
+
+    void taskFinished() {
+        if (pendingTasks.decrementAndGet() == 0) {
+            complete();
+        }
+    }
+
+    void addError(String error) {
+        errors.add(error);
+    }
+
+    public List<String> getErrors() {
+        synchronized (errors) {
+            return new ArrayList<>(errors);
+        }
+    }
+
+    void addFailedFile(SyncResult.FailedFile file) {
+        failedFiles.add(file);
+    }
+
+    public List<SyncResult.FailedFile> getFailedFiles() {
+        synchronized (failedFiles) {
+            return new ArrayList<>(failedFiles);
+        }
+    }
+
+    /**
+     * Runs the listener once the run has completed, immediately if it already has.
+     * The listener is called on whichever thread finishes the last task, before
+     * {@link #await()} returns.
+     */
+    public void addListener(Runnable listener) {
+        synchronized (listeners) {
+            if (!completed) {
+                listeners.add(listener);
+                return;
+            }
+        }
+        listener.run();
+    }
+
+    private void complete() {
+        List<Runnable> toNotify;
+        synchronized (listeners) {
+            if (completed) {
+                return;
+            }
+            completed = true;
+            toNotify = new ArrayList<>(listeners);
+            listeners.clear();
+        }
+        try {
+            for (Runnable listener : toNotify) {
+                // A failing listener, often an app callback, must not take the others
+                // or the finishing worker thread down with it
+                try {
+                    listener.run();
+                } catch (RuntimeException e) {
+                    Log.e(TAG, "Sync run listener failed", e);
+                }
+            }
+        } finally {
+            done.countDown();
+        }
+    }
+
+    /**
+     * Cancels the run. Returns false if it had already completed.
+     */
+    public boolean cancel() {
+        if (isDone()) {
+            return false;
+        }
+        cancellation.cancel();
+        return true;
+    }
+
+    public boolean isCancelled() {
+        return cancellation.isCancelled();
+    }
+
+    CancellationToken getCancellation() {
+        return cancellation;
+    }
+
+    /**
+     * Whether the run has completed, cancelled or not.
+     */
+    public boolean isDone() {
+        return done.getCount() == 0;
+    }
+
+    /**
+     * Waits until the run has completed, cancelled or not.
+     */
+    public void await() throws InterruptedException {
+        done.await();
+    }
+
+    public void await(long timeout, TimeUnit unit) throws InterruptedException, TimeoutException {
+        if (!done.await(timeout, unit)) {
+            throw new TimeoutException("Sync run still in progress");
+        }
+    }
+}
@@ -0,0 +1,377 @@
+package com.example.justlearnitappp.drive;
+
+import android.util.Log;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Process-wide pool that runs sync work for all folders with a bounded number
+ * of concurrent tasks. Each folder has its own queue. Folders with a higher
+ * priority are served first and folders of equal priority round-robin, so a
+ * folder with hundreds of files cannot starve the others. Within a folder the
+ * smallest files go first.
+ *
+ * Large media runs in a background lane with its own, smaller limit. When
+ * foreground work is waiting and every slot is taken, background tasks are
+ * asked to yield; they stop at their next chunk boundary and are queued again.
+ *
+ * When Drive signals rate limiting the limit is halved, and it grows back by one
+ * slot per run of successful requests, up to the configured maximum.
+ */
+public class SyncScheduler {
+    private static final String TAG = "SyncScheduler";
+    public static final int DEFAULT_MAX_CONCURRENT_DOWNLOADS = 4;
+    public static final int DEFAULT_MAX_BACKGROUND_DOWNLOADS = 1;
+    // Successful requests after which a throttled limit grows back by one
+    private static final int RECOVERY_SUCCESSES = 20;
+    // Rate limit signals from requests that were in flight together count once
+    private static final long THROTTLE_WINDOW_NANOS = 1_000_000_000L;
+    // Workers without work for this long exit; new ones start with the next task
+    private static final long WORKER_IDLE_MILLIS = 60 * 1000;
+
+    private static SyncScheduler instance;
+
+    /**
+     * Polled by background work at points where it can stop and resume later.
+     */
+    interface Yield {
+        Yield NEVER = () -> false;
+
+        boolean requested();
+    }
+
+    /**
+     * Work for the background lane. Returns false if it yielded before finishing
+     * and has to run again.
+     */
+    interface BackgroundTask {
+        boolean run(Yield yield);
+    }
+
+    private final Object lock = new Object();
+    private final Lane foreground = new Lane();
+    private final Lane background = new Lane();
+    private final Yield yield = this::foregroundStarved;
+    private int maxConcurrent;
+    private int maxBackground = DEFAULT_MAX_BACKGROUND_DOWNLOADS;
+    private int throttledLimit = Integer.MAX_VALUE;
+    private int successesSinceThrottle;
+    private long lastThrottleNanos;
+    private int workerCount;
+    private int running;
+    private int runningBackground;
+    private long nextSequence;
+
+    public SyncScheduler(int maxConcurrent) {
+        if (maxConcurrent < 1) {
+            throw new IllegalArgumentException("maxConcurrent must be at least 1");
+        }
+        this.maxConcurrent = maxConcurrent;
+    }
+
+    public static synchronized SyncScheduler getInstance() {
+        if (instance == null) {
+            instance = new SyncScheduler(DEFAULT_MAX_CONCURRENT_DOWNLOADS);
+        }
+        return instance;
+    }
+
+    /**
+     * Takes effect at once: a raised limit starts workers for queued tasks
+     * straight away, and a lowered one lets running tasks finish.
+     */
+    public void setMaxConcurrentDownloads(int maxConcurrent) {
+        if (maxConcurrent < 1) {
+            throw new IllegalArgumentException("maxConcurrent must be at least 1");
+        }
+        synchronized (lock) {
+            this.maxConcurrent = maxConcurrent;
+            if (!foreground.isEmpty() || !background.isEmpty()) {
+                while (workerCount < maxConcurrent) {
+                    startWorker();
+                }
+            }
+            lock.notifyAll();
+        }
+    }
+
+    public int getMaxConcurrentDownloads() {
+        synchronized (lock) {
+            return maxConcurrent;
+        }
+    }
+
+    /**
+     * Tasks that may run at once right now: the configured maximum, or less
+     * while Drive is rate limiting.
+     */
+    public int getConcurrencyLimit() {
+        synchronized (lock) {
+            return concurrencyLimit();
+        }
+    }
+
+    void onRateLimited() {
+        synchronized (lock) {
+            long now = System.nanoTime();
+            if (throttledLimit < Integer.MAX_VALUE && now - lastThrottleNanos < THROTTLE_WINDOW_NANOS) {
+                return;
+            }
+            lastThrottleNanos = now;
+            throttledLimit = Math.max(1, concurrencyLimit() / 2);
+            successesSinceThrottle = 0;
+            Log.w(TAG, "Rate limited by Drive, running at most " + throttledLimit + " tasks");
+        }
+    }
+
+    void onRequestSucceeded() {
+        synchronized (lock) {
+            if (throttledLimit == Integer.MAX_VALUE || ++successesSinceThrottle < RECOVERY_SUCCESSES) {
+                return;
+            }
+            successesSinceThrottle = 0;
+            throttledLimit++;
+            if (throttledLimit >= maxConcurrent) {
+                throttledLimit = Integer.MAX_VALUE;
+            }
+            lock.notifyAll();
+        }
+    }
+
+    private int concurrencyLimit() {
+        return Math.min(maxConcurrent, throttledLimit);
+    }
+
+    /**
+     * How many of the concurrent slots large media may hold at once.
+     */
+    public void setMaxBackgroundDownloads(int maxBackground) {
+        if (maxBackground < 1) {
+            throw new IllegalArgumentException("maxBackground must be at least 1");
+        }
+        synchronized (lock) {
+            this.maxBackground = maxBackground;
+            lock.notifyAll();
+        }
+    }
+
+    /**
+     * Queues foreground work. {@code size} orders the folder's queue, smallest
+     * first; listings and other metadata work pass 0.
+     */
+    void submit(SyncRun run, String folderKey, int priority, long size, Runnable body) {
+        enqueue(new Task(run, folderKey, priority, size, body, null));
+    }
+
+    void submitBackground(SyncRun run, String folderKey, int priority, long size, BackgroundTask body) {
+        enqueue(new Task(run, folderKey, priority, size, null, body));
+    }
+
+    private void enqueue(Task task) {
+        task.run.taskSubmitted();
+        synchronized (lock) {
+            task.sequence = nextSequence++;
+            (task.isBackground() ? background : foreground).add(task);
+            // Workers are started lazily and never exceed the highest limit configured.
+            if (workerCount < maxConcurrent) {
+                startWorker();
+            }
+            lock.notifyAll();
+        }
+    }
+
+    private boolean foregroundStarved() {
+        synchronized (lock) {
+            return !foreground.isEmpty() && running >= concurrencyLimit();
+        }
+    }
+
+    private void startWorker() {
+        Thread worker = new Thread(this::workerLoop, "drive-sync-" + workerCount);
+        worker.setDaemon(true);
+        workerCount++;
+        worker.start();
+    }
+
+    /**
+     * Waits for the next task, or returns null once the worker has been idle long
+     * enough to exit.
+     */
+    private Task nextTask() throws InterruptedException {
+        synchronized (lock) {
+            long idleDeadline = System.nanoTime() + WORKER_IDLE_MILLIS * 1_000_000L;
+            while (true) {
+                if (running < concurrencyLimit()) {
+                    if (!foreground.isEmpty()) {
+                        running++;
+                        return foreground.poll();
+                    }
+                    if (!background.isEmpty() && runningBackground < maxBackground) {
+                        running++;
+                        runningBackground++;
+                        return background.poll();
+                    }
+                }
+                long remainingMillis = (idleDeadline - System.nanoTime()) / 1_000_000L;
+                if (remainingMillis <= 0) {
+                    workerCount--;
+                    return null;
+                }
+                lock.wait(remainingMillis);
+            }
+        }
+    }
+
+    private void workerLoop() {
+        // Cleared once nextTask has taken the worker off the count itself
+        boolean counted = true;
+        try {
+            while (true) {
+                Task task = nextTask();
+                if (task == null) {
+                    counted = false;
+                    return;
+                }
+                runTask(task);
+            }
+        } catch (InterruptedException e) {
+            Log.w(TAG, "Sync worker interrupted", e);
+        } finally {
+            if (counted) {
+                workerExited();
+            }
+        }
+    }
+
+    /**
+     * Takes a worker that ended abnormally off the count, and replaces it if work
+     * is still queued, so an error that escapes a task cannot stall the queue.
+     */
+    private void workerExited() {
+        synchronized (lock) {
+            workerCount--;
+            if ((!foreground.isEmpty() || !background.isEmpty()) && workerCount < maxConcurrent) {
+                startWorker();
+            }
+        }
+    }
+
+    private void runTask(Task task) {
+        boolean yielded = false;
+        try {
+            if (!task.run.isCancelled()) {
+                if (task.isBackground()) {
+                    yielded = !task.backgroundBody.run(yield);
+                } else {
+                    task.body.run();
+                }
+            }
+        } catch (RuntimeException e) {
+            Log.e(TAG, "Sync task failed", e);
+            task.run.addError("Sync task failed: " + e.getMessage());
+        } finally {
+            synchronized (lock) {
+                running--;
+                if (task.isBackground()) {
+                    runningBackground--;
+                }
+                if (yielded) {
+                    // Keeps its sequence number, so it is first in line once the lane frees up
+                    background.add(task);
+                }
+                lock.notifyAll();
+            }
+            if (!yielded) {
+                task.run.taskFinished();
+            }
+        }
+    }
+
+    /**
+     * Per-folder queues of one lane, served by folder priority and round-robin
+     * between folders of the same priority.
+     */
+    private static class Lane {
+        private final Map<String, PriorityQueue<Task>> queues = new HashMap<>();
+        private final ArrayDeque<String> readyFolders = new ArrayDeque<>();
+
+        void add(Task task) {
+            PriorityQueue<Task> queue = queues.get(task.folderKey);
+            if (queue == null) {
+                queue = new PriorityQueue<>();
+                queues.put(task.folderKey, queue);
+                readyFolders.addLast(task.folderKey);
+            }
+            queue.add(task);
+        }
+
+        boolean isEmpty() {
+            return readyFolders.isEmpty();
+        }
+
+        Task poll() {
+            String folderKey = null;
+            int bestPriority = Integer.MIN_VALUE;
+            for (String candidate : readyFolders) {
+                int priority = queues.get(candidate).peek().priority;
+                if (folderKey == null || priority > bestPriority) {
+                    folderKey = candidate;
+                    bestPriority = priority;
+                }
+            }
+            for (Iterator<String> it = readyFolders.iterator(); it.hasNext(); ) {
+                if (it.next().equals(folderKey)) {
+                    it.remove();
+                    break;
+                }
+            }
+
+            PriorityQueue<Task> queue = queues.get(folderKey);
+            Task task = queue.poll();
+            if (queue.isEmpty()) {
+                queues.remove(folderKey);
+            } else {
+                readyFolders.addLast(folderKey);
+            }
+            return task;
+        }
+    }
+
+    private static class Task implements Comparable<Task> {
+        final SyncRun run;
+        final String folderKey;
+        final int priority;
+        final long size;
+        final Runnable body;
+        final BackgroundTask backgroundBody;
+        long sequence;
+
+        Task(SyncRun run, String folderKey, int priority, long size, Runnable body, BackgroundTask backgroundBody) {
+            this.run = run;
+            this.folderKey = folderKey;
+            this.priority = priority;
+            this.size = Math.max(0, size);
+            this.body = body;
+            this.backgroundBody = backgroundBody;
+        }
+
+        boolean isBackground() {
+            return backgroundBody != null;
+        }
+
+        @Override
+        public int compareTo(Task other) {
+            if (priority != other.priority) {
+                return priority > other.priority ? -1 : 1;
+            }
+            if (size != other.size) {
+                return size < other.size ? -1 : 1;
+            }
+            return Long.compare(sequence, other.sequence);
+        }
+    }
+}
@@ -8,6 +8,7 @@ import android.util.Log;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
@@ -28,13 +29,19 @@ public class CredentialsManager {
     private static final String TAG = "CredentialsManager";
     private static final String KEYSTORE_ALIAS = "JustLearnItCredentials";
     private static final String CREDENTIALS_FILE = "encrypted_credentials.dat";
+    private static final String ACCESS_TOKEN_FILE = "encrypted_access_token.dat";
     private static final String ANDROID_KEYSTORE = "AndroidKeyStore";
     private static final String AES_MODE = "AES/GCM/NoPadding";
     private static final int GCM_IV_LENGTH = 12;
     private static final int GCM_TAG_LENGTH = 128;
 
+    private static CredentialsManager instance;
+
     private final Context context;
     private final KeyStore keyStore;
+    // Decrypted once and kept for the life of the process
+    private volatile String cachedCredentials;
+    private volatile AccessToken cachedAccessToken;
 
     public CredentialsManager(Context context) throws Exception {
         this.context = context;
@@ -43,6 +50,16 @@ public class CredentialsManager {
         initializeKey();
     }
 
+    /**
+     * Returns the process-wide manager, so the Keystore is loaded once per process.
+     */
+    public static synchronized CredentialsManager getInstance(Context context) throws Exception {
+        if (instance == null) {
+            instance = new CredentialsManager(context.getApplicationContext());
+        }
+        return instance;
+    }
+
     private void initializeKey() throws Exception {
         if (!keyStore.containsAlias(KEYSTORE_ALIAS)) {
             KeyGenerator keyGenerator = KeyGenerator.getInstance(
@@ -62,12 +79,76 @@ public class CredentialsManager {
     }
 
     public void saveCredentials(String credentials) throws Exception {
+        writeEncrypted(CREDENTIALS_FILE, credentials.getBytes(StandardCharsets.UTF_8));
+        cachedCredentials = credentials;
+    }
+
+    public String getCredentials() throws Exception {
+        String credentials = cachedCredentials;
+        if (credentials != null) {
+            return credentials;
+        }
+        byte[] decrypted = readEncrypted(CREDENTIALS_FILE);
+        if (decrypted == null) {
+            return null;
+        }
+        credentials = new String(decrypted, StandardCharsets.UTF_8);
+        cachedCredentials = credentials;
+        return credentials;
+    }
+
+    /**
+     * Stores a short-lived OAuth access token with the same encryption as the
+     * credentials, so a cold start within its lifetime can skip the token request.
+     */
+    public void saveAccessToken(String token, long expiresAtMillis) throws Exception {
+        String record = expiresAtMillis + "\n" + token;
+        writeEncrypted(ACCESS_TOKEN_FILE, record.getBytes(StandardCharsets.UTF_8));
+        cachedAccessToken = new AccessToken(token, expiresAtMillis);
+    }
+
+    /**
+     * Returns the saved access token, or null if there is none or it cannot be read.
+     * The caller decides whether it is still fresh enough to use.
+     */
+    public AccessToken getAccessToken() {
+        AccessToken token = cachedAccessToken;
+        if (token != null) {
+            return token;
+        }
+        try {
+            byte[] decrypted = readEncrypted(ACCESS_TOKEN_FILE);
+            if (decrypted == null) {
+                return null;
+            }
+            String record = new String(decrypted, StandardCharsets.UTF_8);
+            int separator = record.indexOf('\n');
+            token = new AccessToken(record.substring(separator + 1),
+                    Long.parseLong(record.substring(0, separator)));
+            cachedAccessToken = token;
+            return token;
+        } catch (Exception e) {
+            Log.w(TAG, "Discarding unreadable access token", e);
+            deleteAccessToken();
+            return null;
+        }
+    }
+
+    public void deleteAccessToken() {
+        cachedAccessToken = null;
+        File file = new File(context.getFilesDir(), ACCESS_TOKEN_FILE);
+        if (file.exists()) {
+            file.delete();
+        }
+    }
+
+    private void writeEncrypted(String fileName, byte[] plaintext) throws Exception {
         SecretKey secretKey = (SecretKey) keyStore.getKey(KEYSTORE_ALIAS, null);
         Cipher cipher = Cipher.getInstance(AES_MODE);
         cipher.init(Cipher.ENCRYPT_MODE, secretKey);
 
         byte[] iv = cipher.getIV();
-        byte[] encrypted = cipher.doFinal(credentials.getBytes(StandardCharsets.UTF_8));
+        byte[] encrypted = cipher.doFinal(plaintext);
 
         // Combine IV and encrypted data
         ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
@@ -75,23 +156,22 @@ public class CredentialsManager {
         outputStream.write(encrypted);
 
         // Save to file
-        File file = new File(context.getFilesDir(), CREDENTIALS_FILE);
+        File file = new File(context.getFilesDir(), fileName);
         try (FileOutputStream fos = new FileOutputStream(file)) {
             fos.write(outputStream.toByteArray());
         }
     }
 
-    public String getCredentials() throws Exception {
-        File file = new File(context.getFilesDir(), CREDENTIALS_FILE);
+    private byte[] readEncrypted(String fileName) throws Exception {
+        File file = new File(context.getFilesDir(), fileName);
         if (!file.exists()) {
             return null;
         }
 
         // Read encrypted data
-        byte[] encryptedData;
-        try (FileInputStream fis = new FileInputStream(file)) {
-            encryptedData = new byte[(int) file.length()];
-            fis.read(encryptedData);
+        byte[] encryptedData = new byte[(int) file.length()];
+        try (DataInputStream dis = new DataInputStream(new FileInputStream(file))) {
+            dis.readFully(encryptedData);
         }
 
         // Split IV and encrypted data
@@ -106,8 +186,7 @@ public class CredentialsManager {
         GCMParameterSpec spec = new GCMParameterSpec(GCM_TAG_LENGTH, iv);
         cipher.init(Cipher.DECRYPT_MODE, secretKey, spec);
 
-        byte[] decrypted = cipher.doFinal(encrypted);
-        return new String(decrypted, StandardCharsets.UTF_8);
+        return cipher.doFinal(encrypted);
     }
 
     public boolean hasCredentials() {
@@ -116,9 +195,24 @@ public class CredentialsManager {
     }
 
     public void deleteCredentials() {
+        cachedCredentials = null;
         File file = new File(context.getFilesDir(), CREDENTIALS_FILE);
         if (file.exists()) {
             file.delete();
         }
+        deleteAccessToken();
+    }
+
+    public static class AccessToken {
+        private final String token;
+        private final long expiresAtMillis;
+
+        public AccessToken(String token, long expiresAtMillis) {
+            this.token = token;
+            this.expiresAtMillis = expiresAtMillis;
+        }
+
+        public String getToken() { return token; }
+        public long getExpiresAtMillis() { return expiresAtMillis; }
     }
 } 
\ No newline at end of file
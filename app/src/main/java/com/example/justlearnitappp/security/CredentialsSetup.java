@@ -14,7 +14,7 @@ public class CredentialsSetup {
 
     public static void setupCredentials(Context context) {
         try {
-            CredentialsManager credentialsManager = new CredentialsManager(context);
+            CredentialsManager credentialsManager = CredentialsManager.getInstance(context);
             
             // Check if credentials are already set up
             if (credentialsManager.hasCredentials()) {
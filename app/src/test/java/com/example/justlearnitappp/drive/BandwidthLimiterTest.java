@@ -0,0 +1,89 @@
+package com.example.justlearnitappp.drive;
+
+import com.example.justlearnitappp.concurrent.CancellationToken;
+
+import org.junit.Test;
+
+import java.io.InterruptedIOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class BandwidthLimiterTest {
+    private final CancellationToken token = new CancellationToken();
+
+    @Test
+    public void pacesWritesToTheRate() throws Exception {
+        BandwidthLimiter limiter = new BandwidthLimiter();
+        limiter.setLimits(BandwidthLimiter.UNLIMITED, 100 * 1024);
+
+        long start = System.nanoTime();
+        for (int i = 0; i < 10; i++) {
+            limiter.background().acquire(5 * 1024, token);
+        }
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        // 50 KiB at 100 KiB/s from an empty bucket
+        assertTrue("took " + elapsedMillis + " ms", elapsedMillis >= 400 && elapsedMillis < 2000);
+
+        // The foreground budget is separate and unlimited
+        start = System.nanoTime();
+        limiter.foreground().acquire(1024 * 1024, token);
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 100);
+    }
+
+    @Test
+    public void backgroundHoldsOffWhileForegroundIsWriting() throws Exception {
+        BandwidthLimiter limiter = new BandwidthLimiter();
+        limiter.foreground().acquire(1, token);
+
+        long start = System.nanoTime();
+        limiter.background().acquire(1, token);
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertTrue("took " + elapsedMillis + " ms", elapsedMillis >= BandwidthLimiter.FOREGROUND_QUIET_MILLIS - 50);
+    }
+
+    @Test
+    public void newLimitsApplyToWaitingWriters() throws Exception {
+        BandwidthLimiter limiter = new BandwidthLimiter();
+        limiter.setLimits(BandwidthLimiter.UNLIMITED, 1);
+        CountDownLatch done = new CountDownLatch(1);
+        Thread writer = new Thread(() -> {
+            try {
+                limiter.background().acquire(1024, token);
+                done.countDown();
+            } catch (InterruptedIOException e) {
+                // Left for the assertion below
+            }
+        });
+        writer.start();
+
+        Thread.sleep(100);
+        limiter.setLimits(BandwidthLimiter.UNLIMITED, BandwidthLimiter.UNLIMITED);
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void cancellingStopsTheWait() throws Exception {
+        BandwidthLimiter limiter = new BandwidthLimiter();
+        limiter.setLimits(1, 1);
+        AtomicReference<Exception> failure = new AtomicReference<>();
+        Thread writer = new Thread(() -> {
+            try {
+                limiter.foreground().acquire(1024, token);
+            } catch (InterruptedIOException e) {
+                failure.set(e);
+            }
+        });
+        writer.start();
+
+        Thread.sleep(100);
+        token.cancel();
+        writer.join(5000);
+        if (!(failure.get() instanceof InterruptedIOException)) {
+            fail("Expected the wait to end with InterruptedIOException");
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package com.example.justlearnitappp.drive;
+
+import com.example.justlearnitappp.concurrent.CancellationToken;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class CancellationTest {
+    private static final byte[] VIDEO = new byte[1024 * 1024];
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private FakeDrive drive;
+    private DriveService service;
+    private String folderId;
+
+    @Before
+    public void setUp() throws Exception {
+        drive = new FakeDrive(22);
+        folderId = drive.addFolder("Videos", "root");
+        drive.addFile("intro.mp4", folderId, VIDEO);
+        service = new DriveService(drive.newClient(), tmp.newFolder("state"));
+        service.setMinResyncInterval(0);
+        service.setProgressInterval(0);
+    }
+
+    @Test
+    public void cancelledSyncStopsDownloadMidStream() throws Exception {
+        SyncFolder folder = newFolder(SyncFolder.FetchPolicy.EAGER);
+        File localFile = new File(folder.getLocalPath(), "intro.mp4");
+        // Slow enough that the cancel lands before the last byte
+        drive.setBytesPerSecond(4 * 1024 * 1024);
+        CancellationToken token = new CancellationToken();
+        TestSync.Recorder callback = new TestSync.Recorder() {
+            @Override
+            public void onProgress(SyncProgress progress) {
+                if (progress.getCurrentFileBytesDone() > 0) {
+                    token.cancel();
+                }
+            }
+        };
+        SyncRun run = service.syncFolders(Collections.singletonList(folder), callback, token);
+        run.await(30, TimeUnit.SECONDS);
+
+        assertTrue(run.isCancelled());
+        callback.assertNoErrors();
+        assertTrue(run.getErrors().isEmpty());
+        assertFalse(localFile.exists());
+        assertFalse(PartFile.of(localFile).exists());
+        assertEquals(0, service.getMetrics().snapshot().getCounter(SyncMetrics.FILES_DOWNLOADED));
+
+        // Nothing was recorded, so the next run fetches the file
+        TestSync.sync(service, folder);
+        assertArrayEquals(VIDEO, Files.readAllBytes(localFile.toPath()));
+    }
+
+    @Test
+    public void abandonedOpenDropsCallbackAndLetsLaterOpensFetch() throws Exception {
+        SyncFolder folder = newFolder(SyncFolder.FetchPolicy.METADATA_ONLY);
+        TestSync.sync(service, folder);
+        drive.setBytesPerSecond(4 * 1024 * 1024);
+
+        CancellationToken token = new CancellationToken();
+        TestSync.OpenResult abandoned = new TestSync.OpenResult();
+        assertNull(service.openFile(folder, "intro.mp4", abandoned, token));
+        token.cancel();
+
+        TestSync.OpenResult later = new TestSync.OpenResult();
+        assertNull(service.openFile(folder, "intro.mp4", later));
+        assertTrue(later.done.await(30, TimeUnit.SECONDS));
+        assertNull(later.error);
+        assertArrayEquals(VIDEO, Files.readAllBytes(later.file.toPath()));
+        assertEquals(1, abandoned.done.getCount());
+    }
+
+    private SyncFolder newFolder(SyncFolder.FetchPolicy policy) throws Exception {
+        return new SyncFolder("Videos", folderId, tmp.newFolder("videos").getAbsolutePath(),
+                SyncFolder.PRIORITY_NORMAL, policy);
+    }
+}
@@ -0,0 +1,124 @@
+package com.example.justlearnitappp.drive;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class DeduplicationTest {
+    private static final byte[] LOGO = "shared logo bytes".getBytes();
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private FakeDrive drive;
+    private DriveService service;
+    private SyncFolder math;
+    private SyncFolder physics;
+
+    @Before
+    public void setUp() throws Exception {
+        drive = new FakeDrive(25);
+        String mathId = drive.addFolder("Math", "root");
+        drive.addFile("logo.png", mathId, LOGO);
+        drive.addFile("algebra.html", mathId, "algebra".getBytes());
+        String physicsId = drive.addFolder("Physics", "root");
+        drive.addFile("header.png", physicsId, LOGO);
+        drive.addFile("optics.html", physicsId, "optics".getBytes());
+        math = new SyncFolder("Math", mathId, tmp.newFolder("math").getAbsolutePath());
+        physics = new SyncFolder("Physics", physicsId, tmp.newFolder("physics").getAbsolutePath(),
+                SyncFolder.PRIORITY_NORMAL, SyncFolder.FetchPolicy.METADATA_ONLY);
+
+        service = new DriveService(drive.newClient(), tmp.newFolder("state"));
+        service.setMinResyncInterval(0);
+        service.getContentIndex().setLinker((existing, target) -> Files.createLink(target.toPath(), existing.toPath()));
+    }
+
+    @Test
+    public void sharedContentIsFetchedOnceAndLinked() throws Exception {
+        SyncFolder eagerPhysics = new SyncFolder("Physics", physics.getFolderId(), physics.getLocalPath());
+        TestSync.sync(service, Arrays.asList(math, eagerPhysics));
+
+        // Both folders sync at once; the second copy waits for the first download
+        assertEquals(3, drive.getRequestCount("media"));
+        File logo = new File(math.getLocalPath(), "logo.png");
+        File header = new File(physics.getLocalPath(), "header.png");
+        assertArrayEquals(LOGO, Files.readAllBytes(header.toPath()));
+        assertTrue(Files.isSameFile(logo.toPath(), header.toPath()));
+        assertEquals(1, service.getMetrics().snapshot().getCounter(SyncMetrics.FILES_LINKED));
+    }
+
+    @Test
+    public void openLinksContentAlreadyOnDisk() throws Exception {
+        TestSync.sync(service, Arrays.asList(math, physics));
+        drive.resetCounters();
+
+        File header = open(physics, "header.png");
+        assertArrayEquals(LOGO, Files.readAllBytes(header.toPath()));
+        assertEquals(0, drive.getRequestCount("media"));
+    }
+
+    @Test
+    public void damagedCopyIsNotLinked() throws Exception {
+        TestSync.sync(service, math);
+        File logo = new File(math.getLocalPath(), "logo.png");
+        try (FileOutputStream out = new FileOutputStream(logo)) {
+            out.write(new byte[LOGO.length]);
+        }
+        TestSync.sync(service, physics);
+        drive.resetCounters();
+
+        File header = open(physics, "header.png");
+        assertArrayEquals(LOGO, Files.readAllBytes(header.toPath()));
+        assertEquals(1, drive.getRequestCount("media"));
+    }
+
+    @Test
+    public void openSpeedsUpABackgroundFetchOfTheSameContent() throws Exception {
+        byte[] lecture = new byte[128 * 1024];
+        new Random(25).nextBytes(lecture);
+        String lecturesId = drive.addFolder("Lectures", "root");
+        drive.addFile("week1.mp4", lecturesId, lecture);
+        String archiveId = drive.addFolder("Archive", "root");
+        drive.addFile("2023-week1.mp4", archiveId, lecture);
+        SyncFolder lectures = new SyncFolder("Lectures", lecturesId, tmp.newFolder("lectures").getAbsolutePath());
+        SyncFolder archive = new SyncFolder("Archive", archiveId, tmp.newFolder("archive").getAbsolutePath(),
+                SyncFolder.PRIORITY_NORMAL, SyncFolder.FetchPolicy.METADATA_ONLY);
+        TestSync.sync(service, archive);
+
+        // At this pace the background sync alone would take over a minute
+        service.setBandwidthLimits(BandwidthLimiter.UNLIMITED, 2 * 1024);
+        TestSync.Recorder callback = new TestSync.Recorder();
+        SyncRun run = service.syncFolders(Collections.singletonList(lectures), callback);
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (service.getMetrics().snapshot().getGauges().get(SyncMetrics.DOWNLOADS_IN_FLIGHT) == null
+                && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+
+        long start = System.nanoTime();
+        File opened = open(archive, "2023-week1.mp4");
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertTrue("took " + elapsedMillis + " ms", elapsedMillis < 10 * 1000);
+        assertArrayEquals(lecture, Files.readAllBytes(opened.toPath()));
+        run.await(30, TimeUnit.SECONDS);
+        callback.assertNoErrors();
+        assertEquals(1, drive.getRequestCount("media"));
+    }
+
+    private File open(SyncFolder folder, String name) throws Exception {
+        return TestSync.open(service, folder, name);
+    }
+}
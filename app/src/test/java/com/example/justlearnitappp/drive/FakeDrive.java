@@ -0,0 +1,555 @@
+package com.example.justlearnitappp.drive;
+
+import com.google.api.client.http.GenericUrl;
+import com.google.api.client.http.HttpTransport;
+import com.google.api.client.http.LowLevelHttpRequest;
+import com.google.api.client.http.LowLevelHttpResponse;
+import com.google.api.client.json.GenericJson;
+import com.google.api.client.json.gson.GsonFactory;
+import com.google.api.client.testing.http.MockHttpTransport;
+import com.google.api.client.testing.http.MockLowLevelHttpRequest;
+import com.google.api.client.testing.http.MockLowLevelHttpResponse;
+import com.google.api.client.util.DateTime;
+import com.google.api.services.drive.Drive;
+import com.google.api.services.drive.model.Change;
+import com.google.api.services.drive.model.ChangeList;
+import com.google.api.services.drive.model.FileList;
+import com.google.api.services.drive.model.StartPageToken;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * In-process Drive v3 backend for sync tests. It plugs into Drive.Builder as the
+ * HTTP transport and serves folders, paged listings, media downloads with Range,
+ * the changes feed and batch requests. Latency, per-response bandwidth, server
+ * errors and 403 rate limiting can be injected; random failures come from a
+ * seeded generator so a run can be repeated.
+ */
+public class FakeDrive {
+    public static final String FOLDER_MIME_TYPE = "application/vnd.google-apps.folder";
+    private static final int DEFAULT_PAGE_SIZE = 100;
+    private static final int MAX_PAGE_SIZE = 1000;
+    private static final long EPOCH_MILLIS = 1700000000000L;
+    private static final Pattern PARENT_QUERY = Pattern.compile("'([^']+)' in parents");
+
+    private final Object lock = new Object();
+    private final Map<String, FakeFile> files = new LinkedHashMap<>();
+    private final List<String> changeLog = new ArrayList<>();
+    private final Random random;
+    private int nextId;
+    private long clock = EPOCH_MILLIS;
+
+    private volatile long latencyMillis;
+    private volatile long bytesPerSecond;
+    private volatile double errorRate;
+    private volatile double rateLimitRate;
+
+    private final AtomicInteger requestCount = new AtomicInteger();
+    private final AtomicLong bytesServed = new AtomicLong();
+    private final Map<String, AtomicInteger> requestsByKind = new ConcurrentHashMap<>();
+    // File id -> first byte that fails
+    private final Map<String, Long> brokenMedia = new ConcurrentHashMap<>();
+    private final List<String> mediaRanges = Collections.synchronizedList(new ArrayList<String>());
+    private final Set<String> corruptMedia = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    public FakeDrive(long seed) {
+        this.random = new Random(seed);
+    }
+
+    public Drive newClient() {
+        return new Drive.Builder(transport(), GsonFactory.getDefaultInstance(), null)
+                .setApplicationName("FakeDrive")
+                .build();
+    }
+
+    public HttpTransport transport() {
+        return new MockHttpTransport() {
+            @Override
+            public LowLevelHttpRequest buildRequest(String method, String url) {
+                return new MockLowLevelHttpRequest(url) {
+                    @Override
+                    public LowLevelHttpResponse execute() throws IOException {
+                        return handle(method, url, this);
+                    }
+                };
+            }
+        };
+    }
+
+    // Catalog
+
+    public String addFolder(String name, String parentId) {
+        return add(name, parentId, FOLDER_MIME_TYPE, null);
+    }
+
+    public String addFile(String name, String parentId, byte[] content) {
+        return add(name, parentId, "application/octet-stream", content);
+    }
+
+    public void updateFile(String id, byte[] content) {
+        synchronized (lock) {
+            FakeFile file = files.get(id);
+            file.content = content;
+            file.version++;
+            file.modifiedTime = ++clock;
+            changeLog.add(id);
+        }
+    }
+
+    public void renameFile(String id, String name) {
+        synchronized (lock) {
+            FakeFile file = files.get(id);
+            file.name = name;
+            file.version++;
+            file.modifiedTime = ++clock;
+            changeLog.add(id);
+        }
+    }
+
+    public void moveFile(String id, String parentId) {
+        synchronized (lock) {
+            FakeFile file = files.get(id);
+            file.parentId = parentId;
+            file.version++;
+            file.modifiedTime = ++clock;
+            changeLog.add(id);
+        }
+    }
+
+    public void deleteFile(String id) {
+        synchronized (lock) {
+            files.get(id).removed = true;
+            changeLog.add(id);
+        }
+    }
+
+    private String add(String name, String parentId, String mimeType, byte[] content) {
+        synchronized (lock) {
+            FakeFile file = new FakeFile();
+            file.id = (content == null ? "folder-" : "file-") + nextId++;
+            file.name = name;
+            file.parentId = parentId;
+            file.mimeType = mimeType;
+            file.content = content;
+            file.version = 1;
+            file.modifiedTime = ++clock;
+            files.put(file.id, file);
+            changeLog.add(file.id);
+            return file.id;
+        }
+    }
+
+    // Fault and network injection
+
+    public void setLatencyMillis(long latencyMillis) {
+        this.latencyMillis = latencyMillis;
+    }
+
+    /** Caps how fast each media response is delivered; 0 means unlimited. */
+    public void setBytesPerSecond(long bytesPerSecond) {
+        this.bytesPerSecond = bytesPerSecond;
+    }
+
+    /** Fraction of requests answered with a 500 backend error. */
+    public void setErrorRate(double errorRate) {
+        this.errorRate = errorRate;
+    }
+
+    /** Makes every media request for the file fail with a 500 until cleared. */
+    public void setMediaBroken(String fileId, boolean broken) {
+        if (broken) {
+            brokenMedia.put(fileId, 0L);
+        } else {
+            brokenMedia.remove(fileId);
+        }
+    }
+
+    /**
+     * Makes media requests for the file that start at or past {@code offset} fail
+     * with a 500, so a chunked download breaks off there, until cleared with
+     * {@link #setMediaBroken}.
+     */
+    public void setMediaBrokenFrom(String fileId, long offset) {
+        brokenMedia.put(fileId, offset);
+    }
+
+    /** Serves the file's media with its first byte flipped, so it no longer matches its md5, until cleared. */
+    public void setMediaCorrupt(String fileId, boolean corrupt) {
+        if (corrupt) {
+            corruptMedia.add(fileId);
+        } else {
+            corruptMedia.remove(fileId);
+        }
+    }
+
+    /** Fraction of requests answered with a 403 userRateLimitExceeded. */
+    public void setRateLimitRate(double rateLimitRate) {
+        this.rateLimitRate = rateLimitRate;
+    }
+
+    // Counters
+
+    /** HTTP round trips served; a batch counts once however many calls it carries. */
+    public int getRequestCount() {
+        return requestCount.get();
+    }
+
+    public int getRequestCount(String kind) {
+        AtomicInteger count = requestsByKind.get(kind);
+        return count != null ? count.get() : 0;
+    }
+
+    public long getBytesServed() {
+        return bytesServed.get();
+    }
+
+    /** Range headers of the media requests served, in order; "" for a request without one. */
+    public List<String> getMediaRanges() {
+        synchronized (mediaRanges) {
+            return new ArrayList<>(mediaRanges);
+        }
+    }
+
+    public void resetCounters() {
+        requestCount.set(0);
+        bytesServed.set(0);
+        requestsByKind.clear();
+        mediaRanges.clear();
+    }
+
+    // Request handling
+
+    private MockLowLevelHttpResponse handle(String method, String url, MockLowLevelHttpRequest request)
+            throws IOException {
+        requestCount.incrementAndGet();
+        sleep(latencyMillis);
+
+        MockLowLevelHttpResponse fault = injectFault();
+        if (fault != null) {
+            count("fault");
+            return fault;
+        }
+
+        GenericUrl parsed = new GenericUrl(url);
+        if (parsed.getRawPath().equals("/batch/drive/v3")) {
+            count("batch");
+            return batch(request);
+        }
+        return dispatch(method, parsed, request.getFirstHeaderValue("Range"));
+    }
+
+    private MockLowLevelHttpResponse dispatch(String method, GenericUrl url, String range) {
+        String path = url.getRawPath();
+        if (!method.equals("GET")) {
+            return error(405, "Method not allowed: " + method, "methodNotAllowed");
+        }
+        if (path.equals("/drive/v3/files")) {
+            count("list");
+            return list(url);
+        }
+        if (path.equals("/drive/v3/changes/startPageToken")) {
+            count("startPageToken");
+            return startPageToken();
+        }
+        if (path.equals("/drive/v3/changes")) {
+            count("changes");
+            return changes(url);
+        }
+        if (path.startsWith("/drive/v3/files/")) {
+            String id = path.substring("/drive/v3/files/".length());
+            if ("media".equals(url.getFirst("alt"))) {
+                count("media");
+                return media(id, range);
+            }
+            count("get");
+            return metadata(id);
+        }
+        return error(404, "Not found: " + path, "notFound");
+    }
+
+    private MockLowLevelHttpResponse list(GenericUrl url) {
+        Matcher matcher = PARENT_QUERY.matcher(String.valueOf(url.getFirst("q")));
+        if (!matcher.find()) {
+            return error(400, "Only parent queries are supported", "invalid");
+        }
+        String parentId = matcher.group(1);
+        int pageSize = pageSize(url);
+        int offset = url.getFirst("pageToken") != null ? Integer.parseInt((String) url.getFirst("pageToken")) : 0;
+
+        FileList page = new FileList();
+        List<com.google.api.services.drive.model.File> items = new ArrayList<>();
+        synchronized (lock) {
+            int index = 0;
+            for (FakeFile file : files.values()) {
+                if (file.removed || !parentId.equals(file.parentId)) {
+                    continue;
+                }
+                if (index >= offset && items.size() < pageSize) {
+                    items.add(file.toApi());
+                } else if (items.size() == pageSize) {
+                    page.setNextPageToken(String.valueOf(offset + pageSize));
+                    break;
+                }
+                index++;
+            }
+        }
+        page.setFiles(items);
+        return json(page);
+    }
+
+    private MockLowLevelHttpResponse startPageToken() {
+        StartPageToken token = new StartPageToken();
+        synchronized (lock) {
+            token.setStartPageToken(String.valueOf(changeLog.size()));
+        }
+        return json(token);
+    }
+
+    private MockLowLevelHttpResponse changes(GenericUrl url) {
+        int from;
+        try {
+            from = Integer.parseInt(String.valueOf(url.getFirst("pageToken")));
+        } catch (NumberFormatException e) {
+            return error(400, "Invalid page token", "invalid");
+        }
+        int pageSize = pageSize(url);
+        ChangeList page = new ChangeList();
+        List<Change> items = new ArrayList<>();
+        synchronized (lock) {
+            if (from > changeLog.size()) {
+                return error(404, "Page token not found", "notFound");
+            }
+            int to = Math.min(changeLog.size(), from + pageSize);
+            for (int i = from; i < to; i++) {
+                FakeFile file = files.get(changeLog.get(i));
+                Change change = new Change().setFileId(file.id).setRemoved(file.removed);
+                if (!file.removed) {
+                    change.setFile(file.toApi());
+                }
+                items.add(change);
+            }
+            if (to < changeLog.size()) {
+                page.setNextPageToken(String.valueOf(to));
+            } else {
+                page.setNewStartPageToken(String.valueOf(changeLog.size()));
+            }
+        }
+        page.setChanges(items);
+        return json(page);
+    }
+
+    private MockLowLevelHttpResponse metadata(String id) {
+        synchronized (lock) {
+            FakeFile file = files.get(id);
+            if (file == null || file.removed) {
+                return error(404, "File not found: " + id, "notFound");
+            }
+            return json(file.toApi());
+        }
+    }
+
+    private MockLowLevelHttpResponse media(String id, String range) {
+        mediaRanges.add(range != null ? range : "");
+        byte[] content;
+        synchronized (lock) {
+            FakeFile file = files.get(id);
+            if (file == null || file.removed) {
+                return error(404, "File not found: " + id, "notFound");
+            }
+            if (file.content == null) {
+                return error(403, "Only files with binary content can be downloaded", "fileNotDownloadable");
+            }
+            content = file.content;
+        }
+
+        int first = 0;
+        int last = content.length - 1;
+        String[] bounds = null;
+        if (range != null && range.startsWith("bytes=")) {
+            bounds = range.substring("bytes=".length()).split("-", -1);
+            first = Integer.parseInt(bounds[0]);
+        }
+        Long brokenFrom = brokenMedia.get(id);
+        if (brokenFrom != null && first >= brokenFrom) {
+            return error(500, "Backend Error", "backendError");
+        }
+        MockLowLevelHttpResponse response = new MockLowLevelHttpResponse()
+                .setContentType("application/octet-stream");
+        if (bounds != null) {
+            if (!bounds[1].isEmpty()) {
+                last = Math.min(last, Integer.parseInt(bounds[1]));
+            }
+            if (first > last) {
+                return error(416, "Requested range not satisfiable", "invalidRange");
+            }
+            response.setStatusCode(206)
+                    .addHeader("Content-Range", "bytes " + first + "-" + last + "/" + content.length);
+        }
+
+        byte[] body = Arrays.copyOfRange(content, first, last + 1);
+        if (first == 0 && body.length > 0 && corruptMedia.contains(id)) {
+            body[0] ^= 0x5a;
+        }
+        if (bytesPerSecond > 0) {
+            sleep(body.length * 1000L / bytesPerSecond);
+        }
+        bytesServed.addAndGet(body.length);
+        return response.setContent(body).setContentLength(body.length);
+    }
+
+    /**
+     * Answers a multipart/mixed batch by dispatching each embedded request in turn.
+     */
+    private MockLowLevelHttpResponse batch(MockLowLevelHttpRequest request) throws IOException {
+        String contentType = request.getContentType();
+        String boundary = contentType.substring(contentType.indexOf("boundary=") + "boundary=".length());
+        String body = request.getContentAsString();
+
+        StringBuilder out = new StringBuilder();
+        int partNumber = 0;
+        for (String part : body.split("--" + Pattern.quote(boundary))) {
+            int requestLineStart = indexOfRequestLine(part);
+            if (requestLineStart < 0) {
+                continue;
+            }
+            partNumber++;
+            String requestLine = part.substring(requestLineStart, part.indexOf("\r\n", requestLineStart));
+            String[] tokens = requestLine.split(" ");
+            MockLowLevelHttpResponse inner = dispatch(tokens[0], new GenericUrl(tokens[1]), null);
+
+            out.append("--batch_fake\r\n")
+                    .append("Content-Type: application/http\r\n")
+                    .append("Content-ID: <response-").append(partNumber).append(">\r\n\r\n")
+                    .append("HTTP/1.1 ").append(inner.getStatusCode()).append(" ")
+                    .append(inner.getStatusCode() < 300 ? "OK" : "Error").append("\r\n")
+                    .append("Content-Type: application/json; charset=UTF-8\r\n\r\n")
+                    .append(contentOf(inner)).append("\r\n");
+        }
+        out.append("--batch_fake--\r\n");
+        return new MockLowLevelHttpResponse()
+                .setContentType("multipart/mixed; boundary=batch_fake")
+                .setContent(out.toString());
+    }
+
+    private static int indexOfRequestLine(String part) {
+        for (String method : Arrays.asList("GET ", "POST ", "PATCH ", "DELETE ")) {
+            int index = part.indexOf("\r\n" + method);
+            if (index >= 0) {
+                return index + 2;
+            }
+        }
+        return -1;
+    }
+
+    private static String contentOf(MockLowLevelHttpResponse response) throws IOException {
+        byte[] buffer = new byte[8192];
+        StringBuilder content = new StringBuilder();
+        java.io.InputStream in = response.getContent();
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            content.append(new String(buffer, 0, read, StandardCharsets.UTF_8));
+        }
+        return content.toString();
+    }
+
+    private MockLowLevelHttpResponse injectFault() {
+        double roll;
+        synchronized (lock) {
+            roll = random.nextDouble();
+        }
+        if (roll < rateLimitRate) {
+            return error(403, "User Rate Limit Exceeded", "userRateLimitExceeded");
+        }
+        if (roll < rateLimitRate + errorRate) {
+            return error(500, "Backend Error", "backendError");
+        }
+        return null;
+    }
+
+    private void count(String kind) {
+        AtomicInteger count = requestsByKind.get(kind);
+        if (count == null) {
+            requestsByKind.putIfAbsent(kind, new AtomicInteger());
+            count = requestsByKind.get(kind);
+        }
+        count.incrementAndGet();
+    }
+
+    private static int pageSize(GenericUrl url) {
+        Object pageSize = url.getFirst("pageSize");
+        int size = pageSize != null ? Integer.parseInt(String.valueOf(pageSize)) : DEFAULT_PAGE_SIZE;
+        return Math.min(size, MAX_PAGE_SIZE);
+    }
+
+    private static MockLowLevelHttpResponse json(GenericJson body) {
+        try {
+            return new MockLowLevelHttpResponse()
+                    .setContentType("application/json; charset=UTF-8")
+                    .setContent(GsonFactory.getDefaultInstance().toString(body));
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static MockLowLevelHttpResponse error(int status, String message, String reason) {
+        String body = "{\"error\": {\"code\": " + status + ", \"message\": \"" + message + "\", "
+                + "\"errors\": [{\"domain\": \"usageLimits\", \"reason\": \"" + reason + "\", "
+                + "\"message\": \"" + message + "\"}]}}";
+        return new MockLowLevelHttpResponse()
+                .setStatusCode(status)
+                .setContentType("application/json; charset=UTF-8")
+                .setContent(body);
+    }
+
+    private static void sleep(long millis) {
+        if (millis <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static class FakeFile {
+        String id;
+        String name;
+        String parentId;
+        String mimeType;
+        byte[] content;
+        long version;
+        long modifiedTime;
+        boolean removed;
+
+        com.google.api.services.drive.model.File toApi() {
+            com.google.api.services.drive.model.File file = new com.google.api.services.drive.model.File()
+                    .setId(id)
+                    .setName(name)
+                    .setMimeType(mimeType)
+                    .setParents(Collections.singletonList(parentId))
+                    .setVersion(version)
+                    .setModifiedTime(new DateTime(modifiedTime))
+                    .setTrashed(false);
+            if (content != null) {
+                file.setSize((long) content.length);
+                file.setMd5Checksum(Checksums.toHex(Checksums.newMd5().digest(content)));
+            }
+            return file;
+        }
+    }
+}
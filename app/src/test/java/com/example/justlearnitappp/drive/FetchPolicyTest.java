@@ -0,0 +1,97 @@
+package com.example.justlearnitappp.drive;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.file.Files;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+
+public class FetchPolicyTest {
+    private static final byte[] LESSON = "<h1>Lesson</h1>".getBytes();
+    private static final byte[] VIDEO = "video bytes".getBytes();
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private FakeDrive drive;
+    private DriveService service;
+    private String folderId;
+    private String lessonId;
+    private String videoId;
+
+    @Before
+    public void setUp() throws Exception {
+        drive = new FakeDrive(3);
+        folderId = drive.addFolder("Videos", "root");
+        lessonId = drive.addFile("lesson.html", folderId, LESSON);
+        videoId = drive.addFile("intro.mp4", folderId, VIDEO);
+        service = new DriveService(drive.newClient(), tmp.newFolder("state"));
+        service.setMinResyncInterval(0);
+    }
+
+    @Test
+    public void metadataOnlyFolderFetchesOnOpen() throws Exception {
+        SyncFolder folder = newFolder(SyncFolder.FetchPolicy.METADATA_ONLY);
+        TestSync.sync(service, folder);
+
+        assertEquals(0, drive.getRequestCount("media"));
+        assertEquals(2, service.getCatalog(folder).size());
+        assertEquals(0, new File(folder.getLocalPath()).list().length);
+
+        File opened = open(folder, "intro.mp4");
+        assertArrayEquals(VIDEO, Files.readAllBytes(opened.toPath()));
+        assertEquals(1, drive.getRequestCount("media"));
+
+        // Now on disk, so the next open does not wait
+        assertNotNull(service.openFile(folder, "intro.mp4", new TestSync.OpenResult()));
+        assertEquals(1, drive.getRequestCount("media"));
+    }
+
+    @Test
+    public void metadataOnlyDropsCopyChangedOnDrive() throws Exception {
+        SyncFolder folder = newFolder(SyncFolder.FetchPolicy.METADATA_ONLY);
+        TestSync.sync(service, folder);
+        File opened = open(folder, "intro.mp4");
+
+        drive.updateFile(videoId, "new video bytes".getBytes());
+        drive.resetCounters();
+        TestSync.sync(service, folder);
+
+        assertEquals(0, drive.getRequestCount("media"));
+        assertFalse(opened.exists());
+        assertArrayEquals("new video bytes".getBytes(), Files.readAllBytes(open(folder, "intro.mp4").toPath()));
+    }
+
+    @Test
+    public void onDemandKeepsOpenedFilesCurrent() throws Exception {
+        SyncFolder folder = newFolder(SyncFolder.FetchPolicy.ON_DEMAND);
+        TestSync.sync(service, folder);
+        File opened = open(folder, "intro.mp4");
+
+        drive.updateFile(videoId, "new video bytes".getBytes());
+        drive.updateFile(lessonId, "<h1>Lesson, v2</h1>".getBytes());
+        drive.resetCounters();
+        TestSync.sync(service, folder);
+
+        // Only the file that was opened is downloaded again
+        assertEquals(1, drive.getRequestCount("media"));
+        assertArrayEquals("new video bytes".getBytes(), Files.readAllBytes(opened.toPath()));
+        assertFalse(new File(folder.getLocalPath(), "lesson.html").exists());
+    }
+
+    private SyncFolder newFolder(SyncFolder.FetchPolicy policy) throws Exception {
+        return new SyncFolder("Videos", folderId, tmp.newFolder("videos").getAbsolutePath(),
+                SyncFolder.PRIORITY_NORMAL, policy);
+    }
+
+    private File open(SyncFolder folder, String name) throws Exception {
+        return TestSync.open(service, folder, name);
+    }
+}
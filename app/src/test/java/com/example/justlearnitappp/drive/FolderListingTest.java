@@ -0,0 +1,84 @@
+package com.example.justlearnitappp.drive;
+
+import com.google.api.services.drive.model.File;
+import com.google.api.services.drive.model.FileList;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class FolderListingTest {
+    private static final int FILE_COUNT = 25;
+    private static final int PAGE_SIZE = 10;
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Test
+    public void fetchesPagesOnlyAsTheyAreConsumed() throws Exception {
+        List<String> requested = new ArrayList<>();
+        FolderListing listing = new FolderListing(pageToken -> {
+            requested.add(String.valueOf(pageToken));
+            int offset = pageToken != null ? Integer.parseInt(pageToken) : 0;
+            List<File> files = new ArrayList<>();
+            for (int i = offset; i < Math.min(FILE_COUNT, offset + PAGE_SIZE); i++) {
+                files.add(new File().setId("file-" + i).setName(i + ".html"));
+            }
+            FileList page = new FileList().setFiles(files);
+            if (offset + PAGE_SIZE < FILE_COUNT) {
+                page.setNextPageToken(String.valueOf(offset + PAGE_SIZE));
+            }
+            return page;
+        });
+
+        for (int i = 0; i < PAGE_SIZE; i++) {
+            assertEquals("file-" + i, listing.next().getId());
+        }
+        assertTrue(listing.isAtPageEnd());
+        assertEquals(Collections.singletonList("null"), requested);
+
+        int count = PAGE_SIZE;
+        while (listing.hasNext()) {
+            listing.next();
+            count++;
+        }
+        assertEquals(FILE_COUNT, count);
+        assertEquals(3, listing.getPageCount());
+        assertFalse(listing.hasNext());
+        assertEquals(3, requested.size());
+    }
+
+    @Test
+    public void syncsEveryPageOfALargeFolder() throws Exception {
+        FakeDrive drive = new FakeDrive(20);
+        String folderId = drive.addFolder("Lessons", "root");
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < FILE_COUNT; i++) {
+            ids.add(drive.addFile("lesson" + i + ".html", folderId, ("lesson " + i).getBytes()));
+        }
+        java.io.File localDir = tmp.newFolder("lessons");
+        SyncFolder folder = new SyncFolder("Lessons", folderId, localDir.getAbsolutePath());
+        DriveService service = new DriveService(drive.newClient(), tmp.newFolder("state"));
+        service.setMinResyncInterval(0);
+        service.setIncrementalSyncEnabled(false);
+        service.setListPageSize(PAGE_SIZE);
+
+        TestSync.sync(service, folder);
+        assertEquals(3, drive.getRequestCount("list"));
+        assertEquals(FILE_COUNT, localDir.list().length);
+
+        // A file on the last page is still seen, one gone from Drive is removed
+        drive.deleteFile(ids.get(0));
+        TestSync.sync(service, folder);
+        assertEquals(FILE_COUNT - 1, localDir.list().length);
+        assertTrue(new java.io.File(localDir, "lesson" + (FILE_COUNT - 1) + ".html").exists());
+    }
+}
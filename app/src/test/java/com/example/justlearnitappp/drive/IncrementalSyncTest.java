@@ -0,0 +1,193 @@
+package com.example.justlearnitappp.drive;
+
+import com.google.api.client.http.LowLevelHttpRequest;
+import com.google.api.client.http.LowLevelHttpResponse;
+import com.google.api.client.json.gson.GsonFactory;
+import com.google.api.client.testing.http.MockHttpTransport;
+import com.google.api.client.testing.http.MockLowLevelHttpRequest;
+import com.google.api.client.testing.http.MockLowLevelHttpResponse;
+import com.google.api.services.drive.Drive;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class IncrementalSyncTest {
+    private static final String FOLDER_ID = "lessons-folder";
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private File stateDir;
+    private File localDir;
+    private final List<String> requests = new ArrayList<>();
+    // Routes run on sync threads, where a failed assertion would not reach the test
+    private final List<String> unexpectedRequests = Collections.synchronizedList(new ArrayList<String>());
+
+    @Before
+    public void setUp() throws Exception {
+        stateDir = tmp.newFolder("state");
+        localDir = tmp.newFolder("lessons");
+    }
+
+    @Test
+    public void unchangedCatalogCostsOneRoundTrip() throws Exception {
+        saveToken("42");
+        DriveService service = newService(new Route() {
+            @Override
+            public MockLowLevelHttpResponse respond(String method, String url) {
+                return json("{\"changes\": [], \"newStartPageToken\": \"42\"}");
+            }
+        });
+
+        TestSync.Recorder callback = new TestSync.Recorder();
+        service.syncFolders(Collections.singletonList(folder()), callback).await(10, TimeUnit.SECONDS);
+
+        assertEquals(1, requests.size());
+        assertTrue(requests.get(0).contains("/drive/v3/changes"));
+        assertEquals("Sync completed successfully", callback.getSuccess());
+    }
+
+    @Test
+    public void changedFileIsDownloadedAndTokenAdvanced() throws Exception {
+        saveToken("42");
+        DriveService service = newService(new Route() {
+            @Override
+            public MockLowLevelHttpResponse respond(String method, String url) {
+                if (url.contains("/drive/v3/changes")) {
+                    return json("{\"changes\": [{\"fileId\": \"f1\", \"removed\": false, \"file\": "
+                            + "{\"id\": \"f1\", \"name\": \"lesson1.txt\", \"size\": \"11\", \"modifiedTime\": \"2030-01-01T00:00:00.000Z\", "
+                            + "\"parents\": [\"" + FOLDER_ID + "\"]}}, "
+                            + "{\"fileId\": \"f2\", \"removed\": false, \"file\": "
+                            + "{\"id\": \"f2\", \"name\": \"other.txt\", \"size\": \"5\", \"modifiedTime\": \"2030-01-01T00:00:00.000Z\", "
+                            + "\"parents\": [\"some-other-folder\"]}}], "
+                            + "\"newStartPageToken\": \"43\"}");
+                }
+                if (url.contains("alt=media")) {
+                    return new MockLowLevelHttpResponse().setContent("lesson body");
+                }
+                return json("{\"id\": \"f1\", \"name\": \"lesson1.txt\"}");
+            }
+        });
+
+        TestSync.Recorder callback = new TestSync.Recorder();
+        service.syncFolders(Collections.singletonList(folder()), callback).await(10, TimeUnit.SECONDS);
+
+        assertEquals("Sync completed successfully", callback.getSuccess());
+        File lesson = new File(localDir, "lesson1.txt");
+        assertEquals("lesson body", new String(Files.readAllBytes(lesson.toPath()), StandardCharsets.UTF_8));
+        assertTrue(!new File(localDir, "other.txt").exists());
+        assertEquals("43", loadTokens().getProperty(FOLDER_ID));
+    }
+
+    @Test
+    public void firstSyncBatchesMetadataAndSavesStartToken() throws Exception {
+        DriveService service = newService(new Route() {
+            @Override
+            public MockLowLevelHttpResponse respond(String method, String url) {
+                if (url.contains("/batch/drive/v3")) {
+                    return batch("{\"startPageToken\": \"100\"}",
+                            "{\"id\": \"" + FOLDER_ID + "\", \"mimeType\": \"application/vnd.google-apps.folder\"}");
+                }
+                if (url.contains("/drive/v3/files?")) {
+                    return json("{\"files\": [{\"id\": \"f1\", \"name\": \"lesson1.txt\", \"size\": \"11\", "
+                            + "\"modifiedTime\": \"2030-01-01T00:00:00.000Z\"}]}");
+                }
+                if (url.contains("alt=media")) {
+                    return new MockLowLevelHttpResponse().setContent("lesson body");
+                }
+                unexpectedRequests.add(method + " " + url);
+                return new MockLowLevelHttpResponse().setStatusCode(404);
+            }
+        });
+
+        TestSync.Recorder callback = new TestSync.Recorder();
+        service.syncFolders(Collections.singletonList(folder()), callback).await(10, TimeUnit.SECONDS);
+
+        assertEquals(Collections.<String>emptyList(), unexpectedRequests);
+        assertEquals("Sync completed successfully", callback.getSuccess());
+        assertEquals("100", loadTokens().getProperty(FOLDER_ID));
+        // One batch for the folder check and token, one listing, one media download
+        assertEquals(3, requests.size());
+    }
+
+    private SyncFolder folder() {
+        return new SyncFolder("Lessons", FOLDER_ID, localDir.getAbsolutePath());
+    }
+
+    private DriveService newService(Route route) {
+        MockHttpTransport transport = new MockHttpTransport() {
+            @Override
+            public LowLevelHttpRequest buildRequest(String method, String url) {
+                synchronized (requests) {
+                    requests.add(method + " " + url);
+                }
+                return new MockLowLevelHttpRequest(url) {
+                    @Override
+                    public LowLevelHttpResponse execute() {
+                        return route.respond(method, url);
+                    }
+                };
+            }
+        };
+        Drive drive = new Drive.Builder(transport, GsonFactory.getDefaultInstance(), null)
+                .setApplicationName("JustLearnItTest")
+                .build();
+        return new DriveService(drive, stateDir);
+    }
+
+    private void saveToken(String token) throws Exception {
+        Properties tokens = new Properties();
+        tokens.setProperty(FOLDER_ID, token);
+        try (java.io.OutputStream out = new java.io.FileOutputStream(new File(stateDir, "drive_change_tokens.properties"))) {
+            tokens.store(out, null);
+        }
+    }
+
+    private Properties loadTokens() throws Exception {
+        Properties tokens = new Properties();
+        try (java.io.InputStream in = new java.io.FileInputStream(new File(stateDir, "drive_change_tokens.properties"))) {
+            tokens.load(in);
+        }
+        return tokens;
+    }
+
+    private static MockLowLevelHttpResponse json(String body) {
+        return new MockLowLevelHttpResponse()
+                .setContentType("application/json; charset=UTF-8")
+                .setContent(body);
+    }
+
+    private static MockLowLevelHttpResponse batch(String... jsonBodies) {
+        StringBuilder body = new StringBuilder();
+        for (int i = 0; i < jsonBodies.length; i++) {
+            body.append("--batch_boundary\r\n")
+                    .append("Content-Type: application/http\r\n")
+                    .append("Content-ID: <response-").append(i + 1).append(">\r\n\r\n")
+                    .append("HTTP/1.1 200 OK\r\n")
+                    .append("Content-Type: application/json; charset=UTF-8\r\n\r\n")
+                    .append(jsonBodies[i]).append("\r\n");
+        }
+        body.append("--batch_boundary--\r\n");
+        return new MockLowLevelHttpResponse()
+                .setContentType("multipart/mixed; boundary=batch_boundary")
+                .setContent(body.toString());
+    }
+
+    private interface Route {
+        MockLowLevelHttpResponse respond(String method, String url);
+    }
+}
@@ -0,0 +1,108 @@
+package com.example.justlearnitappp.drive;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public class IntegrityTest {
+    private static final int CHUNK_SIZE = 64 * 1024;
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private FakeDrive drive;
+    private DriveService service;
+    private SyncFolder folder;
+    // Name -> content, one file for each download path
+    private final Map<String, byte[]> contents = new LinkedHashMap<>();
+    private final Map<String, String> ids = new LinkedHashMap<>();
+
+    @Before
+    public void setUp() throws Exception {
+        drive = new FakeDrive(17);
+        String folderId = drive.addFolder("Lessons", "root");
+        Random random = new Random(17);
+        addFile(folderId, "simple.html", 4 * 1024, random);
+        addFile(folderId, "resumable.pdf", 5 * CHUNK_SIZE, random);
+        addFile(folderId, "segmented.mp4", 16 * CHUNK_SIZE, random);
+        folder = new SyncFolder("Lessons", folderId, tmp.newFolder("lessons").getAbsolutePath());
+
+        service = new DriveService(drive.newClient(), tmp.newFolder("state"));
+        service.setMinResyncInterval(0);
+        service.setResumableDownloadThreshold(2 * CHUNK_SIZE);
+        service.setResumableChunkSize(CHUNK_SIZE);
+        service.setSegmentedDownload(4, 8 * CHUNK_SIZE);
+    }
+
+    @Test
+    public void corruptDownloadsAreNeverCommitted() throws Exception {
+        for (String id : ids.values()) {
+            drive.setMediaCorrupt(id, true);
+        }
+        assertNotNull(TestSync.run(service, folder));
+
+        File dir = new File(folder.getLocalPath());
+        assertEquals(0, dir.list().length);
+        assertEquals(contents.size(), service.getMetrics().snapshot().getCounter(SyncMetrics.ERRORS_CHECKSUM));
+
+        for (String id : ids.values()) {
+            drive.setMediaCorrupt(id, false);
+        }
+        assertNull(TestSync.run(service, folder));
+        assertContents();
+    }
+
+    @Test
+    public void scanRepairsDamagedFilesOnTheNextSync() throws Exception {
+        // The repair sync follows straight after the scan, well within this interval
+        service.setMinResyncInterval(60 * 60 * 1000L);
+        assertNull(TestSync.run(service, folder));
+        try (RandomAccessFile truncated = new RandomAccessFile(new File(folder.getLocalPath(), "resumable.pdf"), "rw")) {
+            truncated.setLength(CHUNK_SIZE);
+        }
+        try (RandomAccessFile flipped = new RandomAccessFile(new File(folder.getLocalPath(), "simple.html"), "rw")) {
+            flipped.seek(100);
+            flipped.write(~contents.get("simple.html")[100]);
+        }
+
+        assertEquals(2, service.verifyLocalFiles(Collections.singletonList(folder)));
+        assertFalse(new File(folder.getLocalPath(), "simple.html").exists());
+
+        drive.resetCounters();
+        assertNull(TestSync.run(service, folder));
+        assertEquals(contents.get("simple.html").length + contents.get("resumable.pdf").length,
+                drive.getBytesServed());
+        assertContents();
+        assertEquals(0, service.verifyLocalFiles(Collections.singletonList(folder)));
+    }
+
+    private void addFile(String folderId, String name, int size, Random random) {
+        byte[] content = new byte[size];
+        random.nextBytes(content);
+        contents.put(name, content);
+        ids.put(name, drive.addFile(name, folderId, content));
+    }
+
+    private void assertContents() throws Exception {
+        for (Map.Entry<String, byte[]> file : contents.entrySet()) {
+            assertArrayEquals(file.getValue(),
+                    Files.readAllBytes(new File(folder.getLocalPath(), file.getKey()).toPath()));
+        }
+        assertEquals(contents.size(), new File(folder.getLocalPath()).list().length);
+    }
+}
@@ -0,0 +1,71 @@
+package com.example.justlearnitappp.drive;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class JoinedSyncTest {
+    private static final byte[] LESSON = "lesson".getBytes();
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private FakeDrive drive;
+    private DriveService service;
+    private SyncFolder folder;
+
+    @Before
+    public void setUp() throws Exception {
+        drive = new FakeDrive(31);
+        String folderId = drive.addFolder("Lessons", "root");
+        drive.addFile("lesson.html", folderId, LESSON);
+        drive.addFile("quiz.html", folderId, "quiz".getBytes());
+        folder = new SyncFolder("Lessons", folderId, tmp.newFolder("lessons").getAbsolutePath());
+        service = new DriveService(drive.newClient(), tmp.newFolder("state"));
+    }
+
+    @Test
+    public void secondSyncOfAFolderJoinsTheRunInFlight() throws Exception {
+        service.setMinResyncInterval(0);
+        // Keeps the first run busy while the second asks for the same folder
+        drive.setLatencyMillis(100);
+        TestSync.Recorder first = new TestSync.Recorder();
+        TestSync.Recorder second = new TestSync.Recorder();
+        SyncRun firstRun = service.syncFolders(Collections.singletonList(folder), first);
+        SyncRun secondRun = service.syncFolders(Collections.singletonList(folder), second);
+        assertFalse(firstRun.isDone());
+
+        secondRun.await(30, TimeUnit.SECONDS);
+        firstRun.await(30, TimeUnit.SECONDS);
+        first.assertNoErrors();
+        second.assertNoErrors();
+        assertEquals(1, drive.getRequestCount("list"));
+        assertEquals(2, drive.getRequestCount("media"));
+        assertArrayEquals(LESSON, Files.readAllBytes(new File(folder.getLocalPath(), "lesson.html").toPath()));
+    }
+
+    @Test
+    public void skipsFoldersSyncedWithinTheMinimumInterval() throws Exception {
+        service.setMinResyncInterval(1000);
+        TestSync.sync(service, folder);
+
+        drive.resetCounters();
+        TestSync.sync(service, folder);
+        assertEquals(0, drive.getRequestCount());
+
+        Thread.sleep(1100);
+        TestSync.sync(service, folder);
+        assertTrue(drive.getRequestCount() > 0);
+    }
+}
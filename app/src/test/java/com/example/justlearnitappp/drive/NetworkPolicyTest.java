@@ -0,0 +1,158 @@
+package com.example.justlearnitappp.drive;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class NetworkPolicyTest {
+    private static final byte[] LESSON = "<h1>Lesson</h1>".getBytes();
+    private static final byte[] VIDEO = "video bytes".getBytes();
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private FakeConnectivity network;
+    private SyncFolder lessons;
+    private SyncFolder videos;
+    private SyncFolder slides;
+
+    @Before
+    public void setUp() throws Exception {
+        network = new FakeConnectivity(NetworkClass.METERED);
+        lessons = new SyncFolder("Lessons", "lessons", tmp.newFolder("lessons").getAbsolutePath());
+        videos = newUnmeteredFolder("Videos", "videos");
+        slides = newUnmeteredFolder("Slides", "slides");
+    }
+
+    @Test
+    public void policyFollowsNetworkClass() {
+        NetworkGate gate = new NetworkGate(network, (folders, callback) -> { });
+        assertTrue(gate.allowsDownloads(lessons));
+        assertFalse(gate.allowsDownloads(videos));
+
+        network.set(NetworkClass.UNMETERED);
+        assertTrue(gate.allowsDownloads(videos));
+        network.set(NetworkClass.NONE);
+        assertFalse(gate.allowsDownloads(videos));
+        assertTrue(gate.allowsDownloads(lessons));
+    }
+
+    @Test
+    public void heldFoldersGoOutTogetherOnceAllowed() {
+        List<List<SyncFolder>> bursts = new ArrayList<>();
+        NetworkGate gate = new NetworkGate(network, (folders, callback) -> bursts.add(folders));
+        DriveService.SyncCallback callback = new TestSync.Recorder();
+        gate.hold(videos, callback);
+        gate.hold(slides, callback);
+        gate.hold(videos, callback);
+        assertEquals(2, gate.getHeldCount());
+
+        // Still metered: nothing goes out, however often the network reports
+        network.set(NetworkClass.METERED);
+        network.set(NetworkClass.NONE);
+        assertTrue(bursts.isEmpty());
+
+        network.set(NetworkClass.UNMETERED);
+        assertEquals(1, bursts.size());
+        assertEquals(Arrays.asList(videos, slides), bursts.get(0));
+        assertEquals(0, gate.getHeldCount());
+
+        network.set(NetworkClass.METERED);
+        network.set(NetworkClass.UNMETERED);
+        assertEquals(1, bursts.size());
+    }
+
+    @Test
+    public void syncDefersDownloadsUntilUnmetered() throws Exception {
+        FakeDrive drive = new FakeDrive(24);
+        String lessonsId = drive.addFolder("Lessons", "root");
+        drive.addFile("lesson.html", lessonsId, LESSON);
+        String videosId = drive.addFolder("Videos", "root");
+        drive.addFile("intro.mp4", videosId, VIDEO);
+        lessons = new SyncFolder("Lessons", lessonsId, lessons.getLocalPath());
+        videos = newUnmeteredFolder("Videos", videosId);
+
+        DriveService service = new DriveService(drive.newClient(), tmp.newFolder("state"));
+        service.setMinResyncInterval(0);
+        service.setConnectivitySource(network);
+        List<String> folderResults = new CopyOnWriteArrayList<>();
+        CountDownLatch runs = new CountDownLatch(2);
+        TestSync.Recorder callback = new TestSync.Recorder() {
+            @Override
+            public void onSuccess(String message) {
+                runs.countDown();
+            }
+
+            @Override
+            public void onFolderSynced(SyncFolder folder, boolean success) {
+                folderResults.add(folder.getName() + ":" + success);
+            }
+        };
+        service.syncFolders(Arrays.asList(lessons, videos), callback).await(30, TimeUnit.SECONDS);
+        callback.assertNoErrors();
+
+        assertArrayEquals(LESSON, Files.readAllBytes(new File(lessons.getLocalPath(), "lesson.html").toPath()));
+        File video = new File(videos.getLocalPath(), "intro.mp4");
+        assertFalse(video.exists());
+        assertEquals(1, drive.getRequestCount("media"));
+        assertEquals(1, service.getMetrics().snapshot().getCounter(SyncMetrics.FILES_DEFERRED + "[Videos]"));
+        assertTrue(folderResults.contains("Videos:false"));
+        assertEquals(1, service.getNetworkGate().getHeldCount());
+
+        drive.resetCounters();
+        network.set(NetworkClass.UNMETERED);
+        assertTrue(runs.await(30, TimeUnit.SECONDS));
+        assertArrayEquals(VIDEO, Files.readAllBytes(video.toPath()));
+        // Only the held folder is synced again
+        assertEquals(1, drive.getRequestCount("media"));
+        assertTrue(folderResults.contains("Videos:true"));
+        assertFalse(folderResults.contains("Lessons:false"));
+        callback.assertNoErrors();
+    }
+
+    private SyncFolder newUnmeteredFolder(String name, String folderId) throws Exception {
+        return new SyncFolder(name, folderId, tmp.newFolder().getAbsolutePath(), SyncFolder.PRIORITY_LOW,
+                SyncFolder.FetchPolicy.EAGER, SyncFolder.NetworkPolicy.UNMETERED_ONLY);
+    }
+
+    private static class FakeConnectivity implements ConnectivitySource {
+        private final List<Runnable> listeners = new CopyOnWriteArrayList<>();
+        private volatile NetworkClass current;
+
+        FakeConnectivity(NetworkClass current) {
+            this.current = current;
+        }
+
+        void set(NetworkClass network) {
+            current = network;
+            for (Runnable listener : listeners) {
+                listener.run();
+            }
+        }
+
+        @Override
+        public NetworkClass getNetworkClass() {
+            return current;
+        }
+
+        @Override
+        public void addListener(Runnable listener) {
+            listeners.add(listener);
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package com.example.justlearnitappp.drive;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class PrioritySchedulingTest {
+    private static final int CHUNK_SIZE = 64 * 1024;
+    private static final int VIDEO_SIZE = 1024 * 1024;
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private FakeDrive drive;
+    private DriveService service;
+    private SyncFolder lessons;
+    private SyncFolder videos;
+    private byte[] video;
+
+    @Before
+    public void setUp() throws Exception {
+        drive = new FakeDrive(5);
+        drive.setLatencyMillis(5);
+        drive.setBytesPerSecond(2 * 1024 * 1024);
+
+        String lessonsId = drive.addFolder("Lessons", "root");
+        Random random = new Random(5);
+        for (int i = 0; i < 40; i++) {
+            byte[] content = new byte[2048];
+            random.nextBytes(content);
+            drive.addFile("lesson" + i + ".html", lessonsId, content);
+        }
+        String videosId = drive.addFolder("Videos", "root");
+        video = new byte[VIDEO_SIZE];
+        random.nextBytes(video);
+        drive.addFile("intro.mp4", videosId, video);
+
+        lessons = new SyncFolder("Lessons", lessonsId, tmp.newFolder("lessons").getAbsolutePath(),
+                SyncFolder.PRIORITY_HIGH);
+        videos = new SyncFolder("Videos", videosId, tmp.newFolder("videos").getAbsolutePath(),
+                SyncFolder.PRIORITY_LOW);
+
+        service = new DriveService(drive.newClient(), tmp.newFolder("state"));
+        service.setResumableDownloadThreshold(CHUNK_SIZE);
+        service.setBackgroundDownloadThreshold(CHUNK_SIZE);
+        service.setResumableChunkSize(CHUNK_SIZE);
+    }
+
+    @Test
+    public void highPriorityFolderFinishesFirst() throws Exception {
+        FolderOrder order = new FolderOrder();
+        service.syncFolders(Arrays.asList(videos, lessons), order).await(30, TimeUnit.SECONDS);
+
+        order.assertNoErrors();
+        assertEquals(Arrays.asList("Lessons", "Videos"), order.folders);
+        assertArrayEquals(video, Files.readAllBytes(new File(videos.getLocalPath(), "intro.mp4").toPath()));
+    }
+
+    @Test
+    public void backgroundDownloadPausesForForegroundWork() throws Exception {
+        FolderOrder order = new FolderOrder();
+        SyncRun videoRun = service.syncFolders(Collections.singletonList(videos), order);
+        // Let the video get going in the background lane, then ask for the lessons
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (service.getMetrics().snapshot().getGauges().get(SyncMetrics.DOWNLOADS_IN_FLIGHT) == null
+                && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        SyncRun lessonRun = service.syncFolders(Collections.singletonList(lessons), order);
+
+        lessonRun.await(30, TimeUnit.SECONDS);
+        assertFalse(videoRun.isDone());
+        videoRun.await(30, TimeUnit.SECONDS);
+
+        order.assertNoErrors();
+        assertEquals(Arrays.asList("Lessons", "Videos"), order.folders);
+        assertTrue(service.getMetrics().snapshot().getCounter(SyncMetrics.DOWNLOADS_PREEMPTED) > 0);
+        assertArrayEquals(video, Files.readAllBytes(new File(videos.getLocalPath(), "intro.mp4").toPath()));
+    }
+
+    @Test
+    public void failingListenerDoesNotStallTheScheduler() throws Exception {
+        SyncScheduler scheduler = new SyncScheduler(1);
+        SyncRun failing = new SyncRun();
+        failing.addListener(() -> {
+            throw new IllegalStateException("Callback failed");
+        });
+        scheduler.submit(failing, "lessons", 0, 0, () -> { });
+        failing.await(5, TimeUnit.SECONDS);
+
+        CountDownLatch ran = new CountDownLatch(1);
+        scheduler.submit(new SyncRun(), "lessons", 0, 0, ran::countDown);
+        assertTrue(ran.await(5, TimeUnit.SECONDS));
+    }
+
+    private static class FolderOrder extends TestSync.Recorder {
+        final List<String> folders = Collections.synchronizedList(new ArrayList<String>());
+
+        @Override
+        public void onFolderSynced(SyncFolder folder, boolean success) {
+            if (!success) {
+                onError(folder.getName() + " failed");
+            }
+            folders.add(folder.getName());
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package com.example.justlearnitappp.drive;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class RecursiveSyncTest {
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private FakeDrive drive;
+    private DriveService service;
+    private SyncFolder folder;
+    private File localDir;
+    private String unitId;
+    private String week1Id;
+    private String quizId;
+
+    @Before
+    public void setUp() throws Exception {
+        drive = new FakeDrive(19);
+        String rootId = drive.addFolder("Course", "root");
+        drive.addFile("syllabus.html", rootId, "syllabus".getBytes());
+        unitId = drive.addFolder("Unit 1", rootId);
+        drive.addFile("overview.html", unitId, "overview".getBytes());
+        week1Id = drive.addFolder("Week 1", unitId);
+        drive.addFile("lesson.html", week1Id, "lesson".getBytes());
+        quizId = drive.addFile("quiz.pdf", week1Id, "quiz".getBytes());
+        drive.addFolder("Empty", rootId);
+
+        localDir = tmp.newFolder("course");
+        folder = new SyncFolder("Course", rootId, localDir.getAbsolutePath());
+        service = new DriveService(drive.newClient(), tmp.newFolder("state"));
+        service.setMinResyncInterval(0);
+        TestSync.sync(service, folder);
+    }
+
+    @Test
+    public void mirrorsNestedFolders() throws Exception {
+        assertContent("syllabus", "syllabus.html");
+        assertContent("overview", "Unit 1/overview.html");
+        assertContent("lesson", "Unit 1/Week 1/lesson.html");
+        assertContent("quiz", "Unit 1/Week 1/quiz.pdf");
+        assertTrue(new File(localDir, "Empty").isDirectory());
+        // One listing per folder in the tree
+        assertEquals(4, drive.getRequestCount("list"));
+
+        drive.resetCounters();
+        TestSync.sync(service, folder);
+        assertEquals(1, drive.getRequestCount());
+    }
+
+    @Test
+    public void appliesDeepChangesWithoutListing() throws Exception {
+        drive.updateFile(quizId, "quiz, v2".getBytes());
+        String newId = drive.addFolder("Week 2", unitId);
+        drive.addFile("lesson.html", newId, "lesson 2".getBytes());
+        drive.resetCounters();
+        TestSync.sync(service, folder);
+
+        assertContent("quiz, v2", "Unit 1/Week 1/quiz.pdf");
+        assertContent("lesson 2", "Unit 1/Week 2/lesson.html");
+        // Only the new folder is listed; the rest of the tree comes from the changes feed
+        assertEquals(1, drive.getRequestCount("list"));
+        assertEquals(2, drive.getRequestCount("media"));
+    }
+
+    @Test
+    public void followsRenamedMovedAndDeletedFolders() throws Exception {
+        drive.renameFile(week1Id, "Week One");
+        drive.resetCounters();
+        TestSync.sync(service, folder);
+        assertContent("lesson", "Unit 1/Week One/lesson.html");
+        assertFalse(new File(localDir, "Unit 1/Week 1").exists());
+        assertEquals(0, drive.getRequestCount("media"));
+
+        drive.moveFile(week1Id, folder.getFolderId());
+        TestSync.sync(service, folder);
+        assertContent("quiz", "Week One/quiz.pdf");
+        assertFalse(new File(localDir, "Unit 1/Week One").exists());
+        assertEquals(0, drive.getRequestCount("media"));
+
+        drive.deleteFile(week1Id);
+        TestSync.sync(service, folder);
+        assertFalse(new File(localDir, "Week One").exists());
+        assertEquals(2, service.getCatalog(folder).size());
+    }
+
+    @Test
+    public void leavesNestedSyncFoldersToTheirOwnPolicies() throws Exception {
+        File courseDir = tmp.newFolder("course-and-unit");
+        File unitDir = tmp.newFolder("unit");
+        SyncFolder course = new SyncFolder("Course", folder.getFolderId(), courseDir.getAbsolutePath());
+        SyncFolder unit = new SyncFolder("Unit 1", unitId, unitDir.getAbsolutePath(),
+                SyncFolder.PRIORITY_NORMAL, SyncFolder.FetchPolicy.METADATA_ONLY);
+        DriveService both = new DriveService(drive.newClient(), tmp.newFolder("state-both"));
+        both.setMinResyncInterval(0);
+        drive.resetCounters();
+        TestSync.sync(both, Arrays.asList(course, unit));
+
+        assertArrayEquals("syllabus".getBytes(), Files.readAllBytes(new File(courseDir, "syllabus.html").toPath()));
+        assertFalse(new File(courseDir, "Unit 1").exists());
+        // The unit is catalogued under its own folder, and its files are only fetched when opened
+        assertEquals(3, both.getCatalog(unit).size());
+        assertFalse(new File(unitDir, "overview.html").exists());
+        assertEquals(1, drive.getRequestCount("media"));
+
+        drive.updateFile(quizId, "quiz, v2".getBytes());
+        drive.resetCounters();
+        TestSync.sync(both, Arrays.asList(course, unit));
+        assertFalse(new File(courseDir, "Unit 1").exists());
+        assertEquals(0, drive.getRequestCount("media"));
+    }
+
+    @Test
+    public void keepsNamesThatLeaveTheFolderOutOfIt() throws Exception {
+        String otherId = drive.addFolder("Other", "root");
+        drive.addFile("notes.html", otherId, "notes".getBytes());
+        drive.addFile("../listed.html", otherId, "escaped".getBytes());
+        drive.addFile("..", otherId, "escaped".getBytes());
+        String upId = drive.addFolder("..", otherId);
+        drive.addFile("nested.html", upId, "escaped".getBytes());
+        File otherDir = tmp.newFolder("other");
+        SyncFolder other = new SyncFolder("Other", otherId, otherDir.getAbsolutePath());
+        TestSync.sync(service, other);
+
+        assertArrayEquals("notes".getBytes(), Files.readAllBytes(new File(otherDir, "notes.html").toPath()));
+        assertEquals(1, service.getCatalog(other).size());
+        assertFalse(new File(tmp.getRoot(), "listed.html").exists());
+        assertFalse(new File(tmp.getRoot(), "nested.html").exists());
+
+        // Through the changes feed: a new file, and a synced one renamed out of the tree
+        drive.addFile("../../changed.html", unitId, "escaped".getBytes());
+        drive.renameFile(quizId, "../../../quiz.pdf");
+        TestSync.sync(service, folder);
+        assertFalse(new File(tmp.getRoot(), "changed.html").exists());
+        assertFalse(new File(tmp.getRoot(), "quiz.pdf").exists());
+        assertFalse(new File(localDir, "Unit 1/Week 1/quiz.pdf").exists());
+        assertContent("lesson", "Unit 1/Week 1/lesson.html");
+    }
+
+    @Test
+    public void removingAFolderLeavesSymlinkTargetsAlone() throws Exception {
+        File outside = tmp.newFolder("outside");
+        File kept = new File(outside, "kept.txt");
+        Files.write(kept.toPath(), "kept".getBytes());
+        Files.createSymbolicLink(new File(localDir, "Unit 1/link").toPath(), outside.toPath());
+
+        drive.deleteFile(unitId);
+        TestSync.sync(service, folder);
+
+        assertFalse(new File(localDir, "Unit 1").exists());
+        assertTrue(kept.isFile());
+    }
+
+    private void assertContent(String expected, String path) throws Exception {
+        assertArrayEquals(expected.getBytes(), Files.readAllBytes(new File(localDir, path).toPath()));
+    }
+}
@@ -0,0 +1,106 @@
+package com.example.justlearnitappp.drive;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+public class ResumableDownloadTest {
+    private static final int CHUNK_SIZE = 64 * 1024;
+    private static final int CHUNKS = 8;
+    private static final int KEPT_CHUNKS = 3;
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private FakeDrive drive;
+    private DriveService service;
+    private SyncFolder folder;
+    private File localFile;
+    private String fileId;
+    private byte[] content;
+
+    @Before
+    public void setUp() throws Exception {
+        drive = new FakeDrive(23);
+        String folderId = drive.addFolder("Lectures", "root");
+        content = randomBytes(CHUNKS * CHUNK_SIZE, 23);
+        fileId = drive.addFile("lecture.pdf", folderId, content);
+        folder = new SyncFolder("Lectures", folderId, tmp.newFolder("lectures").getAbsolutePath());
+        localFile = new File(folder.getLocalPath(), "lecture.pdf");
+
+        service = new DriveService(drive.newClient(), tmp.newFolder("state"));
+        service.setMinResyncInterval(0);
+        service.setRetryBackoff(1, 5);
+        service.setResumableDownloadThreshold(2 * CHUNK_SIZE);
+        service.setResumableChunkSize(CHUNK_SIZE);
+
+        // Every attempt breaks off after the same chunks, so the sync gives up on the file
+        drive.setMediaBrokenFrom(fileId, KEPT_CHUNKS * CHUNK_SIZE);
+        assertNotNull(TestSync.run(service, folder));
+        assertEquals(KEPT_CHUNKS * CHUNK_SIZE, PartFile.of(localFile).length());
+        assertTrue(stateFile().isFile());
+        assertFalse(localFile.exists());
+        drive.setMediaBroken(fileId, false);
+        drive.resetCounters();
+    }
+
+    @Test
+    public void resumesFromTheCheckpointOnTheNextSync() throws Exception {
+        TestSync.sync(service, folder);
+
+        assertArrayEquals(content, Files.readAllBytes(localFile.toPath()));
+        List<String> ranges = drive.getMediaRanges();
+        assertTrue(ranges.get(0), ranges.get(0).startsWith("bytes=" + KEPT_CHUNKS * CHUNK_SIZE + "-"));
+        assertEquals((CHUNKS - KEPT_CHUNKS) * CHUNK_SIZE, drive.getBytesServed());
+        assertFalse(PartFile.of(localFile).exists());
+        assertFalse(stateFile().exists());
+    }
+
+    @Test
+    public void restartsWhenTheContentChanged() throws Exception {
+        byte[] updated = randomBytes(CHUNKS * CHUNK_SIZE, 29);
+        drive.updateFile(fileId, updated);
+        TestSync.sync(service, folder);
+
+        assertArrayEquals(updated, Files.readAllBytes(localFile.toPath()));
+        assertRestarted(updated.length);
+    }
+
+    @Test
+    public void restartsWhenTheFileWasModified() throws Exception {
+        // Uploaded again with the same bytes: same md5, later modified time
+        drive.updateFile(fileId, content.clone());
+        TestSync.sync(service, folder);
+
+        assertArrayEquals(content, Files.readAllBytes(localFile.toPath()));
+        assertRestarted(content.length);
+    }
+
+    private void assertRestarted(int length) {
+        List<String> ranges = drive.getMediaRanges();
+        assertTrue(ranges.get(0), ranges.get(0).startsWith("bytes=0-"));
+        assertEquals(length, drive.getBytesServed());
+    }
+
+    private File stateFile() {
+        return new File(localFile.getPath() + ".part.state");
+    }
+
+    private static byte[] randomBytes(int size, long seed) {
+        byte[] bytes = new byte[size];
+        new Random(seed).nextBytes(bytes);
+        return bytes;
+    }
+}
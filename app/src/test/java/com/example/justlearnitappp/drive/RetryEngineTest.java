@@ -0,0 +1,227 @@
+package com.example.justlearnitappp.drive;
+
+import com.example.justlearnitappp.concurrent.CancellationToken;
+import com.google.api.client.googleapis.json.GoogleJsonError;
+import com.google.api.client.googleapis.json.GoogleJsonResponseException;
+import com.google.api.client.http.HttpHeaders;
+import com.google.api.client.http.HttpResponseException;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.net.ssl.SSLException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class RetryEngineTest {
+    private SyncScheduler scheduler;
+    private SyncMetrics metrics;
+    private CircuitBreaker breaker;
+    private RetryEngine retry;
+
+    @Before
+    public void setUp() {
+        scheduler = new SyncScheduler(8);
+        metrics = new SyncMetrics();
+        breaker = new CircuitBreaker(3, 50);
+        retry = new RetryEngine(scheduler, metrics, breaker);
+        retry.setBackoff(1, 5);
+    }
+
+    @Test
+    public void sortsErrorsIntoRetryableAndFatal() {
+        assertEquals(RetryEngine.ErrorKind.RETRYABLE, RetryEngine.classify(http(500, null)));
+        assertEquals(RetryEngine.ErrorKind.RETRYABLE, RetryEngine.classify(http(503, null)));
+        assertEquals(RetryEngine.ErrorKind.RETRYABLE, RetryEngine.classify(new SocketTimeoutException()));
+        assertEquals(RetryEngine.ErrorKind.RETRYABLE, RetryEngine.classify(new SocketException("Connection reset")));
+        assertEquals(RetryEngine.ErrorKind.RETRYABLE, RetryEngine.classify(new UnknownHostException("www.googleapis.com")));
+        assertEquals(RetryEngine.ErrorKind.RETRYABLE, RetryEngine.classify(new SSLException("Handshake failed")));
+        assertEquals(RetryEngine.ErrorKind.RATE_LIMITED, RetryEngine.classify(http(429, null)));
+        assertEquals(RetryEngine.ErrorKind.RATE_LIMITED, RetryEngine.classify(http(403, "userRateLimitExceeded")));
+        assertEquals(RetryEngine.ErrorKind.FATAL, RetryEngine.classify(http(403, "insufficientPermissions")));
+        assertEquals(RetryEngine.ErrorKind.FATAL, RetryEngine.classify(http(404, "notFound")));
+        assertEquals(RetryEngine.ErrorKind.FATAL, RetryEngine.classify(new ChecksumMismatchException("md5")));
+        assertEquals(RetryEngine.ErrorKind.FATAL, RetryEngine.classify(new DownloadPreemptedException("paused")));
+        assertEquals(RetryEngine.ErrorKind.FATAL, RetryEngine.classify(new IOException("No space left on device")));
+    }
+
+    @Test
+    public void retriesTransientErrorsOnly() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        assertEquals("ok", retry.execute(() -> {
+            if (calls.incrementAndGet() < 3) {
+                throw http(500, "backendError");
+            }
+            return "ok";
+        }));
+        assertEquals(3, calls.get());
+        assertEquals(2, metrics.snapshot().getCounter(SyncMetrics.RETRIES));
+
+        calls.set(0);
+        IOException notFound = http(404, "notFound");
+        try {
+            retry.execute(() -> {
+                calls.incrementAndGet();
+                throw notFound;
+            });
+            fail();
+        } catch (IOException e) {
+            assertSame(notFound, e);
+        }
+        assertEquals(1, calls.get());
+    }
+
+    @Test
+    public void rateLimitsLowerConcurrencyUntilRequestsGoThrough() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        retry.execute(() -> {
+            if (calls.incrementAndGet() == 1) {
+                throw http(403, "userRateLimitExceeded");
+            }
+            return null;
+        });
+        assertEquals(4, scheduler.getConcurrencyLimit());
+
+        for (int i = 0; i < 200 && scheduler.getConcurrencyLimit() < 8; i++) {
+            retry.execute(() -> null);
+        }
+        assertEquals(8, scheduler.getConcurrencyLimit());
+    }
+
+    @Test
+    public void openCircuitFailsFastUntilATrialSucceeds() throws Exception {
+        retry.setMaxAttempts(3);
+        AtomicInteger calls = new AtomicInteger();
+        try {
+            retry.execute(() -> {
+                calls.incrementAndGet();
+                throw http(503, "backendError");
+            });
+            fail();
+        } catch (IOException expected) {
+        }
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertEquals(1, metrics.snapshot().getCounter(SyncMetrics.CIRCUIT_OPENED));
+
+        try {
+            retry.execute(() -> calls.incrementAndGet());
+            fail();
+        } catch (CircuitOpenException expected) {
+        }
+        assertEquals(3, calls.get());
+
+        Thread.sleep(60);
+        assertEquals(4, (int) retry.execute(() -> calls.incrementAndGet()));
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    public void trialCallThatThrowsHandsTheTrialOn() throws Exception {
+        retry.setMaxAttempts(3);
+        try {
+            retry.execute(() -> {
+                throw http(503, "backendError");
+            });
+            fail();
+        } catch (IOException expected) {
+        }
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+
+        Thread.sleep(60);
+        try {
+            retry.execute(() -> {
+                throw new IllegalStateException("Bug in the call");
+            });
+            fail();
+        } catch (IllegalStateException expected) {
+        }
+        assertEquals("ok", retry.execute(() -> "ok"));
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    public void trialDownloadClosesTheCircuitOnceItsResponseIsIn() throws Exception {
+        retry.setMaxAttempts(3);
+        try {
+            retry.execute(() -> {
+                throw http(503, "backendError");
+            });
+            fail();
+        } catch (IOException expected) {
+        }
+        Thread.sleep(60);
+
+        CountDownLatch responded = new CountDownLatch(1);
+        CountDownLatch bodyRead = new CountDownLatch(1);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<String> trial = executor.submit(() -> retry.executeStreaming(onResponse -> {
+                onResponse.run();
+                responded.countDown();
+                // The body is still streaming in
+                try {
+                    bodyRead.await();
+                } catch (InterruptedException e) {
+                    throw new InterruptedIOException();
+                }
+                return "body";
+            }, new CancellationToken()));
+            assertTrue(responded.await(5, TimeUnit.SECONDS));
+
+            assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+            assertEquals("ok", retry.execute(() -> "ok"));
+
+            bodyRead.countDown();
+            assertEquals("body", trial.get(5, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void localErrorsFailAtOnceWithoutOpeningTheCircuit() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        for (int i = 0; i < 5; i++) {
+            try {
+                retry.execute(() -> {
+                    calls.incrementAndGet();
+                    throw new IOException("No space left on device");
+                });
+                fail();
+            } catch (IOException expected) {
+            }
+        }
+        assertEquals(5, calls.get());
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertEquals(0, metrics.snapshot().getCounter(SyncMetrics.RETRIES));
+    }
+
+    private static HttpResponseException http(int status, String reason) {
+        HttpResponseException.Builder builder = new HttpResponseException.Builder(status, null, new HttpHeaders());
+        if (reason == null) {
+            return builder.build();
+        }
+        GoogleJsonError.ErrorInfo error = new GoogleJsonError.ErrorInfo();
+        error.setReason(reason);
+        GoogleJsonError details = new GoogleJsonError();
+        details.setCode(status);
+        details.setErrors(Collections.singletonList(error));
+        return new GoogleJsonResponseException(builder, details);
+    }
+}
@@ -0,0 +1,128 @@
+package com.example.justlearnitappp.drive;
+
+import com.google.api.client.http.javanet.NetHttpTransport;
+import com.google.api.client.json.gson.GsonFactory;
+import com.google.api.services.drive.Drive;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.assertArrayEquals;
+
+/**
+ * Compares a single media stream with a segmented download against a local
+ * server that adds a fixed latency to every request and caps each connection's
+ * bandwidth, the way a long round trip caps a single TCP stream. Both copies
+ * must match byte for byte; the timings are only printed, since wall-clock
+ * comparisons are unreliable on a loaded build machine.
+ */
+public class SegmentedDownloadBenchmarkTest {
+    private static final int FILE_SIZE = 2 * 1024 * 1024;
+    private static final int LATENCY_MS = 100;
+    private static final int BYTES_PER_SECOND_PER_CONNECTION = 1024 * 1024;
+    private static final int SEGMENTS = 4;
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private HttpServer server;
+    private Drive drive;
+    private byte[] content;
+    private DriveFile file;
+
+    @Before
+    public void setUp() throws Exception {
+        content = new byte[FILE_SIZE];
+        new Random(42).nextBytes(content);
+        file = new DriveFile("video1", "lesson.mp4", "video/mp4", FILE_SIZE,
+                Checksums.toHex(Checksums.newMd5().digest(content)), 1, 0);
+
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/drive/v3/files/", this::serveMedia);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.start();
+
+        drive = new Drive.Builder(new NetHttpTransport(), GsonFactory.getDefaultInstance(), null)
+                .setRootUrl("http://127.0.0.1:" + server.getAddress().getPort() + "/")
+                .setApplicationName("JustLearnItBenchmark")
+                .build();
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    @Test
+    public void segmentedDownloadMatchesSingleStream() throws Exception {
+        File single = new File(tmp.getRoot(), "single.mp4");
+        long start = System.nanoTime();
+        try (OutputStream out = new FileOutputStream(single)) {
+            drive.files().get(file.getId()).executeMediaAndDownloadTo(out);
+        }
+        long singleMillis = (System.nanoTime() - start) / 1_000_000;
+
+        File segmented = new File(tmp.getRoot(), "segmented.mp4");
+        start = System.nanoTime();
+        new SegmentedDownloader(drive, SEGMENTS).download(file, segmented, DownloadProgress.NONE);
+        long segmentedMillis = (System.nanoTime() - start) / 1_000_000;
+
+        System.out.println("Single stream: " + singleMillis + " ms, " + SEGMENTS + " segments: "
+                + segmentedMillis + " ms (" + LATENCY_MS + " ms latency, "
+                + BYTES_PER_SECOND_PER_CONNECTION / 1024 + " KiB/s per connection)");
+
+        assertArrayEquals(content, Files.readAllBytes(single.toPath()));
+        assertArrayEquals(content, Files.readAllBytes(segmented.toPath()));
+    }
+
+    private void serveMedia(HttpExchange exchange) throws IOException {
+        try {
+            Thread.sleep(LATENCY_MS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        int first = 0;
+        int last = content.length - 1;
+        String range = exchange.getRequestHeaders().getFirst("Range");
+        if (range != null && range.startsWith("bytes=")) {
+            String[] bounds = range.substring("bytes=".length()).split("-", -1);
+            first = Integer.parseInt(bounds[0]);
+            if (!bounds[1].isEmpty()) {
+                last = Math.min(last, Integer.parseInt(bounds[1]));
+            }
+            exchange.getResponseHeaders().set("Content-Range", "bytes " + first + "-" + last + "/" + content.length);
+            exchange.sendResponseHeaders(206, last - first + 1);
+        } else {
+            exchange.sendResponseHeaders(200, content.length);
+        }
+
+        byte[] body = Arrays.copyOfRange(content, first, last + 1);
+        int slice = 16 * 1024;
+        long sliceNanos = 1_000_000_000L * slice / BYTES_PER_SECOND_PER_CONNECTION;
+        try (OutputStream out = exchange.getResponseBody()) {
+            for (int offset = 0; offset < body.length; offset += slice) {
+                out.write(body, offset, Math.min(slice, body.length - offset));
+                out.flush();
+                Thread.sleep(sliceNanos / 1_000_000, (int) (sliceNanos % 1_000_000));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
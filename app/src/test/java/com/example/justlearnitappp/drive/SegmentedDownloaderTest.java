@@ -0,0 +1,61 @@
+package com.example.justlearnitappp.drive;
+
+import com.example.justlearnitappp.concurrent.CancellationToken;
+import com.google.api.client.http.HttpResponseException;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.InterruptedIOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class SegmentedDownloaderTest {
+    private static final int SEGMENTS = 4;
+    private static final int SEGMENT_SIZE = 256 * 1024;
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Test
+    public void failingSegmentStopsTheOthers() throws Exception {
+        FakeDrive drive = new FakeDrive(37);
+        byte[] content = new byte[SEGMENTS * SEGMENT_SIZE];
+        new Random(37).nextBytes(content);
+        String fileId = drive.addFile("intro.mp4", drive.addFolder("Videos", "root"), content);
+        drive.setMediaBrokenFrom(fileId, 2 * SEGMENT_SIZE);
+        DriveFile file = new DriveFile(fileId, "intro.mp4", "video/mp4", content.length,
+                Checksums.toHex(Checksums.newMd5().digest(content)), 1, 0);
+        File target = new File(tmp.getRoot(), "intro.mp4");
+
+        // The ranges that do arrive hold their first write until they are cancelled
+        BandwidthLimiter.Lane stalled = (bytes, cancel) -> {
+            try {
+                if (!cancel.await(TimeUnit.SECONDS.toMillis(10))) {
+                    throw new InterruptedIOException("Never cancelled");
+                }
+            } catch (InterruptedException e) {
+                throw new InterruptedIOException();
+            }
+            cancel.throwIfCancelled();
+        };
+        long start = System.nanoTime();
+        try {
+            new SegmentedDownloader(drive.newClient(), SEGMENTS).download(file, target, DownloadProgress.NONE,
+                    SyncScheduler.Yield.NEVER, new CancellationToken(), stalled);
+            fail();
+        } catch (HttpResponseException e) {
+            assertEquals(500, e.getStatusCode());
+        }
+
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5));
+        assertFalse(target.exists());
+    }
+}
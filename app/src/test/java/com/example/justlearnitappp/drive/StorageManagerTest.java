@@ -0,0 +1,174 @@
+package com.example.justlearnitappp.drive;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class StorageManagerTest {
+    private static final int FILE_SIZE = 1000;
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private FakeDrive drive;
+    private DriveService service;
+    private StorageManager storage;
+    private SyncFolder lessons;
+    private SyncFolder videos;
+
+    @Before
+    public void setUp() throws Exception {
+        drive = new FakeDrive(11);
+        String lessonsId = drive.addFolder("Lessons", "root");
+        drive.addFile("lesson.html", lessonsId, content(0));
+        String videosId = drive.addFolder("Videos", "root");
+        // Distinct contents, as identical files would be linked instead of fetched
+        String[] names = {"a.mp4", "b.mp4", "c.mp4"};
+        for (int i = 0; i < names.length; i++) {
+            drive.addFile(names[i], videosId, content(i + 1));
+        }
+        lessons = new SyncFolder("Lessons", lessonsId, tmp.newFolder("lessons").getAbsolutePath());
+        videos = new SyncFolder("Videos", videosId, tmp.newFolder("videos").getAbsolutePath(),
+                SyncFolder.PRIORITY_LOW, SyncFolder.FetchPolicy.ON_DEMAND);
+
+        service = new DriveService(drive.newClient(), tmp.newFolder("state"));
+        service.setMinResyncInterval(0);
+        storage = service.getStorage();
+        TestSync.sync(service, Arrays.asList(lessons, videos));
+        open("a.mp4");
+        open("b.mp4");
+        open("c.mp4");
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsedFirst() throws Exception {
+        open("a.mp4");
+        storage.setBudgetBytes(3 * FILE_SIZE);
+        assertEquals(FILE_SIZE, storage.trim());
+
+        assertTrue(isLocal("a.mp4"));
+        assertFalse(isLocal("b.mp4"));
+        assertTrue(isLocal("c.mp4"));
+        StorageManager.Usage usage = storage.getUsage();
+        assertEquals(2L * FILE_SIZE, (long) usage.getFolderBytes().get("Videos"));
+        assertEquals(FILE_SIZE, (long) usage.getFolderBytes().get("Lessons"));
+
+        // Opening the evicted file fetches it again and makes room by evicting the next in line
+        drive.resetCounters();
+        open("b.mp4");
+        assertEquals(1, drive.getRequestCount("media"));
+        assertTrue(isLocal("b.mp4"));
+        assertFalse(isLocal("c.mp4"));
+
+        // Evicted files stay in the catalog and a sync does not bring them back
+        drive.resetCounters();
+        TestSync.sync(service, Arrays.asList(lessons, videos));
+        assertEquals(0, drive.getRequestCount("media"));
+        assertEquals(3, service.getCatalog(videos).size());
+    }
+
+    @Test
+    public void keepsPinnedAndInUseFiles() throws Exception {
+        assertTrue(storage.pin(videos, "a.mp4"));
+        assertTrue(storage.acquire(videos, "b.mp4"));
+        storage.setBudgetBytes(0);
+        storage.trim();
+
+        assertTrue(isLocal("a.mp4"));
+        assertTrue(isLocal("b.mp4"));
+        assertFalse(isLocal("c.mp4"));
+        // Eagerly synced folders are never evicted
+        assertTrue(new File(lessons.getLocalPath(), "lesson.html").exists());
+
+        storage.release(videos, "b.mp4");
+        storage.trim();
+        assertTrue(isLocal("a.mp4"));
+        assertFalse(isLocal("b.mp4"));
+        assertEquals(2L * FILE_SIZE, storage.getUsage().getTotalBytes());
+    }
+
+    @Test
+    public void linkedCopiesAreCountedOnceAndFreedWithTheLast() throws Exception {
+        service.getContentIndex().setLinker((existing, target) -> Files.createLink(target.toPath(), existing.toPath()));
+        storage.setFileKeys(file -> Files.readAttributes(file.toPath(), BasicFileAttributes.class).fileKey());
+        SyncFolder clips = openClipOfA();
+        assertEquals(4L * FILE_SIZE, storage.getUsage().getTotalBytes());
+
+        // a.mp4 goes first, but its bytes stay on disk as the clip
+        storage.setBudgetBytes(3 * FILE_SIZE);
+        assertEquals(FILE_SIZE, storage.trim());
+        assertFalse(isLocal("a.mp4"));
+        assertFalse(isLocal("b.mp4"));
+        assertTrue(isLocal("c.mp4"));
+        assertTrue(new File(clips.getLocalPath(), "intro.mp4").exists());
+        assertEquals(3L * FILE_SIZE, storage.getUsage().getTotalBytes());
+    }
+
+    @Test
+    public void separateCopiesOfTheSameContentCountInFull() throws Exception {
+        // Where links fail the content index copies, and each copy takes space
+        storage.setFileKeys(file -> Files.readAttributes(file.toPath(), BasicFileAttributes.class).fileKey());
+        SyncFolder clips = openClipOfA();
+        assertEquals(5L * FILE_SIZE, storage.getUsage().getTotalBytes());
+
+        storage.setBudgetBytes(3 * FILE_SIZE);
+        assertEquals(2L * FILE_SIZE, storage.trim());
+        assertFalse(isLocal("a.mp4"));
+        assertFalse(isLocal("b.mp4"));
+        assertTrue(isLocal("c.mp4"));
+        assertTrue(new File(clips.getLocalPath(), "intro.mp4").exists());
+        assertEquals(3L * FILE_SIZE, storage.getUsage().getTotalBytes());
+    }
+
+    /**
+     * Adds a folder holding a.mp4's content under another name and opens it, so
+     * it is placed from a.mp4 by the content index rather than downloaded.
+     */
+    private SyncFolder openClipOfA() throws Exception {
+        String clipsId = drive.addFolder("Clips", "root");
+        drive.addFile("intro.mp4", clipsId, content(1));
+        SyncFolder clips = new SyncFolder("Clips", clipsId, tmp.newFolder("clips").getAbsolutePath(),
+                SyncFolder.PRIORITY_LOW, SyncFolder.FetchPolicy.ON_DEMAND);
+        TestSync.sync(service, clips);
+        drive.resetCounters();
+        open(clips, "intro.mp4");
+        assertEquals(0, drive.getRequestCount("media"));
+        return clips;
+    }
+
+    private static byte[] content(int seed) {
+        byte[] bytes = new byte[FILE_SIZE];
+        Arrays.fill(bytes, (byte) seed);
+        return bytes;
+    }
+
+    private boolean isLocal(String name) {
+        boolean onDisk = new File(videos.getLocalPath(), name).exists();
+        SyncManifest.Entry entry = null;
+        for (SyncManifest.Entry candidate : service.getCatalog(videos)) {
+            if (candidate.getPath().equals(name)) {
+                entry = candidate;
+            }
+        }
+        assertEquals(onDisk, entry.isLocal());
+        return onDisk;
+    }
+
+    private void open(String name) throws Exception {
+        open(videos, name);
+    }
+
+    private void open(SyncFolder folder, String name) throws Exception {
+        TestSync.open(service, folder, name);
+    }
+}
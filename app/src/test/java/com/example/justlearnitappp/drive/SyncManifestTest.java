@@ -0,0 +1,135 @@
+package com.example.justlearnitappp.drive;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class SyncManifestTest {
+    private static final int MAGIC = 0x4A4C4D46;
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Test
+    public void roundTripsEntriesAndTheFolderTree() throws Exception {
+        File file = new File(tmp.getRoot(), "manifest");
+        SyncManifest manifest = SyncManifest.empty(file);
+        manifest.put(new SyncManifest.Entry("a", "Unit 1/a.html", "md5-a", 10, 3, 1000));
+        manifest.put(new SyncManifest.Entry("b", "b.mp4", "md5-b", 20, 1, 2000, false));
+        manifest.put(new SyncManifest.Entry("c", "c.html", null, 30, 2, 3000));
+        manifest.putDirectory("unit-1", "Unit 1");
+        manifest.setTreeRecorded(true);
+        manifest.save();
+        assertFalse(manifest.isDirty());
+
+        SyncManifest loaded = SyncManifest.load(file);
+        assertEquals(3, loaded.size());
+        assertEntry(loaded.get("a"), "Unit 1/a.html", "md5-a", 10, 3, 1000, true);
+        assertEntry(loaded.get("b"), "b.mp4", "md5-b", 20, 1, 2000, false);
+        assertEntry(loaded.get("c"), "c.html", null, 30, 2, 3000, true);
+        assertEquals(Collections.singletonMap("unit-1", "Unit 1"), loaded.directories());
+        assertTrue(loaded.isTreeRecorded());
+        assertFalse(loaded.isDirty());
+    }
+
+    @Test
+    public void readsOlderFormats() throws Exception {
+        File v1 = new File(tmp.getRoot(), "v1");
+        Files.write(v1.toPath(), legacy(1));
+        SyncManifest fromV1 = SyncManifest.load(v1);
+        assertEntry(fromV1.get("a"), "a.html", "md5-a", 10, 3, 1000, true);
+        assertFalse(fromV1.isTreeRecorded());
+
+        File v2 = new File(tmp.getRoot(), "v2");
+        Files.write(v2.toPath(), legacy(2));
+        SyncManifest fromV2 = SyncManifest.load(v2);
+        assertEntry(fromV2.get("a"), "a.html", "md5-a", 10, 3, 1000, false);
+        assertFalse(fromV2.isTreeRecorded());
+
+        // Saved again in the current format
+        fromV2.save();
+        SyncManifest upgraded = SyncManifest.load(v2);
+        assertEntry(upgraded.get("a"), "a.html", "md5-a", 10, 3, 1000, false);
+        assertTrue(upgraded.directories().isEmpty());
+        assertFalse(upgraded.isTreeRecorded());
+    }
+
+    @Test
+    public void rejectsCorruptAndTruncatedFiles() throws Exception {
+        File file = new File(tmp.getRoot(), "manifest");
+        SyncManifest manifest = SyncManifest.empty(file);
+        manifest.put(new SyncManifest.Entry("a", "a.html", "md5-a", 10, 3, 1000));
+        manifest.putDirectory("unit-1", "Unit 1");
+        manifest.save();
+        byte[] valid = Files.readAllBytes(file.toPath());
+
+        for (int length = 0; length < valid.length; length++) {
+            assertRejected(file, Arrays.copyOf(valid, length));
+        }
+        assertRejected(file, Arrays.copyOf(valid, valid.length + 1));
+
+        byte[] notAManifest = valid.clone();
+        notAManifest[0] ^= 0x20;
+        assertRejected(file, notAManifest);
+
+        byte[] futureVersion = valid.clone();
+        futureVersion[7] = 4;
+        assertRejected(file, futureVersion);
+
+        byte[] negativeCount = valid.clone();
+        negativeCount[8] = (byte) 0x80;
+        assertRejected(file, negativeCount);
+    }
+
+    private static void assertRejected(File file, byte[] content) throws Exception {
+        Files.write(file.toPath(), content);
+        try {
+            SyncManifest.load(file);
+            fail("Loaded a manifest of " + content.length + " bytes");
+        } catch (IOException expected) {
+        }
+    }
+
+    // One entry, without the local flag before version 2 and marked remote-only from it
+    private static byte[] legacy(int formatVersion) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(MAGIC);
+        out.writeInt(formatVersion);
+        out.writeInt(1);
+        out.writeUTF("a");
+        out.writeUTF("a.html");
+        out.writeUTF("md5-a");
+        out.writeLong(10);
+        out.writeLong(3);
+        out.writeLong(1000);
+        if (formatVersion >= 2) {
+            out.writeBoolean(false);
+        }
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    private static void assertEntry(SyncManifest.Entry entry, String path, String md5, long size, long version,
+                                    long modifiedTime, boolean local) {
+        assertEquals(path, entry.getPath());
+        assertEquals(md5, entry.getMd5Checksum());
+        assertEquals(size, entry.getSize());
+        assertEquals(version, entry.getVersion());
+        assertEquals(modifiedTime, entry.getModifiedTime());
+        assertEquals(local, entry.isLocal());
+    }
+}
@@ -0,0 +1,76 @@
+package com.example.justlearnitappp.drive;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SyncMetricsTest {
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Test
+    public void folderCountersRollUpIntoTotals() {
+        SyncMetrics metrics = new SyncMetrics();
+        metrics.add(SyncMetrics.BYTES_DOWNLOADED, "Lessons", 100);
+        metrics.add(SyncMetrics.BYTES_DOWNLOADED, "Videos", 900);
+
+        SyncMetrics.Snapshot snapshot = metrics.snapshot();
+        assertEquals(1000, snapshot.getCounter(SyncMetrics.BYTES_DOWNLOADED));
+        assertEquals(100, snapshot.getCounter(SyncMetrics.BYTES_DOWNLOADED + "[Lessons]"));
+        assertEquals(900, snapshot.getCounter(SyncMetrics.BYTES_DOWNLOADED + "[Videos]"));
+    }
+
+    @Test
+    public void histogramReportsBucketPercentiles() {
+        SyncMetrics metrics = new SyncMetrics();
+        for (int i = 0; i < 90; i++) {
+            metrics.record(SyncMetrics.LATENCY_DOWNLOAD, 15);
+        }
+        for (int i = 0; i < 10; i++) {
+            metrics.record(SyncMetrics.LATENCY_DOWNLOAD, 700);
+        }
+
+        SyncMetrics.HistogramSnapshot latency = metrics.snapshot().getHistograms().get(SyncMetrics.LATENCY_DOWNLOAD);
+        assertEquals(100, latency.getCount());
+        assertEquals(20, latency.getPercentileMillis(0.5));
+        assertEquals(20, latency.getPercentileMillis(0.9));
+        assertEquals(700, latency.getPercentileMillis(0.99));
+        assertEquals(700, latency.getMaxMillis());
+        assertEquals((90 * 15 + 10 * 700) / 100, latency.getMeanMillis());
+    }
+
+    @Test
+    public void syncRunIsRecorded() throws Exception {
+        FakeDrive drive = new FakeDrive(1);
+        String folderId = drive.addFolder("Lessons", "root");
+        drive.addFile("lesson1.txt", folderId, "lesson body".getBytes(StandardCharsets.UTF_8));
+        File localDir = tmp.newFolder("lessons");
+        DriveService service = new DriveService(drive.newClient(), tmp.newFolder("state"));
+
+        service.syncFolders(Collections.singletonList(
+                new SyncFolder("Lessons", folderId, localDir.getAbsolutePath())), new TestSync.Recorder()).await(10, TimeUnit.SECONDS);
+
+        SyncMetrics.Snapshot snapshot = service.getMetrics().snapshot();
+        assertEquals(1, snapshot.getCounter(SyncMetrics.SYNC_RUNS));
+        assertEquals(1, snapshot.getCounter(SyncMetrics.FILES_DOWNLOADED + "[Lessons]"));
+        assertEquals(11, snapshot.getCounter(SyncMetrics.BYTES_DOWNLOADED));
+        assertEquals(1, snapshot.getHistograms().get(SyncMetrics.LATENCY_LIST).getCount());
+        assertEquals(1, snapshot.getHistograms().get(SyncMetrics.LATENCY_METADATA).getCount());
+        assertEquals(0L, (long) snapshot.getGauges().get(SyncMetrics.DOWNLOADS_IN_FLIGHT));
+
+        File dump = new File(tmp.getRoot(), "metrics/sync_metrics.txt");
+        service.getMetrics().dumpTo(dump);
+        String text = new String(Files.readAllBytes(dump.toPath()), StandardCharsets.UTF_8);
+        assertTrue(text.contains("files.downloaded[Lessons] 1"));
+        assertTrue(text.contains("latency.download count=1"));
+    }
+}
@@ -0,0 +1,76 @@
+package com.example.justlearnitappp.drive;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SyncPlannerTest {
+    private SyncManifest manifest;
+
+    @Before
+    public void setUp() {
+        // Never saved
+        manifest = SyncManifest.empty(new File("planner-test.manifest"));
+        manifest.put(new SyncManifest.Entry("same", "same.html", "md5-same", 10, 1, 1000));
+        manifest.put(new SyncManifest.Entry("edited", "edited.html", "md5-old", 10, 1, 1000));
+        manifest.put(new SyncManifest.Entry("renamed", "old name.html", "md5-renamed", 10, 1, 1000));
+        manifest.put(new SyncManifest.Entry("evicted", "evicted.mp4", "md5-evicted", 10, 1, 1000, false));
+        manifest.put(new SyncManifest.Entry("deleted", "deleted.html", "md5-deleted", 10, 1, 1000));
+    }
+
+    @Test
+    public void sortsAPageIntoDownloadsRenamesAndUnchangedFiles() {
+        DriveFile same = file("same", "same.html", "md5-same", 2);
+        DriveFile edited = file("edited", "edited.html", "md5-new", 2);
+        DriveFile renamed = file("renamed", "new name.html", "md5-renamed", 2);
+        DriveFile evicted = file("evicted", "evicted.mp4", "md5-evicted", 1);
+        DriveFile added = file("added", "added.html", "md5-added", 1);
+        DriveFile doc = new DriveFile("doc", "Notes", "application/vnd.google-apps.document", -1, null, 1, 1000);
+
+        SyncPlanner.Plan plan = SyncPlanner.planPartial(manifest,
+                Arrays.asList(same, edited, renamed, evicted, added, doc));
+
+        assertEquals(Arrays.asList(edited, added), plan.getDownloads());
+        assertEquals(Collections.singletonList(renamed), plan.getRenames());
+        assertEquals(Collections.singletonList(evicted), plan.getRemoteOnly());
+        assertEquals(Collections.singletonList(doc), plan.getSkipped());
+        assertEquals(1, plan.getUnchanged());
+        // Deletions wait until the whole tree has been listed
+        assertTrue(plan.getDeletions().isEmpty());
+    }
+
+    @Test
+    public void deletesWhatTheWalkDidNotSee() {
+        SyncPlanner.Plan plan = SyncPlanner.planDeletions(manifest,
+                new HashSet<>(Arrays.asList("same", "edited", "renamed", "evicted")));
+
+        assertEquals(1, plan.getDeletions().size());
+        assertEquals("deleted", plan.getDeletions().get(0).getFileId());
+    }
+
+    @Test
+    public void comparesVersionsWhenThereIsNoChecksum() {
+        SyncManifest.Entry entry = new SyncManifest.Entry("nomd5", "a.bin", null, 10, 4, 1000);
+
+        assertTrue(SyncPlanner.sameContent(entry, file("nomd5", "a.bin", null, 4)));
+        assertEquals(1, SyncPlanner.planChange(manifestWith(entry), file("nomd5", "a.bin", null, 5))
+                .getDownloads().size());
+    }
+
+    private static SyncManifest manifestWith(SyncManifest.Entry entry) {
+        SyncManifest manifest = SyncManifest.empty(new File("planner-test.manifest"));
+        manifest.put(entry);
+        return manifest;
+    }
+
+    private static DriveFile file(String id, String name, String md5, long version) {
+        return new DriveFile(id, name, "text/html", 10, md5, version, 1000);
+    }
+}
@@ -0,0 +1,105 @@
+package com.example.justlearnitappp.drive;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class SyncProgressTest {
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Test
+    public void reportsBytesFoldersAndFailedFiles() throws Exception {
+        FakeDrive drive = new FakeDrive(3);
+        String lessonsId = drive.addFolder("Lessons", "root");
+        String videosId = drive.addFolder("Videos", "root");
+        drive.addFile("lesson1.txt", lessonsId, new byte[1000]);
+        drive.addFile("lesson2.txt", lessonsId, new byte[3000]);
+        drive.addFile("intro.mp4", videosId, new byte[20000]);
+        String broken = drive.addFile("outro.mp4", videosId, new byte[5000]);
+        drive.setMediaBroken(broken, true);
+
+        DriveService service = new DriveService(drive.newClient(), tmp.newFolder("state"));
+        service.setProgressInterval(0);
+        RecordingCallback callback = new RecordingCallback();
+        List<SyncFolder> folders = Arrays.asList(
+                new SyncFolder("Lessons", lessonsId, tmp.newFolder("lessons").getAbsolutePath()),
+                new SyncFolder("Videos", videosId, tmp.newFolder("videos").getAbsolutePath()));
+        service.syncFolders(folders, callback).await(10, TimeUnit.SECONDS);
+
+        SyncProgress last = callback.progress.get(callback.progress.size() - 1);
+        assertEquals(4, last.getFilesTotal());
+        assertEquals(4, last.getFilesDone());
+        assertEquals(29000, last.getBytesTotal());
+        assertEquals(29000, last.getBytesDone());
+        assertEquals(1f, last.getFraction(), 0f);
+
+        assertTrue(callback.foldersSynced.contains("Lessons:true"));
+        assertTrue(callback.foldersSynced.contains("Videos:false"));
+        assertEquals(2, callback.foldersSynced.size());
+
+        SyncResult result = callback.result;
+        assertNotNull(result);
+        assertEquals(3, result.getFilesDownloaded());
+        assertEquals(24000, result.getBytesDownloaded());
+        assertEquals(1, result.getFailedFiles().size());
+        assertEquals("outro.mp4", result.getFailedFiles().get(0).getName());
+        assertEquals("Videos", result.getFailedFiles().get(0).getFolderName());
+        assertNull(callback.getSuccess());
+        assertFalse(callback.getErrors().isEmpty());
+    }
+
+    @Test
+    public void progressIsRateLimited() throws Exception {
+        FakeDrive drive = new FakeDrive(4);
+        String folderId = drive.addFolder("Tests", "root");
+        for (int i = 0; i < 200; i++) {
+            drive.addFile("test" + i + ".json", folderId, new byte[100]);
+        }
+
+        DriveService service = new DriveService(drive.newClient(), tmp.newFolder("state"));
+        service.setProgressInterval(TimeUnit.HOURS.toMillis(1));
+        RecordingCallback callback = new RecordingCallback();
+        service.syncFolders(Collections.singletonList(
+                new SyncFolder("Tests", folderId, tmp.newFolder("tests").getAbsolutePath())), callback)
+                .await(10, TimeUnit.SECONDS);
+
+        // The first update goes out straight away and the final one when the run ends
+        assertEquals(2, callback.progress.size());
+        assertEquals(200, callback.progress.get(1).getFilesDone());
+        assertNotNull(callback.getSuccess());
+    }
+
+    private static class RecordingCallback extends TestSync.Recorder {
+        final List<SyncProgress> progress = Collections.synchronizedList(new ArrayList<SyncProgress>());
+        final List<String> foldersSynced = Collections.synchronizedList(new ArrayList<String>());
+        volatile SyncResult result;
+
+        @Override
+        public void onProgress(SyncProgress update) {
+            progress.add(update);
+        }
+
+        @Override
+        public void onFolderSynced(SyncFolder folder, boolean success) {
+            foldersSynced.add(folder.getName() + ":" + success);
+        }
+
+        @Override
+        public void onComplete(SyncResult result) {
+            this.result = result;
+        }
+    }
+}
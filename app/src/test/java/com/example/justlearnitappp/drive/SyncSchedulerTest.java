@@ -0,0 +1,90 @@
+package com.example.justlearnitappp.drive;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SyncSchedulerTest {
+
+    @Test
+    public void runsAtMostTheLimitAtOnce() throws Exception {
+        SyncScheduler scheduler = new SyncScheduler(3);
+        SyncRun run = new SyncRun();
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger peak = new AtomicInteger();
+        for (int i = 0; i < 24; i++) {
+            scheduler.submit(run, "folder" + i % 4, 0, 0, () -> {
+                int now = inFlight.incrementAndGet();
+                peak.accumulateAndGet(now, Math::max);
+                sleep(10);
+                inFlight.decrementAndGet();
+            });
+        }
+        run.await(30, TimeUnit.SECONDS);
+
+        assertEquals(3, peak.get());
+    }
+
+    @Test
+    public void takesTurnsBetweenFolders() throws Exception {
+        SyncScheduler scheduler = new SyncScheduler(1);
+        SyncRun run = new SyncRun();
+        // Holds the only slot until every folder has queued its tasks
+        CountDownLatch queued = new CountDownLatch(1);
+        scheduler.submit(run, "gate", 0, 0, () -> await(queued));
+        List<String> order = Collections.synchronizedList(new ArrayList<String>());
+        for (String folder : Arrays.asList("lessons", "lessons", "lessons", "quizzes", "quizzes", "videos")) {
+            scheduler.submit(run, folder, 0, 0, () -> order.add(folder));
+        }
+        queued.countDown();
+        run.await(30, TimeUnit.SECONDS);
+
+        assertEquals(Arrays.asList("lessons", "quizzes", "videos", "lessons", "quizzes", "lessons"), order);
+    }
+
+    @Test
+    public void raisedLimitStartsQueuedTasksAtOnce() throws Exception {
+        SyncScheduler scheduler = new SyncScheduler(1);
+        SyncRun run = new SyncRun();
+        CountDownLatch started = new CountDownLatch(3);
+        CountDownLatch release = new CountDownLatch(1);
+        for (int i = 0; i < 3; i++) {
+            scheduler.submit(run, "lessons", 0, 0, () -> {
+                started.countDown();
+                await(release);
+            });
+        }
+        assertFalse(started.await(100, TimeUnit.MILLISECONDS));
+
+        scheduler.setMaxConcurrentDownloads(3);
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        release.countDown();
+        run.await(30, TimeUnit.SECONDS);
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(30, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
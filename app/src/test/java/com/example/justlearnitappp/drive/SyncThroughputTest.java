@@ -0,0 +1,141 @@
+package com.example.justlearnitappp.drive;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * End-to-end sync of synthetic catalogs against {@link FakeDrive}. Each run
+ * reports wall time, HTTP round trips and bytes moved so changes to listing,
+ * scheduling or download code can be compared run to run.
+ */
+public class SyncThroughputTest {
+    private static final long SEED = 7;
+    private static final long LATENCY_MS = 2;
+    private static final int FILES_PER_FOLDER = 1000;
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Test
+    public void tenFiles() throws Exception {
+        syncCatalog(10);
+    }
+
+    @Test
+    public void oneThousandFiles() throws Exception {
+        syncCatalog(1000);
+    }
+
+    @Test
+    public void tenThousandFiles() throws Exception {
+        syncCatalog(10000);
+    }
+
+    @Test
+    public void convergesUnderInjectedFaults() throws Exception {
+        FakeDrive drive = new FakeDrive(SEED);
+        List<SyncFolder> folders = new ArrayList<>();
+        createCatalog(drive, 200, folders);
+        drive.setErrorRate(0.03);
+        drive.setRateLimitRate(0.02);
+        DriveService service = newService(drive);
+        service.setRetryBackoff(1, 10);
+
+        int runs = 0;
+        TestSync.Recorder callback;
+        do {
+            callback = new TestSync.Recorder();
+            service.syncFolders(folders, callback).await(60, TimeUnit.SECONDS);
+            runs++;
+        } while (!callback.getErrors().isEmpty() && runs < 20);
+
+        report("200 files, faults", runs + " runs", drive);
+        // Transient errors and rate limits are retried within the run
+        assertEquals(1, runs);
+        assertTrue(service.getMetrics().snapshot().getCounter(SyncMetrics.RETRIES) > 0);
+        callback.assertNoErrors();
+        assertEquals(200, countLocalFiles(folders));
+    }
+
+    private void syncCatalog(int fileCount) throws Exception {
+        FakeDrive drive = new FakeDrive(SEED);
+        List<SyncFolder> folders = new ArrayList<>();
+        long catalogBytes = createCatalog(drive, fileCount, folders);
+        drive.setLatencyMillis(LATENCY_MS);
+        DriveService service = newService(drive);
+
+        TestSync.Recorder callback = new TestSync.Recorder();
+        long start = System.nanoTime();
+        service.syncFolders(folders, callback).await(5, TimeUnit.MINUTES);
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        report(fileCount + " files, first sync", elapsedMs + " ms", drive);
+
+        assertEquals("Sync completed successfully", callback.getSuccess());
+        assertEquals(fileCount, countLocalFiles(folders));
+        assertEquals(catalogBytes, drive.getBytesServed());
+
+        // Nothing changed remotely, so the follow-up run is one changes-feed request
+        drive.resetCounters();
+        callback = new TestSync.Recorder();
+        start = System.nanoTime();
+        service.syncFolders(folders, callback).await(1, TimeUnit.MINUTES);
+        elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        report(fileCount + " files, no-op sync", elapsedMs + " ms", drive);
+
+        assertEquals("Sync completed successfully", callback.getSuccess());
+        assertEquals(1, drive.getRequestCount());
+        assertEquals(0, drive.getBytesServed());
+    }
+
+    /**
+     * Spreads the files over as many folders as needed to keep each within one
+     * listing page and returns the total size of the catalog.
+     */
+    private long createCatalog(FakeDrive drive, int fileCount, List<SyncFolder> folders) throws Exception {
+        Random random = new Random(SEED);
+        long totalBytes = 0;
+        int folderCount = (fileCount + FILES_PER_FOLDER - 1) / FILES_PER_FOLDER;
+        for (int f = 0; f < folderCount; f++) {
+            String folderId = drive.addFolder("folder" + f, "root");
+            folders.add(new SyncFolder("folder" + f, folderId, tmp.newFolder("folder" + f).getAbsolutePath()));
+            int inFolder = Math.min(FILES_PER_FOLDER, fileCount - f * FILES_PER_FOLDER);
+            for (int i = 0; i < inFolder; i++) {
+                byte[] content = new byte[512 + random.nextInt(4096)];
+                random.nextBytes(content);
+                drive.addFile("lesson" + i + ".bin", folderId, content);
+                totalBytes += content.length;
+            }
+        }
+        return totalBytes;
+    }
+
+    private DriveService newService(FakeDrive drive) throws Exception {
+        DriveService service = new DriveService(drive.newClient(), tmp.newFolder());
+        service.setMinResyncInterval(0);
+        return service;
+    }
+
+    private static int countLocalFiles(List<SyncFolder> folders) {
+        int count = 0;
+        for (SyncFolder folder : folders) {
+            File[] files = new File(folder.getLocalPath()).listFiles();
+            count += files != null ? files.length : 0;
+        }
+        return count;
+    }
+
+    private static void report(String label, String time, FakeDrive drive) {
+        System.out.println(String.format("%-26s %10s %7d requests %8d media %12d bytes",
+                label, time, drive.getRequestCount(), drive.getRequestCount("media"), drive.getBytesServed()));
+    }
+}
@@ -0,0 +1,106 @@
+package com.example.justlearnitappp.drive;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs syncs and opens for tests. Callbacks arrive on sync workers, where a
+ * failed assertion is lost, so results are recorded and checked on the test thread.
+ */
+final class TestSync {
+    private TestSync() {
+    }
+
+    /** Runs a sync and returns its first error, or null if it succeeded. */
+    static String run(DriveService service, List<SyncFolder> folders) throws Exception {
+        Recorder callback = new Recorder();
+        service.syncFolders(folders, callback).await(30, TimeUnit.SECONDS);
+        List<String> errors = callback.getErrors();
+        return errors.isEmpty() ? null : errors.get(0);
+    }
+
+    static String run(DriveService service, SyncFolder folder) throws Exception {
+        return run(service, Collections.singletonList(folder));
+    }
+
+    /** Runs a sync and fails the test if it reported any error. */
+    static void sync(DriveService service, List<SyncFolder> folders) throws Exception {
+        Recorder callback = new Recorder();
+        service.syncFolders(folders, callback).await(30, TimeUnit.SECONDS);
+        callback.assertNoErrors();
+    }
+
+    static void sync(DriveService service, SyncFolder folder) throws Exception {
+        sync(service, Collections.singletonList(folder));
+    }
+
+    /** Opens a file, waiting for it to be fetched if it is not on disk, and fails the test on an error. */
+    static File open(DriveService service, SyncFolder folder, String name) throws Exception {
+        OpenResult result = new OpenResult();
+        File file = service.openFile(folder, name, result);
+        if (file != null) {
+            return file;
+        }
+        assertTrue(result.done.await(30, TimeUnit.SECONDS));
+        assertNull(result.error);
+        return result.file;
+    }
+
+    /** Records the outcome of a sync for the test thread to check. */
+    static class Recorder implements DriveService.SyncCallback {
+        private final List<String> errors = Collections.synchronizedList(new ArrayList<String>());
+        private volatile String success;
+
+        @Override
+        public void onSuccess(String message) {
+            success = message;
+        }
+
+        @Override
+        public void onError(String error) {
+            errors.add(error);
+        }
+
+        List<String> getErrors() {
+            synchronized (errors) {
+                return new ArrayList<>(errors);
+            }
+        }
+
+        /** The success message, or null if the sync reported errors or has not finished. */
+        String getSuccess() {
+            return success;
+        }
+
+        void assertNoErrors() {
+            assertEquals(Collections.<String>emptyList(), getErrors());
+        }
+    }
+
+    /** Records the outcome of an open that had to fetch the file. */
+    static class OpenResult implements DriveService.OpenCallback {
+        final CountDownLatch done = new CountDownLatch(1);
+        volatile File file;
+        volatile String error;
+
+        @Override
+        public void onReady(File file) {
+            this.file = file;
+            done.countDown();
+        }
+
+        @Override
+        public void onError(String error) {
+            this.error = error;
+            done.countDown();
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package com.example.justlearnitappp.drive;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Synthetic Drive catalogs shaped like the app's content folders, generated
+ * from a fixed seed so every benchmark run sees the same data.
+ */
+final class Catalogs {
+    private static final long SEED = 42;
+    private static final long EPOCH_MILLIS = 1700000000000L;
+
+    private Catalogs() {
+    }
+
+    static List<DriveFile> remoteFiles(int count) {
+        Random random = new Random(SEED);
+        List<DriveFile> files = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            byte[] md5 = new byte[16];
+            random.nextBytes(md5);
+            files.add(new DriveFile(
+                    "1" + Long.toString(SEED * 1_000_003L + i, 36) + "xQfZ3pLkVbN8wTqR5sYd",
+                    "lesson-" + i + ".pdf",
+                    "application/pdf",
+                    4096 + random.nextInt(8 * 1024 * 1024),
+                    Checksums.toHex(md5),
+                    1 + random.nextInt(20),
+                    EPOCH_MILLIS + random.nextInt(1_000_000_000)));
+        }
+        return files;
+    }
+
+    /**
+     * A manifest that matches {@code files} exactly, as after a clean sync.
+     */
+    static SyncManifest manifestOf(List<DriveFile> files, File location) {
+        SyncManifest manifest = SyncManifest.empty(location);
+        for (DriveFile file : files) {
+            manifest.put(SyncManifest.Entry.of(file, file.getName()));
+        }
+        return manifest;
+    }
+
+    /**
+     * Returns a copy of {@code files} where every {@code stride}-th file has new
+     * content, the one after it was renamed and the one after that was removed.
+     */
+    static List<DriveFile> withChanges(List<DriveFile> files, int stride) {
+        List<DriveFile> changed = new ArrayList<>(files.size());
+        for (int i = 0; i < files.size(); i++) {
+            DriveFile file = files.get(i);
+            int slot = i % stride;
+            if (slot == 0) {
+                changed.add(new DriveFile(file.getId(), file.getName(), file.getMimeType(), file.getSize() + 1,
+                        new StringBuilder(file.getMd5Checksum()).reverse().toString(),
+                        file.getVersion() + 1, file.getLastModified() + 1));
+            } else if (slot == 1) {
+                changed.add(new DriveFile(file.getId(), "renamed-" + file.getName(), file.getMimeType(),
+                        file.getSize(), file.getMd5Checksum(), file.getVersion() + 1, file.getLastModified() + 1));
+            } else if (slot != 2) {
+                changed.add(file);
+            }
+        }
+        return changed;
+    }
+}
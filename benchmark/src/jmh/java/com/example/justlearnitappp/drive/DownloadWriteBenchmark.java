@@ -0,0 +1,83 @@
+package com.example.justlearnitappp.drive;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writing a download to its part file and renaming it into place, fed in the
+ * 4 KB pieces the HTTP client copies in. A buffer of 0 writes each piece
+ * straight to the file, as downloads used to.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class DownloadWriteBenchmark {
+    private static final int PIECE_SIZE = 4 * 1024;
+
+    @Param({"0", "8192", "131072"})
+    public int bufferSize;
+
+    @Param({"NONE", "ON_COMMIT"})
+    public FsyncPolicy fsync;
+
+    @Param({"1048576", "16777216"})
+    public int fileSize;
+
+    private File dir;
+    private File target;
+    private byte[] piece;
+
+    @Setup
+    public void setUp() throws IOException {
+        dir = File.createTempFile("write-benchmark", "");
+        if (!dir.delete() || !dir.mkdirs()) {
+            throw new IOException("Failed to create " + dir);
+        }
+        target = new File(dir, "lesson.bin");
+        piece = new byte[PIECE_SIZE];
+        new Random(1).nextBytes(piece);
+    }
+
+    @TearDown
+    public void tearDown() {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        dir.delete();
+    }
+
+    @Benchmark
+    public File writeAndCommit() throws IOException {
+        File partFile = PartFile.of(target);
+        try (FileOutputStream file = new FileOutputStream(partFile)) {
+            OutputStream out = bufferSize > 0 ? new BufferedOutputStream(file, bufferSize) : file;
+            for (int written = 0; written < fileSize; written += PIECE_SIZE) {
+                out.write(piece, 0, PIECE_SIZE);
+            }
+            out.flush();
+            if (fsync.syncsOnCommit()) {
+                file.getFD().sync();
+            }
+        }
+        PartFile.commit(partFile, target);
+        return target;
+    }
+}
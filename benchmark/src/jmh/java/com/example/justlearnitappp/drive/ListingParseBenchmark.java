@@ -0,0 +1,61 @@
+package com.example.justlearnitappp.drive;
+
+import com.google.api.client.json.JsonFactory;
+import com.google.api.client.json.gson.GsonFactory;
+import com.google.api.services.drive.model.File;
+import com.google.api.services.drive.model.FileList;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Turning a files.list response body into {@link DriveFile}s, the way the
+ * Drive client and DriveService do it during a full sync.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ListingParseBenchmark {
+    @Param({"100", "1000", "10000", "100000"})
+    public int entries;
+
+    private final JsonFactory jsonFactory = GsonFactory.getDefaultInstance();
+    private String listingJson;
+
+    @Setup
+    public void setUp() throws IOException {
+        List<File> files = new ArrayList<>(entries);
+        for (DriveFile file : Catalogs.remoteFiles(entries)) {
+            files.add(new File()
+                    .setId(file.getId())
+                    .setName(file.getName())
+                    .setMimeType(file.getMimeType())
+                    .setSize(file.getSize())
+                    .setMd5Checksum(file.getMd5Checksum())
+                    .setVersion(file.getVersion())
+                    .setModifiedTime(new com.google.api.client.util.DateTime(file.getLastModified())));
+        }
+        listingJson = jsonFactory.toString(new FileList().setFiles(files));
+    }
+
+    @Benchmark
+    public List<DriveFile> parseListing() throws IOException {
+        FileList listing = jsonFactory.fromString(listingJson, FileList.class);
+        List<DriveFile> files = new ArrayList<>(listing.getFiles().size());
+        for (File file : listing.getFiles()) {
+            files.add(DriveFile.fromApi(file));
+        }
+        return files;
+    }
+}
@@ -0,0 +1,64 @@
+package com.example.justlearnitappp.drive;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reading and writing the on-disk manifest. Save includes the fsync the app
+ * does, so its numbers depend on the disk the benchmark runs on.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SyncManifestBenchmark {
+    @Param({"100", "1000", "10000", "100000"})
+    public int entries;
+
+    private File dir;
+    private File stored;
+    private SyncManifest manifest;
+
+    @Setup
+    public void setUp() throws IOException {
+        dir = File.createTempFile("manifest-benchmark", "");
+        if (!dir.delete() || !dir.mkdirs()) {
+            throw new IOException("Failed to create " + dir);
+        }
+        stored = new File(dir, "stored.manifest");
+        Catalogs.manifestOf(Catalogs.remoteFiles(entries), stored).save();
+        manifest = Catalogs.manifestOf(Catalogs.remoteFiles(entries), new File(dir, "saved.manifest"));
+    }
+
+    @TearDown
+    public void tearDown() {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        dir.delete();
+    }
+
+    @Benchmark
+    public SyncManifest load() throws IOException {
+        return SyncManifest.load(stored);
+    }
+
+    @Benchmark
+    public SyncManifest save() throws IOException {
+        manifest.save();
+        return manifest;
+    }
+}
@@ -0,0 +1,80 @@
+package com.example.justlearnitappp.drive;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Diffing a remote listing against the local manifest. The common case after
+ * startup is a catalog where nothing changed; the other case has one in a
+ * hundred files changed, renamed and removed.
+ *
+ * <p>Planned the way a sync walk does it: each listing page on its own, then
+ * the deletions once every page has been seen.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SyncPlannerBenchmark {
+    // DriveService.DEFAULT_LIST_PAGE_SIZE; DriveService itself needs Android
+    private static final int PAGE_SIZE = 1000;
+
+    @Param({"100", "1000", "10000", "100000"})
+    public int entries;
+
+    private SyncManifest manifest;
+    private List<List<DriveFile>> unchanged;
+    private List<List<DriveFile>> changed;
+
+    @Setup
+    public void setUp() {
+        List<DriveFile> files = Catalogs.remoteFiles(entries);
+        unchanged = pages(files);
+        changed = pages(Catalogs.withChanges(files, 100));
+        // Never saved, so the location only has to be a valid path
+        manifest = Catalogs.manifestOf(files, new File("planner-benchmark.manifest"));
+    }
+
+    @Benchmark
+    public SyncPlanner.Plan planUnchanged(Blackhole blackhole) {
+        return planWalk(unchanged, blackhole);
+    }
+
+    @Benchmark
+    public SyncPlanner.Plan planWithChanges(Blackhole blackhole) {
+        return planWalk(changed, blackhole);
+    }
+
+    private SyncPlanner.Plan planWalk(List<List<DriveFile>> pages, Blackhole blackhole) {
+        Set<String> seen = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+        for (List<DriveFile> page : pages) {
+            for (DriveFile file : page) {
+                seen.add(file.getId());
+            }
+            blackhole.consume(SyncPlanner.planPartial(manifest, page));
+        }
+        return SyncPlanner.planDeletions(manifest, seen);
+    }
+
+    private static List<List<DriveFile>> pages(List<DriveFile> files) {
+        List<List<DriveFile>> pages = new ArrayList<>();
+        for (int start = 0; start < files.size(); start += PAGE_SIZE) {
+            pages.add(new ArrayList<>(files.subList(start, Math.min(start + PAGE_SIZE, files.size()))));
+        }
+        return pages;
+    }
+}
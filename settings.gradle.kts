@@ -21,3 +21,4 @@ dependencyResolutionManagement {
 
 rootProject.name = "JustLearnItAPPP"
 include(":app")
+include(":benchmark")